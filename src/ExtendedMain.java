@@ -1,13 +1,23 @@
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.InputStreamReader;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Optional;
 
 import controller.ImageProcessorController;
+import controller.ScriptedImageProcessorController;
+import controller.ScriptedImageProcessorController.Optimization;
+import controller.StreamingImageProcessorController;
+import controller.extensions.ExtendedControllerFeatures;
 import controller.extensions.ExtendedGuiController;
 import controller.extensions.ExtendedInteractiveController;
 import controller.extensions.ExtendedScriptedController;
+import model.processor.AsyncImageProcessor;
+import model.processor.BoundedImageProcessor;
+import model.processor.ConcurrentImageProcessor;
 import model.processor.ImageProcessor;
+import model.processor.LazyImageProcessor;
 import model.processor.SimpleImageProcessor;
 import view.ImageProcessorView;
 import view.SwingGuiView;
@@ -34,6 +44,8 @@ public class ExtendedMain {
 
     // If no args are provided, just run in GUI mode
     if (args.length == 0) {
+      // Commands run in the background, so the window keeps responding while they do.
+      processor = new AsyncImageProcessor();
       ImageProcessorView view = new SwingGuiView();
       controller = new ExtendedGuiController(processor, view);
     } else {
@@ -44,14 +56,63 @@ public class ExtendedMain {
           System.out.println(usage);
           return;
         case "-file":
+        case "-parallel":
+        case "-lazy":
           if (args.length < 2) {
             System.out.println("Must provide a file name.\n" + usage);
             return;
           }
+          // Nothing looks at the processor after the script, so it can be freely optimized.
+          EnumSet<Optimization> optimizations = EnumSet.allOf(Optimization.class);
+          if (args[0].equals("-parallel")) {
+            if (args.length > 2) {
+              System.out.println("Scripts run in parallel cannot be given a memory budget.\n"
+                      + usage);
+              return;
+            }
+            // Independent lines of the script run at the same time, sharing the processor.
+            processor = new ConcurrentImageProcessor();
+          } else if (args[0].equals("-lazy")) {
+            if (args.length > 2) {
+              System.out.println("Lazy scripts cannot be given a memory budget.\n" + usage);
+              return;
+            }
+            // The processor only computes the images that are saved, fusing the chains of commands
+            // leading to them, so the lines it would skip are left to it.
+            processor = new LazyImageProcessor();
+            optimizations.remove(Optimization.SKIP_DEAD_STEPS);
+            optimizations.remove(Optimization.PARALLEL);
+          } else {
+            optimizations.remove(Optimization.PARALLEL);
+            if (args.length > 2) {
+              // Keep long scripts within the given number of megabytes of images in memory.
+              try {
+                processor = new BoundedImageProcessor(Long.parseLong(args[2]) << 20);
+              } catch (IllegalArgumentException e) {
+                System.out.println("Memory budget must be a non-negative number of megabytes.\n"
+                        + usage);
+                return;
+              }
+            }
+          }
           try {
             inputSource = new FileReader(args[1]);
             controller = new ExtendedScriptedController(processor, inputSource,
-                                                   Optional.empty());
+                                                   Optional.empty(), optimizations);
+            break;
+          } catch (FileNotFoundException e) {
+            System.out.println("Could not find the file to run: " + e.getMessage());
+            return;
+          }
+        case "-stream":
+          if (args.length < 2) {
+            System.out.println("Must provide a file name.\n" + usage);
+            return;
+          }
+          try {
+            inputSource = new FileReader(args[1]);
+            controller = new StreamingImageProcessorController(inputSource,
+                    new ExtendedControllerFeatures(processor));
             break;
           } catch (FileNotFoundException e) {
             System.out.println("Could not find the file to run: " + e.getMessage());
@@ -75,6 +136,12 @@ public class ExtendedMain {
     try {
       // Start the controller
       controller.run();
+      if (controller instanceof ScriptedImageProcessorController) {
+        ScriptedImageProcessorController script = (ScriptedImageProcessorController) controller;
+        printLines("Skipped %d line(s) whose images are never saved:", script.getSkippedLines());
+        printLines("Reused the image of an earlier line for %d line(s):",
+                script.getReusedLines());
+      }
     } catch (IllegalStateException e) {
       // Gently end the program upon controller error, informing the user of the error message.
       System.out.println(e.getMessage());
@@ -82,11 +149,27 @@ public class ExtendedMain {
 
   }
 
+  // Print a summary of some lines of a script, if there are any.
+  private static void printLines(String header, List<String> lines) {
+    if (!lines.isEmpty()) {
+      System.out.println(String.format(header, lines.size()));
+      for (String line : lines) {
+        System.out.println("  " + line);
+      }
+    }
+  }
+
   private static final String usage = ""
           + "Usage: [option] ...\n"
-          + "-h         : show this help message\n"
-          + "-file path : run the provided script file\n"
-          + "-text      : run in interactive mode\n"
-          + "           : no args to run in GUI mode";
+          + "-h                : show this help message\n"
+          + "-file path [mb]   : run the provided script file, keeping at most mb megabytes of\n"
+          + "                    images in memory if given\n"
+          + "-parallel path    : run the provided script file, running lines that do not\n"
+          + "                    depend on each other at the same time\n"
+          + "-lazy path        : run the provided script file, only computing the images it\n"
+          + "                    saves\n"
+          + "-stream path      : stream the provided load, filter, save script on a PPM image\n"
+          + "-text             : run in interactive mode\n"
+          + "                  : no args to run in GUI mode";
 
 }
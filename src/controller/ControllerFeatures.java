@@ -3,21 +3,37 @@ package controller;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.InputMismatchException;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 import java.util.function.Function;
 
 import controller.commands.BrightenChannels;
+import controller.commands.ChannelExpression;
+import controller.commands.ColorLut;
 import controller.commands.CommandImpls;
 import controller.commands.Downscale;
 import controller.commands.FlipHorizontally;
 import controller.commands.FlipVertically;
+import controller.commands.HistogramEqualization;
 import controller.commands.ImageProcessingCommand;
 import controller.commands.MaskedCommand;
+import controller.commands.Median;
+import controller.commands.Morphology;
+import controller.commands.QuarterRotation;
+import controller.commands.Rotate;
+import controller.commands.Transpose;
 import model.color.Color;
 import model.image.ImageModel;
 import model.image.SimpleImage;
@@ -28,13 +44,17 @@ import util.Util;
 /**
  * Represents the image saving, loading, and processing functionality common to all controllers.
  * Supports the horizontal flip, vertical flip, red component, green component, blue component,
- * value component, intensity component, luma component, brighten, gaussian blur, sharpen, and
- * sepia tone commands.
+ * value component, intensity component, luma component, brighten, gaussian blur, sharpen,
+ * sobel, edge magnitude, laplacian, sepia tone, equalize, clahe, median, erode, dilate, open,
+ * close, apply lut, expression, rotation, and transpose commands.
  */
 public class ControllerFeatures implements ControllerFeatureSet {
 
   protected final ImageProcessor processor;
   protected final Map<String, Function<Scanner, ImageProcessingCommand>> knownCommands;
+  // Lookup tables already read, by file path, with the time the file was last modified then.
+  private final Map<Path, FileTime> lutTimes;
+  private final Map<Path, ColorLut> luts;
 
   /**
    * Create a new instance of controller features with a processor delegate to load images to,
@@ -45,6 +65,8 @@ public class ControllerFeatures implements ControllerFeatureSet {
   public ControllerFeatures(ImageProcessor processor) throws IllegalArgumentException {
     this.processor = Util.requireNonNullArg(processor);
 
+    this.lutTimes = new HashMap<>();
+    this.luts = new HashMap<>();
     this.knownCommands = new HashMap<>();
     // Add all the simple image processing commands that this controller is capable of.
     this.knownCommands.put("horizontal-flip", (Scanner sc) -> new FlipHorizontally());
@@ -59,7 +81,72 @@ public class ControllerFeatures implements ControllerFeatureSet {
         (Scanner sc) -> new BrightenChannels(Util.requireNonNullArg(sc).nextInt()));
     this.knownCommands.put("gaussian-blur", (Scanner sc) -> CommandImpls.GAUSSIAN_BLUR);
     this.knownCommands.put("sharpen", (Scanner sc) -> CommandImpls.SHARPEN);
+    this.knownCommands.put("sobel", (Scanner sc) -> CommandImpls.SOBEL);
+    this.knownCommands.put("edge-magnitude", (Scanner sc) -> CommandImpls.EDGE_MAGNITUDE);
+    this.knownCommands.put("laplacian", (Scanner sc) -> CommandImpls.LAPLACIAN);
     this.knownCommands.put("sepia-tone", (Scanner sc) -> CommandImpls.SEPIA_TONE);
+    this.knownCommands.put("rotate-90", (Scanner sc) -> new QuarterRotation(1));
+    this.knownCommands.put("rotate-180", (Scanner sc) -> new QuarterRotation(2));
+    this.knownCommands.put("rotate-270", (Scanner sc) -> new QuarterRotation(3));
+    this.knownCommands.put("transpose", (Scanner sc) -> new Transpose());
+    this.knownCommands.put("equalize", (Scanner sc) -> new HistogramEqualization());
+    this.knownCommands.put("clahe", (Scanner sc) -> new HistogramEqualization(
+        Util.requireNonNullArg(sc).nextInt(), sc.nextDouble()));
+    this.knownCommands.put("median",
+        (Scanner sc) -> new Median(Util.requireNonNullArg(sc).nextInt()));
+    for (Morphology.Operation operation : Morphology.Operation.values()) {
+      this.knownCommands.put(operation.name().toLowerCase(), (Scanner sc) -> {
+        int width = Util.requireNonNullArg(sc).nextInt();
+        return new Morphology(operation, width, sc.hasNextInt() ? sc.nextInt() : width);
+      });
+    }
+    this.knownCommands.put("rotate", (Scanner sc) -> new Rotate(
+        Util.requireNonNullArg(sc).nextDouble(),
+        sc.hasNext("bilinear|nearest") ? Rotate.Sampling.valueOf(sc.next().toUpperCase())
+            : Rotate.Sampling.BILINEAR));
+    this.knownCommands.put("apply-lut", (Scanner sc) -> {
+      ColorLut lut = this.loadLut(Util.requireNonNullArg(sc).next());
+      return sc.hasNext("trilinear|tetrahedral")
+          ? lut.withInterpolation(ColorLut.Interpolation.valueOf(sc.next().toUpperCase())) : lut;
+    });
+    this.knownCommands.put("expr", (Scanner sc) -> new ChannelExpression(
+        nextFormula(Util.requireNonNullArg(sc)), nextFormula(sc), nextFormula(sc)));
+  }
+
+  // Read a formula, which is either a single token or any text between double quotes.
+  private static String nextFormula(Scanner sc) throws NoSuchElementException {
+    if (sc.hasNext("\".*")) {
+      String quoted = sc.findInLine("\\s*\"[^\"]*\"");
+      if (quoted == null) {
+        throw new NoSuchElementException("Formula is missing its closing quote.");
+      }
+      quoted = quoted.trim();
+      return quoted.substring(1, quoted.length() - 1);
+    }
+    return sc.next();
+  }
+
+  /**
+   * Get the lookup table command for a cube file, reading the file only if it has not been read
+   * before or has been modified since.
+   * @param path the path of the cube file
+   * @return the lookup table command, interpolated trilinearly
+   * @throws IllegalStateException if the file cannot be read or is not a valid cube file
+   */
+  protected synchronized ColorLut loadLut(String path) throws IllegalStateException {
+    Path file = Paths.get(path).toAbsolutePath().normalize();
+    try {
+      FileTime modified = Files.getLastModifiedTime(file);
+      if (!modified.equals(this.lutTimes.get(file))) {
+        try (InputStream input = Files.newInputStream(file)) {
+          this.luts.put(file, ColorLut.readCube(input));
+        }
+        this.lutTimes.put(file, modified);
+      }
+      return this.luts.get(file);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not read specified lookup table file.");
+    }
   }
 
   @Override
@@ -112,4 +199,25 @@ public class ControllerFeatures implements ControllerFeatureSet {
     return processingCommand;
   }
 
+  /**
+   * Check that a processing command is known and that its arguments are valid, without running it
+   * or looking up any images, and find the names of the images its arguments refer to.
+   * @param cmd the command to check
+   * @param sc the scanner for extra arguments
+   * @return the names of the images the extra arguments refer to, in the order they appear
+   * @throws IllegalStateException if the command is not known or its arguments are invalid
+   */
+  public List<String> checkProcessingCommand(String cmd, Scanner sc) throws IllegalStateException {
+    Function<Scanner, ImageProcessingCommand> cmdGenerator = this.knownCommands.get(cmd);
+    if (cmdGenerator == null) {
+      throw new IllegalStateException(String.format("Command '%s' not known.", cmd));
+    }
+    try {
+      cmdGenerator.apply(sc);
+    } catch (RuntimeException e) {
+      throw new IllegalStateException(String.format("Bad argument received for %s command.", cmd));
+    }
+    return Collections.emptyList();
+  }
+
 }
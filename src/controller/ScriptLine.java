@@ -0,0 +1,142 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+import util.Util;
+
+/**
+ * Represents one command line of a script, together with the image names it reads and writes, so
+ * that a whole script can be analyzed before it runs.
+ *
+ * <p>A load reads a file and writes an image, and a save reads an image and writes a file. Any
+ * other command reads the image it processes and writes the image it saves to. The tokens after
+ * those, such as a mask name, are counted as reads as well: a token that is really a number or a
+ * formula never names an image, so counting it only ever makes the analysis more careful. A line
+ * without enough arguments reads and writes nothing, since running it stops the script anyway.
+ *
+ * <p>A line can also be an alias of another image: rather than running its command, the image it
+ * would compute is known to be already held under another name, which is all it reads.
+ */
+public class ScriptLine {
+
+  private final String text;
+  private final String command;
+  private final List<String> reads;
+  private final String write;
+  private final String file;
+  private final String source;
+
+  /**
+   * Parse a line of a script.
+   * @param text the line, which should not be empty or a comment
+   * @throws IllegalArgumentException if the line is null
+   */
+  public ScriptLine(String text) throws IllegalArgumentException {
+    this.text = Util.requireNonNullArg(text);
+    List<String> tokens = new ArrayList<>();
+    Scanner tokenScanner = new Scanner(text);
+    while (tokenScanner.hasNext()) {
+      tokens.add(tokenScanner.next());
+    }
+
+    if (tokens.size() < 3) {
+      this.command = tokens.isEmpty() ? "" : tokens.get(0);
+      this.reads = Collections.emptyList();
+      this.write = null;
+      this.file = null;
+    } else if (tokens.get(0).equals("load")) {
+      this.command = "load";
+      this.reads = Collections.emptyList();
+      this.write = tokens.get(2);
+      this.file = tokens.get(1);
+    } else if (tokens.get(0).equals("save")) {
+      this.command = "save";
+      this.reads = Collections.singletonList(tokens.get(1));
+      this.write = null;
+      this.file = tokens.get(2);
+    } else {
+      this.command = tokens.get(0);
+      List<String> reads = new ArrayList<>();
+      reads.add(tokens.get(1));
+      reads.addAll(tokens.subList(3, tokens.size()));
+      this.reads = Collections.unmodifiableList(reads);
+      this.write = tokens.get(2);
+      this.file = null;
+    }
+    this.source = null;
+  }
+
+  private ScriptLine(ScriptLine line, String source) {
+    this.text = line.text;
+    this.command = line.command;
+    this.reads = Collections.singletonList(source);
+    this.write = line.write;
+    this.file = null;
+    this.source = source;
+  }
+
+  /**
+   * Get a line standing for this one that takes the image this line writes from another name.
+   * @param source the name already holding the image this line would compute
+   * @return the aliasing line
+   * @throws IllegalArgumentException if the source is null, or this line writes no image
+   */
+  public ScriptLine aliasOf(String source) throws IllegalArgumentException {
+    Util.requireNonNullArg(source);
+    if (this.write == null) {
+      throw new IllegalArgumentException("Only a line writing an image can be an alias.");
+    }
+    return new ScriptLine(this, source);
+  }
+
+  /**
+   * Get the text of this line, as it appeared in the script.
+   * @return the text of the line
+   */
+  public String getText() {
+    return this.text;
+  }
+
+  /**
+   * Get the name of the command on this line, such as load, save or brighten.
+   * @return the command name, or an empty string if the line has no tokens
+   */
+  public String getCommand() {
+    return this.command;
+  }
+
+  /**
+   * Get the names of the images this line reads, in the order they appear.
+   * @return the image names read
+   */
+  public List<String> getReads() {
+    return this.reads;
+  }
+
+  /**
+   * Get the name of the image this line writes.
+   * @return the image name written, or null if this line writes no image
+   */
+  public String getWrite() {
+    return this.write;
+  }
+
+  /**
+   * Get the name holding the image this line writes, if it is an alias.
+   * @return the name aliased, or null if this line is not an alias
+   */
+  public String getSource() {
+    return this.source;
+  }
+
+  /**
+   * Get the name of the file this line loads from or saves to.
+   * @return the file name, or null if this line is not a load or save
+   */
+  public String getFile() {
+    return this.file;
+  }
+}
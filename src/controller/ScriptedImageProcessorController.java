@@ -1,16 +1,71 @@
 package controller;
 
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import controller.commands.ImageProcessingCommand;
+import controller.commands.Pipeline;
+import controller.commands.RegionCommand;
 import model.processor.ImageProcessor;
+import util.Util;
 
 /**
  * Represents the controller implementation for a scripted image processor reading a file.
  * It does not handle user input, instead throwing an exception if given an invalid command.
+ *
+ * <p>By default every line runs as it is read, and every image the script makes stays in the
+ * processor after the script ends. A script can instead be read whole and analyzed before it runs,
+ * with the {@link Optimization}s given to the controller, for runs where only the saved files
+ * matter.
  */
 public class ScriptedImageProcessorController extends SimpleImageProcessorController {
 
+  /**
+   * Represents the ways a script can be optimized by analyzing it before it runs.
+   * Freeing dead images removes every image the script made from the processor straight after the
+   * last line that uses it, so only the images the rest of the script still needs are kept. It
+   * needs a processor that can remove images, and keeps every image on one that cannot.
+   * Skipping dead steps does not run lines whose images never reach a save, whether directly, as
+   * the image processed by a later line, or as a mask. Lines that would stop the script with an
+   * error still run, such as ones with an unknown command or reading an image no earlier line
+   * made, and processing commands are only ever skipped with features that can check them.
+   * Reusing results gives a line that runs the same command with the same arguments on the same
+   * images as an earlier line the image the earlier line made, instead of running the command
+   * again. Images never change once made, so the two names can safely share one image.
+   * Running in parallel runs lines that do not depend on each other at the same time, on about one
+   * thread per processor, and needs a processor that is safe to share between threads.
+   * Fusing filters runs a chain of lines, each filtering the image made by the line before it with
+   * a {@link RegionCommand}, as a single {@link Pipeline} from the first line's image to the last
+   * line's, so the images in between are never made. A line only joins the chain if the image of
+   * the line before it is not used by any other line, and would not be left in the processor
+   * after the script. Chains are only fused when the lines run in order, not in parallel.
+   */
+  public enum Optimization {
+    FREE_DEAD_IMAGES, SKIP_DEAD_STEPS, REUSE_RESULTS, PARALLEL, FUSE_FILTERS
+  }
+
+  private final Set<Optimization> optimizations;
+  private final List<String> skippedLines;
+  private final List<String> reusedLines;
+
   /**
    * Create a new image processor controller that runs input commands in order to process images.
    * If an exception is encountered, control is stopped.
@@ -25,7 +80,7 @@ public class ScriptedImageProcessorController extends SimpleImageProcessorContro
       Readable input,
       Optional<OutputStream> overrideDest
   ) throws IllegalArgumentException {
-    super(processor, input, overrideDest);
+    this(processor, input, overrideDest, new ControllerFeatures(processor));
   }
 
   /**
@@ -43,8 +98,35 @@ public class ScriptedImageProcessorController extends SimpleImageProcessorContro
           Readable input,
           Optional<OutputStream> overrideDest,
           ControllerFeatureSet controls
+  ) throws IllegalArgumentException {
+    this(processor, input, overrideDest, controls, EnumSet.noneOf(Optimization.class));
+  }
+
+  /**
+   * Create a new image processor controller that runs input commands in order to process images,
+   * optimizing the script before it runs.
+   * If an exception is encountered, control is stopped.
+   *
+   * @param processor a processor to use to process images
+   * @param input     a script from which to read the commands
+   * @param overrideDest optional override on where to write images when called to save them
+   * @param controls the controller feature set to use
+   * @param optimizations the optimizations to apply to the script
+   * @throws IllegalArgumentException if any of the arguments are null
+   */
+  public ScriptedImageProcessorController(
+          ImageProcessor processor,
+          Readable input,
+          Optional<OutputStream> overrideDest,
+          ControllerFeatureSet controls,
+          Set<Optimization> optimizations
   ) throws IllegalArgumentException {
     super(processor, input, overrideDest, controls);
+    Util.requireNonNullArg(optimizations);
+    this.optimizations = optimizations.isEmpty()
+            ? EnumSet.noneOf(Optimization.class) : EnumSet.copyOf(optimizations);
+    this.skippedLines = new ArrayList<>();
+    this.reusedLines = new ArrayList<>();
   }
 
   @Override
@@ -52,14 +134,456 @@ public class ScriptedImageProcessorController extends SimpleImageProcessorContro
 
     Scanner sc = new Scanner(this.input);
 
-    // Run through lines of provided script.
+    if (this.optimizations.isEmpty()) {
+      // Run through lines of provided script.
+      while (sc.hasNextLine()) {
+        String line = sc.nextLine();
+        // Only care about non-empty, non-comment lines.
+        if (!line.startsWith("#") && line.length() > 0) {
+          this.runLine(line);
+        }
+      }
+      return;
+    }
+
+    List<ScriptLine> lines = new ArrayList<>();
     while (sc.hasNextLine()) {
       String line = sc.nextLine();
-      // Only care about non-empty, non-comment lines.
       if (!line.startsWith("#") && line.length() > 0) {
-        this.runLine(line);
+        lines.add(new ScriptLine(line));
+      }
+    }
+    if (this.optimizations.contains(Optimization.REUSE_RESULTS)) {
+      lines = this.reuseResults(lines);
+    }
+    if (this.optimizations.contains(Optimization.SKIP_DEAD_STEPS)) {
+      lines = this.skipDeadSteps(lines);
+    }
+    List<Set<String>> deadAfter = this.optimizations.contains(Optimization.FREE_DEAD_IMAGES)
+            ? deadImages(lines) : Collections.nCopies(lines.size(), Collections.emptySet());
+    if (this.optimizations.contains(Optimization.PARALLEL)) {
+      this.runParallel(lines, deadAfter);
+    } else {
+      for (int i = 0; i < lines.size(); i++) {
+        int fused = this.optimizations.contains(Optimization.FUSE_FILTERS)
+                ? this.runFused(lines, i, deadAfter) : 0;
+        if (fused == 0) {
+          this.runStep(lines.get(i), deadAfter.get(i));
+        } else {
+          i += fused - 1;
+        }
+      }
+    }
+  }
+
+  // Run one analyzed line, then remove the images that are dead after it, if the processor can.
+  private void runStep(ScriptLine line, Set<String> dead) {
+    if (line.getSource() != null) {
+      this.processor.loadImage(line.getWrite(), this.processor.getImageState(line.getSource()));
+    } else {
+      this.runLine(line.getText());
+    }
+    try {
+      for (String name : dead) {
+        this.processor.removeImage(name);
+      }
+    } catch (UnsupportedOperationException e) {
+      // The images are kept, just as when not freeing them.
+    }
+  }
+
+  // Run the longest chain of lines from the given one that fuses into one pipeline, then remove
+  // the images that are dead after any of them, and give back how many lines ran. Nothing runs if
+  // the chain would be a single line, or the features cannot make the commands of the lines.
+  private int runFused(List<ScriptLine> lines, int start, List<Set<String>> deadAfter) {
+    ScriptLine first = lines.get(start);
+    if (!(this.controls instanceof ControllerFeatures) || first.getSource() != null
+            || first.getWrite() == null || first.getCommand().equals("load")) {
+      return 0;
+    }
+    List<ImageProcessingCommand> commands = new ArrayList<>();
+    int end = start;
+    while (end < lines.size() && (end == start || this.feedsOnlyNext(lines, end - 1))) {
+      ImageProcessingCommand command = this.regionCommand(lines.get(end));
+      if (command == null) {
+        break;
+      }
+      commands.add(command);
+      end++;
+    }
+    if (commands.size() < 2) {
+      return 0;
+    }
+
+    this.processor.processImage(first.getReads().get(0), lines.get(end - 1).getWrite(),
+            new Pipeline(commands));
+    // The images in between were never made, so their names may hold nothing to remove.
+    Set<String> skipped = new HashSet<>();
+    for (int i = start; i < end - 1; i++) {
+      skipped.add(lines.get(i).getWrite());
+    }
+    try {
+      for (int i = start; i < end; i++) {
+        for (String name : deadAfter.get(i)) {
+          try {
+            this.processor.removeImage(name);
+          } catch (IllegalArgumentException e) {
+            if (!skipped.contains(name)) {
+              throw e;
+            }
+          }
+        }
+      }
+    } catch (UnsupportedOperationException e) {
+      // The images are kept, just as when not freeing them.
+    }
+    return end - start;
+  }
+
+  // Whether the image the given line makes is only used as the image the next line processes, so
+  // that the two lines can run as one without making it. It must not be read again before it is
+  // replaced, and if it never is, it must be freed rather than left over after the script.
+  private boolean feedsOnlyNext(List<ScriptLine> lines, int index) {
+    String name = lines.get(index).getWrite();
+    ScriptLine next = lines.get(index + 1);
+    if (next.getSource() != null || next.getReads().isEmpty()
+            || !next.getReads().get(0).equals(name)
+            || Collections.frequency(next.getReads(), name) != 1) {
+      return false;
+    }
+    if (name.equals(next.getWrite())) {
+      return true;
+    }
+    for (int i = index + 2; i < lines.size(); i++) {
+      if (lines.get(i).getReads().contains(name)) {
+        return false;
+      }
+      if (name.equals(lines.get(i).getWrite())) {
+        return true;
+      }
+    }
+    return this.optimizations.contains(Optimization.FREE_DEAD_IMAGES);
+  }
+
+  // Make the command of a processing line if it is a region command reading no other image, or
+  // give back null if it is not, or making it fails, leaving the line to run, and fail, on its own.
+  private RegionCommand regionCommand(ScriptLine line) {
+    if (line.getWrite() == null || line.getCommand().equals("load")) {
+      return null;
+    }
+    ControllerFeatures features = (ControllerFeatures) this.controls;
+    try {
+      // Masked commands are never region commands, so their masks are not looked up here.
+      if (!features.checkProcessingCommand(line.getCommand(), arguments(line)).isEmpty()) {
+        return null;
+      }
+      ImageProcessingCommand command =
+              features.createProcessingCommand(line.getCommand(), arguments(line));
+      return command instanceof RegionCommand ? (RegionCommand) command : null;
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  // Get a scanner over the tokens of a processing line after its command and image names.
+  private static Scanner arguments(ScriptLine line) {
+    Scanner tokenScanner = new Scanner(line.getText());
+    for (int i = 0; i < 3; i++) {
+      tokenScanner.next();
+    }
+    return tokenScanner;
+  }
+
+  // Run every line as soon as the lines it depends on are done, on a pool of about one thread per
+  // processor. A line depends on the last earlier line writing an image or file it reads, and on
+  // the last earlier line writing and every later line reading an image or file it writes, or an
+  // image it removes. Saves also wait for every earlier line, so files are written in script order
+  // and only once everything before them has succeeded, just as when running in order. After a
+  // line fails no lines after it are started, and whatever the first failed line in the script
+  // threw, errors included, is thrown as it is.
+  private void runParallel(List<ScriptLine> lines, List<Set<String>> deadAfter) {
+    int count = lines.size();
+    List<List<Integer>> dependencies = new ArrayList<>();
+    Map<String, Integer> lastWrite = new HashMap<>();
+    Map<String, List<Integer>> readers = new HashMap<>();
+    int lastSave = -1;
+    for (int i = 0; i < count; i++) {
+      ScriptLine line = lines.get(i);
+      Set<Integer> before = new HashSet<>();
+      // Files are kept apart from images by a prefix no image name token can contain.
+      List<String> reads = new ArrayList<>(line.getReads());
+      List<String> writes = new ArrayList<>(deadAfter.get(i));
+      if (line.getWrite() != null) {
+        writes.add(line.getWrite());
+      }
+      if (line.getFile() != null) {
+        (line.getCommand().equals("save") ? writes : reads).add(" " + line.getFile());
+      }
+
+      for (String name : reads) {
+        if (lastWrite.containsKey(name)) {
+          before.add(lastWrite.get(name));
+        }
+      }
+      for (String name : writes) {
+        if (lastWrite.containsKey(name)) {
+          before.add(lastWrite.get(name));
+        }
+        before.addAll(readers.getOrDefault(name, Collections.emptyList()));
+      }
+      if (line.getCommand().equals("save")) {
+        // Every line up to the last save is already waited for through that save.
+        for (int j = Math.max(lastSave, 0); j < i; j++) {
+          before.add(j);
+        }
+        lastSave = i;
+      }
+      before.remove(i);
+      dependencies.add(new ArrayList<>(before));
+
+      for (String name : reads) {
+        readers.computeIfAbsent(name, (String n) -> new ArrayList<>()).add(i);
+      }
+      for (String name : writes) {
+        lastWrite.put(name, i);
+        readers.remove(name);
+      }
+    }
+
+    // At least two threads, so that a load or save waiting on a file can overlap with a command.
+    ExecutorService pool = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+    Throwable[] errors = new Throwable[count];
+    // Lines before the first failed line still run, as they may fail themselves, and would have
+    // run when running in order.
+    AtomicInteger firstFailed = new AtomicInteger(count);
+    List<CompletableFuture<Void>> steps = new ArrayList<>();
+    try {
+      for (int i = 0; i < count; i++) {
+        CompletableFuture<?>[] waitFor = new CompletableFuture<?>[dependencies.get(i).size()];
+        for (int j = 0; j < waitFor.length; j++) {
+          waitFor[j] = steps.get(dependencies.get(i).get(j));
+        }
+        final int index = i;
+        steps.add(CompletableFuture.allOf(waitFor).thenRunAsync(() -> {
+          if (index > firstFailed.get()) {
+            throw new CancellationException();
+          }
+          try {
+            this.runStep(lines.get(index), deadAfter.get(index));
+          } catch (Throwable e) {
+            errors[index] = e;
+            firstFailed.accumulateAndGet(index, Math::min);
+            throw new CompletionException(e);
+          }
+        }, pool));
+      }
+      for (CompletableFuture<Void> step : steps) {
+        try {
+          step.join();
+        } catch (CompletionException | CancellationException e) {
+          // Reported below, in script order.
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+    for (Throwable error : errors) {
+      if (error instanceof RuntimeException) {
+        throw (RuntimeException) error;
+      } else if (error instanceof Error) {
+        throw (Error) error;
+      } else if (error != null) {
+        throw new IllegalStateException("Running the script failed.", error);
+      }
+    }
+  }
+
+  /**
+   * Get the lines of the last script run that were skipped because their images never reach a
+   * save, in the order they appear in the script.
+   * @return the skipped lines
+   */
+  public List<String> getSkippedLines() {
+    return Collections.unmodifiableList(this.skippedLines);
+  }
+
+  /**
+   * Get the lines of the last script run that reused the image of an earlier line instead of
+   * running their command, in the order they appear in the script.
+   * @return the reused lines
+   */
+  public List<String> getReusedLines() {
+    return Collections.unmodifiableList(this.reusedLines);
+  }
+
+  // Replace lines repeating the work of an earlier line with aliases of its image, remembering
+  // them as reused. Every image made by the script is numbered, and a line's work is its command,
+  // the number of the image it processes, and its other tokens with image names replaced by their
+  // numbers, so the same tokens on a changed image are different work. Images the script was
+  // handed stand for themselves until the script replaces them.
+  private List<ScriptLine> reuseResults(List<ScriptLine> lines) {
+    Map<String, Integer> numbers = new HashMap<>();
+    Map<String, Integer> work = new HashMap<>();
+    // A name that held each image when it was made, which may since have been replaced.
+    Map<Integer, String> holders = new HashMap<>();
+    int next = 0;
+
+    this.reusedLines.clear();
+    List<ScriptLine> result = new ArrayList<>();
+    for (ScriptLine line : lines) {
+      String write = line.getWrite();
+      if (write == null) {
+        result.add(line);
+        continue;
+      }
+      if (line.getCommand().equals("load")) {
+        numbers.put(write, next++);
+        result.add(line);
+        continue;
+      }
+
+      StringBuilder key = new StringBuilder(line.getCommand());
+      for (String read : line.getReads()) {
+        Integer number = numbers.get(read);
+        key.append(number == null ? " =" + read : " #" + number);
+      }
+      Integer done = work.get(key.toString());
+      if (done == null) {
+        done = next++;
+        work.put(key.toString(), done);
+        result.add(line);
+      } else if (done.equals(numbers.get(holders.get(done)))) {
+        result.add(line.aliasOf(holders.get(done)));
+        this.reusedLines.add(line.getText());
+      } else {
+        // The work was done before, but its image has since been replaced, so it is done again.
+        // The image made is still the same one, and keeps its number.
+        result.add(line);
+      }
+      holders.put(done, write);
+      numbers.put(write, done);
+    }
+    return result;
+  }
+
+  // Remove the lines whose images never reach a save, remembering them as skipped. Images needed
+  // are found by going backwards through the script: a save needs the image it reads, and a line
+  // writing a needed image is kept and needs the images it reads in turn. Lines that would stop
+  // the script with an error are always kept, so skipping never hides a mistake: lines without
+  // enough arguments, lines whose command or arguments the features cannot check or find invalid,
+  // and lines reading an image, including a mask, that is not held at that point in the script.
+  private List<ScriptLine> skipDeadSteps(List<ScriptLine> lines) {
+    Map<String, Integer> firstWrite = new HashMap<>();
+    for (int i = 0; i < lines.size(); i++) {
+      if (lines.get(i).getWrite() != null) {
+        firstWrite.putIfAbsent(lines.get(i).getWrite(), i);
+      }
+    }
+
+    boolean[] keep = new boolean[lines.size()];
+    Set<String> needed = new HashSet<>();
+    for (int i = lines.size() - 1; i >= 0; i--) {
+      ScriptLine line = lines.get(i);
+      if (line.getWrite() == null) {
+        keep[i] = true;
+      } else if (needed.remove(line.getWrite())) {
+        keep[i] = true;
+      } else {
+        keep[i] = this.wouldFail(line, i, firstWrite);
+      }
+      if (keep[i]) {
+        needed.addAll(line.getReads());
+      }
+    }
+
+    this.skippedLines.clear();
+    List<ScriptLine> kept = new ArrayList<>();
+    for (int i = 0; i < lines.size(); i++) {
+      if (keep[i]) {
+        kept.add(lines.get(i));
+      } else {
+        this.skippedLines.add(lines.get(i).getText());
+      }
+    }
+    return kept;
+  }
+
+  // Whether running a line writing an image would fail, given the line it is in the script and
+  // the line each name is first written by.
+  private boolean wouldFail(ScriptLine line, int index, Map<String, Integer> firstWrite) {
+    if (line.getCommand().equals("load")) {
+      try {
+        return !Files.isReadable(Paths.get(line.getFile()));
+      } catch (InvalidPathException e) {
+        return true;
+      }
+    }
+    List<String> reads = new ArrayList<>();
+    reads.add(line.getReads().get(0));
+    if (line.getSource() == null) {
+      if (!(this.controls instanceof ControllerFeatures)) {
+        return true;
+      }
+      try {
+        reads.addAll(((ControllerFeatures) this.controls).checkProcessingCommand(
+                line.getCommand(), arguments(line)));
+      } catch (IllegalStateException e) {
+        return true;
+      }
+    }
+    for (String name : reads) {
+      if (firstWrite.getOrDefault(name, index) >= index && !this.isHeld(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Whether the processor holds an image with the given name before the script runs.
+  private boolean isHeld(String name) {
+    try {
+      this.processor.getImageState(name);
+      return true;
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      return false;
+    }
+  }
+
+  // Find, for every line, the images the script made that no later line uses before making them
+  // again. Images live after a line are found by going backwards through the script, where a line
+  // kills the image it writes and brings the images it reads to life.
+  private static List<Set<String>> deadImages(List<ScriptLine> lines) {
+    // Only images the script made itself are ever removed, never ones it was handed.
+    Map<String, Integer> firstWrite = new HashMap<>();
+    for (int i = 0; i < lines.size(); i++) {
+      if (lines.get(i).getWrite() != null) {
+        firstWrite.putIfAbsent(lines.get(i).getWrite(), i);
+      }
+    }
+
+    List<Set<String>> dead = new ArrayList<>(Collections.nCopies(lines.size(), null));
+    Set<String> live = new HashSet<>();
+    for (int i = lines.size() - 1; i >= 0; i--) {
+      ScriptLine line = lines.get(i);
+      List<String> used = new ArrayList<>(line.getReads());
+      if (line.getWrite() != null) {
+        used.add(line.getWrite());
+      }
+      Set<String> deadHere = new HashSet<>();
+      for (String name : used) {
+        if (!live.contains(name) && firstWrite.getOrDefault(name, lines.size()) <= i) {
+          deadHere.add(name);
+        }
+      }
+      dead.set(i, deadHere);
+
+      if (line.getWrite() != null) {
+        live.remove(line.getWrite());
       }
+      live.addAll(line.getReads());
     }
+    return dead;
   }
 
 }
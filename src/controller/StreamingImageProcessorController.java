@@ -0,0 +1,235 @@
+package controller;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import controller.commands.ImageProcessingCommand;
+import controller.commands.Pipeline;
+import controller.commands.RegionCommand;
+import controller.commands.TileView;
+import model.color.Color;
+import util.PpmRowReader;
+import util.PpmRowWriter;
+import util.Util;
+
+/**
+ * Represents a controller that runs a script on a PPM image without ever holding the whole image.
+ * The script must load one PPM file, run a chain of point operations and neighborhood filters where
+ * each command processes the output of the one before it, and save the final image to a PPM file.
+ *
+ * <p>Rows flow from the file being read, through the commands, to the file being written. Only a
+ * sliding window of rows is kept: one band of output rows plus the combined halo of the commands
+ * above and below it, so memory use depends on the width of the image and the size of the kernels
+ * but not on the height of the image.
+ */
+public class StreamingImageProcessorController implements ImageProcessorController {
+
+  // The number of output rows computed at once. Larger bands recompute fewer halo rows of the
+  // intermediate commands, at the cost of a taller window.
+  public static final int DEFAULT_BAND = 16;
+
+  private final Readable input;
+  private final ControllerFeatures features;
+  private final int band;
+
+  /**
+   * Create a streaming controller that runs the given script, building its commands with the
+   * given features.
+   * @param input the script to run
+   * @param features the features used to build processing commands
+   * @throws IllegalArgumentException if any of the arguments are null
+   */
+  public StreamingImageProcessorController(Readable input, ControllerFeatures features)
+          throws IllegalArgumentException {
+    this(input, features, DEFAULT_BAND);
+  }
+
+  /**
+   * Create a streaming controller that runs the given script, building its commands with the
+   * given features and computing the given number of output rows at once.
+   * @param input the script to run
+   * @param features the features used to build processing commands
+   * @param band the number of output rows computed at once
+   * @throws IllegalArgumentException if any of the arguments are null or the band is not positive
+   */
+  public StreamingImageProcessorController(Readable input, ControllerFeatures features, int band)
+          throws IllegalArgumentException {
+    this.input = Util.requireNonNullArg(input);
+    this.features = Util.requireNonNullArg(features);
+    if (band < 1) {
+      throw new IllegalArgumentException("Band height must be positive.");
+    }
+    this.band = band;
+  }
+
+  @Override
+  public void run() throws IllegalStateException {
+    Scanner sc = new Scanner(this.input);
+    String loadPath = null;
+    String current = null;
+    String savePath = null;
+    List<RegionCommand> stages = new ArrayList<>();
+
+    // Check the whole script can be streamed before touching any files.
+    while (sc.hasNextLine()) {
+      String line = sc.nextLine();
+      if (line.startsWith("#") || line.length() == 0) {
+        continue;
+      }
+      if (savePath != null) {
+        throw new IllegalStateException("Streamed scripts must end with their save.");
+      }
+      Scanner tokenScanner = new Scanner(line);
+      String cmd;
+      String name;
+      String saveName;
+      try {
+        cmd = tokenScanner.next();
+        name = tokenScanner.next();
+        saveName = tokenScanner.next();
+      } catch (NoSuchElementException e) {
+        throw new IllegalStateException(String.format("Command '%s' has insufficient arguments.",
+                line));
+      }
+
+      if (cmd.equals("load")) {
+        if (loadPath != null) {
+          throw new IllegalStateException("Streamed scripts can only load one image.");
+        }
+        loadPath = requirePPM(name);
+        current = saveName;
+      } else if (loadPath == null) {
+        throw new IllegalStateException("Streamed scripts must start by loading an image.");
+      } else if (!name.equals(current)) {
+        throw new IllegalStateException(String.format(
+                "Command '%s' does not use the previous result, so it cannot be streamed.", line));
+      } else if (cmd.equals("save")) {
+        savePath = requirePPM(saveName);
+      } else {
+        ImageProcessingCommand command;
+        try {
+          command = this.features.createProcessingCommand(cmd, tokenScanner);
+        } catch (NoSuchElementException e) {
+          throw new IllegalStateException(String.format("Command '%s' has insufficient arguments.",
+                  line));
+        }
+        if (!(command instanceof RegionCommand)) {
+          throw new IllegalStateException(String.format("Command '%s' cannot be streamed.", cmd));
+        }
+        stages.add((RegionCommand) command);
+        current = saveName;
+      }
+    }
+    if (savePath == null) {
+      throw new IllegalStateException("Streamed scripts must end by saving the image.");
+    }
+
+    // The image is written next to the file it replaces and only moved over it once complete, so
+    // a script saving over the very file it loads still reads the whole of it.
+    Path target = Paths.get(savePath).toAbsolutePath();
+    Path partial = null;
+    try (InputStream in = new FileInputStream(loadPath)) {
+      // Created like any other output file rather than as a temporary file, so that it ends up
+      // with the same permissions a file saved directly would have.
+      partial = target.resolveSibling("." + target.getFileName() + "." + System.nanoTime()
+              + ".part");
+      try (OutputStream out = Files.newOutputStream(partial, StandardOpenOption.CREATE_NEW,
+              StandardOpenOption.WRITE)) {
+        this.stream(new PpmRowReader(in), out, stages);
+      }
+      try {
+        Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+      partial = null;
+    } catch (FileNotFoundException | NoSuchFileException e) {
+      throw new IllegalStateException("Could not find specified file to read from or output to.");
+    } catch (IOException e) {
+      throw new IllegalStateException("IO exception encountered when streaming the image.");
+    } finally {
+      if (partial != null) {
+        try {
+          Files.deleteIfExists(partial);
+        } catch (IOException e) {
+          // Nothing more can be done about a partial file that cannot be deleted.
+        }
+      }
+    }
+  }
+
+  /**
+   * Run the region commands over every row of the image being read, writing the results in PPM
+   * format as soon as each band of rows is complete.
+   * @param reader the image being read
+   * @param dest the destination to write to
+   * @param stages the commands to run, in order
+   * @throws IllegalArgumentException if any of the arguments are null
+   * @throws IllegalStateException if reading or writing fails
+   */
+  public void stream(PpmRowReader reader, OutputStream dest, List<RegionCommand> stages)
+          throws IllegalArgumentException, IllegalStateException {
+    Util.requireNonNullArg(reader);
+    Util.requireNonNullArg(dest);
+    Util.requireNonNullArg(stages);
+    int width = reader.getWidth();
+    int height = reader.getHeight();
+    PpmRowWriter writer = new PpmRowWriter(dest, width, height);
+    if (stages.isEmpty()) {
+      while (reader.hasNextRow()) {
+        writer.writeRow(reader.nextRow());
+      }
+      return;
+    }
+
+    // How far above and below an output row the input rows affecting it can be.
+    int halo = 0;
+    for (RegionCommand stage : stages) {
+      halo += stage.getHalo();
+    }
+
+    Deque<Color[]> window = new ArrayDeque<>();
+    int windowStart = 0;
+    for (int row = 0; row < height; row += this.band) {
+      int bandHeight = Math.min(this.band, height - row);
+      int needed = Math.min(height, row + bandHeight + halo);
+      while (windowStart + window.size() < needed) {
+        window.addLast(reader.nextRow());
+      }
+      while (windowStart < row - halo) {
+        window.removeFirst();
+        windowStart++;
+      }
+
+      TileView view = new TileView(window.toArray(new Color[0][]), windowStart, 0, width, height);
+      Color[][] res = Pipeline.computeRegion(stages, view, row, 0, bandHeight, width);
+      for (Color[] resRow : res) {
+        writer.writeRow(resRow);
+      }
+    }
+  }
+
+  private static String requirePPM(String path) throws IllegalStateException {
+    if (!path.endsWith(".ppm") && !path.endsWith(".PPM")) {
+      throw new IllegalStateException("Only PPM files can be streamed.");
+    }
+    return path;
+  }
+}
@@ -0,0 +1,233 @@
+package controller.commands;
+
+import model.color.Color;
+import model.image.ImageModel;
+import util.Util;
+
+/**
+ * Function object command to smooth an image while keeping its edges, by averaging every pixel
+ * only with nearby pixels of similar brightness. The spatial sigma is how far, in pixels, the
+ * smoothing reaches, and the range sigma is how different, in brightness levels, two pixels can be
+ * before they stop being averaged together.
+ *
+ * <p>The filter is approximated with a bilateral grid: a coarse three dimensional grid over the
+ * image position and brightness, with cells one spatial sigma wide and one range sigma deep. Every
+ * pixel is added into the cell it falls in, the grid is blurred with a small kernel along each
+ * axis, and every output pixel is read back by interpolating the blurred grid at the pixel's own
+ * position and brightness. The work per pixel stays the same for any sigma, and larger spatial
+ * sigmas only make the grid smaller. Cell positions, brightness levels and interpolation weights
+ * are looked up in tables built once per call rather than computed for every pixel.
+ *
+ * <p>Small sigmas would make the grid finer than the image itself, with more cells than there are
+ * pixels and hundreds of brightness levels per pixel. The range cells are therefore never made so
+ * shallow that the grid holds more than {@link #MAX_CELLS_PER_PIXEL} cells for every pixel, which
+ * only ever coarsens the range sigma of filters with a spatial sigma of a few pixels. Tall areas
+ * are filtered a band of rows at a time, each with its own grid around it, so the grid never takes
+ * more memory than a band needs, and a band gives the same pixels as the whole area.
+ */
+public class Bilateral implements RegionCommand {
+
+  // The most grid cells for every pixel of the image, which bounds how shallow range cells get.
+  public static final int MAX_CELLS_PER_PIXEL = 8;
+  // The number of spatial cells down each band of rows filtered with its own grid.
+  private static final int BAND_CELLS = 64;
+
+  // Blur applied to the grid along each axis, about a gaussian with a sigma of one cell.
+  private static final float[] GRID_KERNEL = {1 / 16f, 4 / 16f, 6 / 16f, 4 / 16f, 1 / 16f};
+  private static final int KERNEL_RADIUS = 2;
+  // Channel sums and the pixel count stored for each grid cell.
+  private static final int VALUES = 4;
+  private static final int LEVELS = Color.MAX_VALUE + 1;
+
+  private final int cell;
+  private final double rangeCell;
+  private final int gridDepth;
+
+  /**
+   * Initializes an edge preserving smoothing with the given strengths.
+   * @param spatialSigma how far the smoothing reaches, in pixels
+   * @param rangeSigma how different two brightness levels can be and still be averaged together
+   * @throws IllegalArgumentException if either sigma is not a positive number
+   */
+  public Bilateral(double spatialSigma, double rangeSigma) throws IllegalArgumentException {
+    if (!(spatialSigma > 0) || !(rangeSigma > 0)
+            || Double.isInfinite(spatialSigma) || Double.isInfinite(rangeSigma)) {
+      throw new IllegalArgumentException("Bilateral sigmas must be positive numbers.");
+    }
+    this.cell = Math.max(1, (int) Math.round(spatialSigma));
+    // Deep enough that the levels and the two cells past them fit in the cells allowed per pixel.
+    double shallowest = (double) Color.MAX_VALUE
+            / Math.max(1, (long) MAX_CELLS_PER_PIXEL * this.cell * this.cell - 2);
+    this.rangeCell = Math.max(1, Math.max(rangeSigma, shallowest));
+    this.gridDepth = (int) (Color.MAX_VALUE / this.rangeCell) + 2;
+  }
+
+  @Override
+  public String getKey() {
+    return "bilateral " + this.cell + " " + this.rangeCell;
+  }
+
+  /**
+   * Modify the given image by smoothing it while keeping its edges.
+   * @param m the image to modify
+   * @return the smoothed image
+   */
+  @Override
+  public ImageModel process(ImageModel m) throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    return m.createNew(this.processRegion(m, 0, 0, m.getHeight(), m.getWidth()));
+  }
+
+  /**
+   * Get how far the pixels that affect an output pixel can be from it. A pixel is interpolated
+   * from the cells next to it, which the grid blur mixes with the two cells on either side, and
+   * each of those holds the pixels within half a cell of it.
+   * @return the halo
+   */
+  @Override
+  public int getHalo() {
+    return 4 * this.cell;
+  }
+
+  @Override
+  public Color[][] processRegion(ImageModel m, int row, int col, int height, int width)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    if (row < 0 || col < 0 || row + height > m.getHeight() || col + width > m.getWidth()) {
+      throw new IllegalArgumentException("Cannot filter outside of image bounds.");
+    }
+    int band = BAND_CELLS * this.cell;
+    if (height <= band) {
+      return this.processBand(m, row, col, height, width);
+    }
+    Color[][] res = new Color[height][];
+    for (int r = 0; r < height; r += band) {
+      Color[][] rows = this.processBand(m, row + r, col, Math.min(band, height - r), width);
+      System.arraycopy(rows, 0, res, r, rows.length);
+    }
+    return res;
+  }
+
+  // Filter a rectangle with a single grid around it.
+  private Color[][] processBand(ImageModel m, int row, int col, int height, int width) {
+    // Cells are placed relative to the whole image, so a rectangle sees the same grid around it
+    // as the whole image does.
+    int halo = this.getHalo();
+    int top = Math.max(0, row - halo);
+    int left = Math.max(0, col - halo);
+    int bottom = Math.min(m.getHeight(), row + height + halo);
+    int right = Math.min(m.getWidth(), col + width + halo);
+    int firstRow = top / this.cell - 1;
+    int firstCol = left / this.cell - 1;
+    int gridHeight = (bottom - 1) / this.cell + 2 - firstRow + 1;
+    int gridWidth = (right - 1) / this.cell + 2 - firstCol + 1;
+    int gridDepth = this.gridDepth;
+
+    // Tables from brightness to the cell a pixel is added to, and to the lower of the two cells it
+    // is read back from with the weight of the upper one.
+    int[] levelCell = new int[LEVELS];
+    int[] levelLow = new int[LEVELS];
+    float[] levelFrac = new float[LEVELS];
+    for (int v = 0; v < LEVELS; v++) {
+      double z = v / this.rangeCell;
+      levelCell[v] = (int) Math.round(z);
+      levelLow[v] = (int) Math.floor(z);
+      levelFrac[v] = (float) (z - levelLow[v]);
+    }
+    float[] offsetFrac = new float[this.cell];
+    for (int i = 0; i < this.cell; i++) {
+      offsetFrac[i] = (float) i / this.cell;
+    }
+
+    // Splat: add every pixel of the area into its nearest cell.
+    float[] grid = new float[gridHeight * gridWidth * gridDepth * VALUES];
+    for (int r = top; r < bottom; r++) {
+      int gy = (2 * r + this.cell) / (2 * this.cell) - firstRow;
+      for (int c = left; c < right; c++) {
+        Color color = m.colorAt(r, c);
+        int gx = (2 * c + this.cell) / (2 * this.cell) - firstCol;
+        int gz = levelCell[luma(color)];
+        int idx = ((gy * gridWidth + gx) * gridDepth + gz) * VALUES;
+        grid[idx] += color.red();
+        grid[idx + 1] += color.green();
+        grid[idx + 2] += color.blue();
+        grid[idx + 3] += 1;
+      }
+    }
+
+    // Blur: smooth the grid along brightness, then across, then down.
+    blurAxis(grid, gridDepth, VALUES);
+    blurAxis(grid, gridWidth, gridDepth * VALUES);
+    blurAxis(grid, gridHeight, gridWidth * gridDepth * VALUES);
+
+    // Slice: interpolate the grid at every output pixel and normalize by the interpolated count.
+    Color[][] res = new Color[height][width];
+    float[] sums = new float[VALUES];
+    int dz = VALUES;
+    int dx = gridDepth * VALUES;
+    int dy = gridWidth * gridDepth * VALUES;
+    for (int r = 0; r < height; r++) {
+      int y = row + r;
+      int gy = y / this.cell - firstRow;
+      float fy = offsetFrac[y % this.cell];
+      for (int c = 0; c < width; c++) {
+        int x = col + c;
+        Color color = m.colorAt(y, x);
+        int gx = x / this.cell - firstCol;
+        float fx = offsetFrac[x % this.cell];
+        int level = luma(color);
+        int gz = levelLow[level];
+        float fz = levelFrac[level];
+        int base = ((gy * gridWidth + gx) * gridDepth + gz) * VALUES;
+        for (int v = 0; v < VALUES; v++) {
+          int idx = base + v;
+          float low = lerp(
+                  lerp(grid[idx], grid[idx + dz], fz),
+                  lerp(grid[idx + dx], grid[idx + dx + dz], fz), fx);
+          float high = lerp(
+                  lerp(grid[idx + dy], grid[idx + dy + dz], fz),
+                  lerp(grid[idx + dy + dx], grid[idx + dy + dx + dz], fz), fx);
+          sums[v] = lerp(low, high, fy);
+        }
+        if (sums[3] <= 0) {
+          res[r][c] = color;
+        } else {
+          res[r][c] = new Color(Math.round(sums[0] / sums[3]), Math.round(sums[1] / sums[3]),
+                  Math.round(sums[2] / sums[3]));
+        }
+      }
+    }
+    return res;
+  }
+
+  private static int luma(Color color) {
+    return Math.round(0.2126f * color.red() + 0.7152f * color.green() + 0.0722f * color.blue());
+  }
+
+  private static float lerp(float a, float b, float t) {
+    return a + (b - a) * t;
+  }
+
+  // Blur every line of the grid along one axis, given the number of cells along that axis and
+  // the distance between neighboring cells of the axis in the flattened grid. Cells past the ends
+  // of the grid are empty.
+  private static void blurAxis(float[] grid, int length, int stride) {
+    float[] line = new float[length + 2 * KERNEL_RADIUS];
+    int block = length * stride;
+    for (int start = 0; start < grid.length; start += block) {
+      for (int offset = 0; offset < stride; offset++) {
+        int first = start + offset;
+        for (int i = 0; i < length; i++) {
+          line[i + KERNEL_RADIUS] = grid[first + i * stride];
+        }
+        for (int i = 0; i < length; i++) {
+          float sum = 0;
+          for (int k = 0; k < GRID_KERNEL.length; k++) {
+            sum += GRID_KERNEL[k] * line[i + k];
+          }
+          grid[first + i * stride] = sum;
+        }
+      }
+    }
+  }
+}
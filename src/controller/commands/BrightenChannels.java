@@ -12,6 +12,6 @@ public class BrightenChannels extends MapChannels {
    * @param increment the amount to brighten (positive) / darken (negative)
    */
   public BrightenChannels(int increment) {
-    super((Color c) -> c.add(increment, increment, increment));
+    super((Color c) -> c.add(increment, increment, increment), "brighten " + increment);
   }
 }
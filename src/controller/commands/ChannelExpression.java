@@ -0,0 +1,437 @@
+package controller.commands;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.constant.ConstantDescs;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+import model.color.Color;
+import model.image.ImageModel;
+import util.Util;
+
+/**
+ * Function object command to compute every channel of every pixel with a formula of the pixel's
+ * red, green and blue values, such as {@code r*0.9+10}. Formulas use {@code r}, {@code g} and
+ * {@code b}, numbers, the operators {@code + - * / ^} with parentheses, and the functions
+ * {@code min}, {@code max}, {@code abs}, {@code sqrt} and {@code floor}. Results are rounded and
+ * clamped to the range of a channel.
+ *
+ * <p>Formulas are parsed once, when the command is created, and compiled into method handle trees
+ * taking the three channel values as ints, with constant parts folded away. A formula that only
+ * uses one channel, or none, is evaluated once for each of the 256 values and then looked up, so
+ * it costs the same as a built in command.
+ *
+ * <p>The three channels' trees, or their tables, are then bound as constants into a class of
+ * their own, defined for the command as a hidden class from the bytes of {@link Compiled}, which
+ * runs the loop over the pixels. The JIT compiles that loop with the trees inlined into it, as if
+ * the formulas had been written out in Java.
+ */
+public class ChannelExpression implements RegionCommand {
+
+  private static final MethodType TYPE =
+          MethodType.methodType(double.class, int.class, int.class, int.class);
+  private static final int LEVELS = Color.MAX_VALUE + 1;
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+  // The class file of the loop every command's formulas are bound into.
+  private static final byte[] TEMPLATE = readTemplate();
+
+  // The loop over the pixels, with the formulas of this command as constants.
+  private final Kernel kernel;
+  private final String key;
+
+  /**
+   * Initializes a command computing each channel with the given formula.
+   * @param red the formula for the red channel
+   * @param green the formula for the green channel
+   * @param blue the formula for the blue channel
+   * @throws IllegalArgumentException if any formula is null or not a valid formula
+   */
+  public ChannelExpression(String red, String green, String blue)
+          throws IllegalArgumentException {
+    String[] formulas = {red, green, blue};
+    MethodHandle[] channels = new MethodHandle[3];
+    MethodHandle round = Parser.operator("round", MethodType.methodType(int.class, double.class));
+    for (int i = 0; i < 3; i++) {
+      Node node = new Parser(Util.requireNonNullArg(formulas[i])).parse();
+      int used = Integer.bitCount(node.channels);
+      if (used <= 1) {
+        int channel = used == 0 ? 0 : Integer.numberOfTrailingZeros(node.channels);
+        int[] args = new int[3];
+        int[] table = new int[LEVELS];
+        for (int v = 0; v < LEVELS; v++) {
+          args[channel] = v;
+          table[v] = round(invoke(node.handle, args[0], args[1], args[2]));
+        }
+        channels[i] = Node.onChannel(MethodHandles.arrayElementGetter(int[].class).bindTo(table),
+                channel);
+      } else {
+        channels[i] = MethodHandles.filterReturnValue(node.handle, round);
+      }
+    }
+    this.kernel = bind(channels);
+    // Formulas cannot contain the separator, so different formulas always give different keys.
+    this.key = "expr " + red + "|" + green + "|" + blue;
+  }
+
+  @Override
+  public String getKey() {
+    return this.key;
+  }
+
+  /**
+   * Modify the given image by computing every channel with its formula.
+   * @param m the image to modify
+   * @return the processed image
+   */
+  @Override
+  public ImageModel process(ImageModel m) throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    return m.createNew(this.processRegion(m, 0, 0, m.getHeight(), m.getWidth()));
+  }
+
+  @Override
+  public int getHalo() {
+    return 0;
+  }
+
+  @Override
+  public Color[][] processRegion(ImageModel m, int row, int col, int height, int width)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    return this.kernel.apply(m, row, col, height, width);
+  }
+
+  // Define a hidden class from the template with the given handles of the three channels as its
+  // constants, and make the loop it runs.
+  private static Kernel bind(MethodHandle[] channels) {
+    try {
+      MethodHandles.Lookup lookup =
+              LOOKUP.defineHiddenClassWithClassData(TEMPLATE, List.of(channels), true);
+      return (Kernel) lookup.findConstructor(lookup.lookupClass(),
+              MethodType.methodType(void.class)).invoke();
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException("Formula could not be compiled.");
+    }
+  }
+
+  private static byte[] readTemplate() {
+    try (InputStream in = ChannelExpression.class.getResourceAsStream(
+            "ChannelExpression$Compiled.class")) {
+      if (in == null) {
+        throw new IllegalStateException("Formula template could not be found.");
+      }
+      return in.readAllBytes();
+    } catch (IOException e) {
+      throw new IllegalStateException("Formula template could not be read.");
+    }
+  }
+
+  private static double invoke(MethodHandle handle, int r, int g, int b) {
+    try {
+      return (double) handle.invokeExact(r, g, b);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException("Formula could not be evaluated.");
+    }
+  }
+
+  // Round a result to a channel value, treating results that are not numbers as zero.
+  private static int round(double value) {
+    if (Double.isNaN(value)) {
+      return 0;
+    }
+    return (int) Math.max(0, Math.min(Color.MAX_VALUE, Math.round(value)));
+  }
+
+  private static double add(double a, double b) {
+    return a + b;
+  }
+
+  private static double subtract(double a, double b) {
+    return a - b;
+  }
+
+  private static double multiply(double a, double b) {
+    return a * b;
+  }
+
+  private static double divide(double a, double b) {
+    return a / b;
+  }
+
+  private static double negate(double a) {
+    return -a;
+  }
+
+  /**
+   * The loop computing every pixel of an area of an image with a command's formulas.
+   */
+  private interface Kernel {
+    Color[][] apply(ImageModel m, int row, int col, int height, int width);
+  }
+
+  /**
+   * Template for the loop of every command, never used as a class itself. Its class file is
+   * defined again as a hidden class for each command, with the handles from the three channel
+   * values to each output channel as the class data, so every command gets its own static final
+   * handles that the JIT treats as constants.
+   */
+  private static final class Compiled implements Kernel {
+    private static final MethodHandle RED = channel(0);
+    private static final MethodHandle GREEN = channel(1);
+    private static final MethodHandle BLUE = channel(2);
+
+    private static MethodHandle channel(int index) {
+      try {
+        return MethodHandles.classDataAt(MethodHandles.lookup(), ConstantDescs.DEFAULT_NAME,
+                MethodHandle.class, index);
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Formula could not be compiled.");
+      }
+    }
+
+    @Override
+    public Color[][] apply(ImageModel m, int row, int col, int height, int width) {
+      Color[][] res = new Color[height][width];
+      try {
+        for (int r = 0; r < height; r++) {
+          for (int c = 0; c < width; c++) {
+            Color color = m.colorAt(row + r, col + c);
+            int red = color.red();
+            int green = color.green();
+            int blue = color.blue();
+            res[r][c] = new Color((int) RED.invokeExact(red, green, blue),
+                    (int) GREEN.invokeExact(red, green, blue),
+                    (int) BLUE.invokeExact(red, green, blue));
+          }
+        }
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new IllegalStateException("Formula could not be evaluated.");
+      }
+      return res;
+    }
+  }
+
+  /**
+   * A compiled part of a formula: a handle from the three channel values to its result, and the
+   * channels it uses as a bit set.
+   */
+  private static class Node {
+    private final MethodHandle handle;
+    private final int channels;
+
+    private Node(MethodHandle handle, int channels) {
+      this.handle = handle;
+      this.channels = channels;
+    }
+
+    private static Node constant(double value) {
+      return new Node(MethodHandles.dropArguments(MethodHandles.constant(double.class, value), 0,
+              int.class, int.class, int.class), 0);
+    }
+
+    private static Node channel(int index) {
+      return new Node(onChannel(MethodHandles.identity(int.class)
+              .asType(MethodType.methodType(double.class, int.class)), index), 1 << index);
+    }
+
+    // Turn a handle taking one channel value into one taking all three and using the given one.
+    private static MethodHandle onChannel(MethodHandle handle, int index) {
+      for (int i = 0; i < index; i++) {
+        handle = MethodHandles.dropArguments(handle, 0, int.class);
+      }
+      for (int i = index + 1; i < 3; i++) {
+        handle = MethodHandles.dropArguments(handle, i, int.class);
+      }
+      return handle;
+    }
+
+    // Apply a function of doubles to the results of the given nodes, folding it to a constant if
+    // none of them use any channel.
+    private static Node apply(MethodHandle function, Node... args) {
+      int channels = 0;
+      MethodHandle handle = function;
+      // Replace each argument with the three channel values its node takes, last first so the
+      // positions of the earlier arguments do not move.
+      for (int i = args.length - 1; i >= 0; i--) {
+        channels |= args[i].channels;
+        handle = MethodHandles.collectArguments(handle, i, args[i].handle);
+      }
+      int[] reorder = new int[3 * args.length];
+      for (int i = 0; i < reorder.length; i++) {
+        reorder[i] = i % 3;
+      }
+      handle = MethodHandles.permuteArguments(handle, TYPE, reorder);
+      if (channels == 0) {
+        return constant(invoke(handle, 0, 0, 0));
+      }
+      return new Node(handle, channels);
+    }
+  }
+
+  /**
+   * Recursive descent parser from the text of a formula to its compiled node. Sums are made of
+   * products, products of powers, and powers of signed atoms.
+   */
+  private static class Parser {
+    private static final MethodType UNARY = MethodType.methodType(double.class, double.class);
+    private static final MethodType BINARY =
+            MethodType.methodType(double.class, double.class, double.class);
+
+    private final String text;
+    private int pos;
+
+    private Parser(String text) {
+      this.text = text;
+      this.pos = 0;
+    }
+
+    private Node parse() throws IllegalArgumentException {
+      Node node = this.sum();
+      this.skipSpaces();
+      if (this.pos != this.text.length()) {
+        throw this.error();
+      }
+      return node;
+    }
+
+    private Node sum() {
+      Node node = this.product();
+      while (true) {
+        if (this.accept('+')) {
+          node = Node.apply(operator("add", BINARY), node, this.product());
+        } else if (this.accept('-')) {
+          node = Node.apply(operator("subtract", BINARY), node, this.product());
+        } else {
+          return node;
+        }
+      }
+    }
+
+    private Node product() {
+      Node node = this.power();
+      while (true) {
+        if (this.accept('*')) {
+          node = Node.apply(operator("multiply", BINARY), node, this.power());
+        } else if (this.accept('/')) {
+          node = Node.apply(operator("divide", BINARY), node, this.power());
+        } else {
+          return node;
+        }
+      }
+    }
+
+    // Powers group to the right, and bind tighter than a sign on their left.
+    private Node power() {
+      if (this.accept('-')) {
+        return Node.apply(operator("negate", UNARY), this.power());
+      }
+      Node node = this.atom();
+      if (this.accept('^')) {
+        node = Node.apply(math("pow", BINARY), node, this.power());
+      }
+      return node;
+    }
+
+    private Node atom() {
+      this.skipSpaces();
+      if (this.accept('(')) {
+        Node node = this.sum();
+        this.expect(')');
+        return node;
+      }
+      int start = this.pos;
+      if (this.pos < this.text.length() && (Character.isDigit(this.text.charAt(this.pos))
+              || this.text.charAt(this.pos) == '.')) {
+        while (this.pos < this.text.length() && (Character.isDigit(this.text.charAt(this.pos))
+                || this.text.charAt(this.pos) == '.')) {
+          this.pos++;
+        }
+        try {
+          return Node.constant(Double.parseDouble(this.text.substring(start, this.pos)));
+        } catch (NumberFormatException e) {
+          throw this.error();
+        }
+      }
+      while (this.pos < this.text.length() && Character.isLetter(this.text.charAt(this.pos))) {
+        this.pos++;
+      }
+      String name = this.text.substring(start, this.pos);
+      switch (name) {
+        case "r":
+          return Node.channel(0);
+        case "g":
+          return Node.channel(1);
+        case "b":
+          return Node.channel(2);
+        case "abs":
+        case "sqrt":
+        case "floor":
+          this.expect('(');
+          Node arg = this.sum();
+          this.expect(')');
+          return Node.apply(math(name, UNARY), arg);
+        case "min":
+        case "max":
+          this.expect('(');
+          Node first = this.sum();
+          this.expect(',');
+          Node second = this.sum();
+          this.expect(')');
+          return Node.apply(math(name, BINARY), first, second);
+        default:
+          throw this.error();
+      }
+    }
+
+    private void skipSpaces() {
+      while (this.pos < this.text.length() && Character.isWhitespace(this.text.charAt(this.pos))) {
+        this.pos++;
+      }
+    }
+
+    private boolean accept(char c) {
+      this.skipSpaces();
+      if (this.pos < this.text.length() && this.text.charAt(this.pos) == c) {
+        this.pos++;
+        return true;
+      }
+      return false;
+    }
+
+    private void expect(char c) {
+      if (!this.accept(c)) {
+        throw this.error();
+      }
+    }
+
+    private IllegalArgumentException error() {
+      return new IllegalArgumentException(String.format("Invalid formula '%s' at position %d.",
+              this.text, this.pos));
+    }
+
+    private static MethodHandle operator(String name, MethodType type) {
+      try {
+        return LOOKUP.findStatic(ChannelExpression.class, name, type);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Formula operator could not be found.");
+      }
+    }
+
+    private static MethodHandle math(String name, MethodType type) {
+      try {
+        return LOOKUP.findStatic(Math.class, name, type);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Formula function could not be found.");
+      }
+    }
+  }
+}
@@ -0,0 +1,283 @@
+package controller.commands;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Scanner;
+import java.util.function.Function;
+
+import model.color.Color;
+import util.Util;
+
+/**
+ * Function object command to map every color of an image through a three dimensional lookup
+ * table, such as a color grade exported as a {@code .cube} file. The table holds output colors on
+ * an evenly spaced grid of input colors, and colors between grid points are interpolated from the
+ * grid points around them, so any grade costs a single pass over the image.
+ *
+ * <p>Input channels only ever take 256 values, so the grid cell and the position within it of every
+ * value of every channel are looked up in tables built once with the command.
+ */
+public class ColorLut extends MapChannels {
+
+  /**
+   * Represents the ways colors between grid points can be interpolated. Trilinear blends the eight
+   * corners of the grid cell around a color, and tetrahedral blends only the four corners of the
+   * tetrahedron within that cell around the color, which keeps greys on the grey axis.
+   */
+  public enum Interpolation { TRILINEAR, TETRAHEDRAL }
+
+  private final int size;
+  private final float[] table;
+  private final float[] domainMin;
+  private final float[] domainMax;
+  private final Interpolation interpolation;
+  // Computed the first time it is asked for, as it digests the whole table.
+  private String key;
+
+  /**
+   * Initializes a lookup table command.
+   * @param size the number of grid points along each axis
+   * @param table the output red, green and blue of every grid point, from 0 to 1, with red
+   *              changing fastest and blue slowest
+   * @param domainMin the input red, green and blue, from 0 to 1, of the first grid point
+   * @param domainMax the input red, green and blue, from 0 to 1, of the last grid point
+   * @param interpolation how to interpolate colors between grid points
+   * @throws IllegalArgumentException if any argument is null, there are fewer than two grid points
+   *                                  per axis, or the arrays are the wrong length
+   */
+  public ColorLut(int size, float[] table, float[] domainMin, float[] domainMax,
+                  Interpolation interpolation) throws IllegalArgumentException {
+    super(mapping(size, table, domainMin, domainMax, interpolation));
+    this.size = size;
+    this.table = table;
+    this.domainMin = domainMin;
+    this.domainMax = domainMax;
+    this.interpolation = interpolation;
+  }
+
+  @Override
+  public String getKey() {
+    if (this.key == null) {
+      try {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        ByteBuffer bytes = ByteBuffer.allocate(
+                4 * (this.table.length + this.domainMin.length + this.domainMax.length));
+        for (float[] values : new float[][]{this.table, this.domainMin, this.domainMax}) {
+          for (float value : values) {
+            bytes.putFloat(value);
+          }
+        }
+        this.key = "apply-lut " + this.interpolation + " " + this.size + " "
+                + new BigInteger(1, digest.digest(bytes.array())).toString(16);
+      } catch (NoSuchAlgorithmException e) {
+        // Every Java platform is required to support SHA-256.
+        throw new IllegalStateException("No SHA-256 digest available.");
+      }
+    }
+    return this.key;
+  }
+
+  /**
+   * Get a command using the same table with a different interpolation.
+   * @param interpolation how to interpolate colors between grid points
+   * @return the command
+   * @throws IllegalArgumentException if the interpolation is null
+   */
+  public ColorLut withInterpolation(Interpolation interpolation) throws IllegalArgumentException {
+    return new ColorLut(this.size, this.table, this.domainMin, this.domainMax, interpolation);
+  }
+
+  /**
+   * Read a three dimensional lookup table in the {@code .cube} format, interpolated trilinearly.
+   * @param input the input that should be in the cube format
+   * @return the command mapping colors through the table
+   * @throws IllegalArgumentException if the input is null
+   * @throws IllegalStateException if the input is not a valid three dimensional cube file
+   */
+  public static ColorLut readCube(InputStream input)
+          throws IllegalArgumentException, IllegalStateException {
+    Util.requireNonNullArg(input);
+    BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+    int size = 0;
+    float[] domainMin = {0, 0, 0};
+    float[] domainMax = {1, 1, 1};
+    float[] table = null;
+    int values = 0;
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#") || line.startsWith("TITLE")) {
+          continue;
+        }
+        Scanner sc = new Scanner(line);
+        if (line.startsWith("LUT_3D_SIZE")) {
+          sc.next();
+          size = sc.nextInt();
+          if (size < 2 || size > 256) {
+            throw new IllegalStateException("Cube file has an unsupported table size.");
+          }
+          table = new float[size * size * size * 3];
+        } else if (line.startsWith("DOMAIN_MIN")) {
+          sc.next();
+          domainMin = new float[]{sc.nextFloat(), sc.nextFloat(), sc.nextFloat()};
+        } else if (line.startsWith("DOMAIN_MAX")) {
+          sc.next();
+          domainMax = new float[]{sc.nextFloat(), sc.nextFloat(), sc.nextFloat()};
+        } else if (Character.isLetter(line.charAt(0))) {
+          throw new IllegalStateException("Cube file is not a three dimensional table.");
+        } else {
+          if (table == null || values + 3 > table.length) {
+            throw new IllegalStateException("Cube file has table entries out of place.");
+          }
+          for (int i = 0; i < 3; i++) {
+            table[values++] = Float.parseFloat(sc.next());
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("IO exception encountered when reading from cube file.");
+    } catch (RuntimeException e) {
+      if (e instanceof IllegalStateException) {
+        throw e;
+      }
+      throw new IllegalStateException("Malformed cube file.");
+    }
+    if (table == null || values != table.length) {
+      throw new IllegalStateException("Cube file does not have a complete table.");
+    }
+    return new ColorLut(size, table, domainMin, domainMax, Interpolation.TRILINEAR);
+  }
+
+  // Build the function mapping a color through the table, with the cell and the position within
+  // it of every 8-bit value of every channel precomputed.
+  private static Function<Color, Color> mapping(int size, float[] table, float[] domainMin,
+                                                float[] domainMax, Interpolation interpolation)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(table);
+    Util.requireNonNullArg(domainMin);
+    Util.requireNonNullArg(domainMax);
+    Util.requireNonNullArg(interpolation);
+    if (size < 2 || table.length != size * size * size * 3
+            || domainMin.length != 3 || domainMax.length != 3) {
+      throw new IllegalArgumentException("Lookup table does not have the right shape.");
+    }
+    for (int i = 0; i < 3; i++) {
+      if (!(domainMax[i] > domainMin[i])) {
+        throw new IllegalArgumentException("Lookup table domain must not be empty.");
+      }
+    }
+
+    // For every channel and value, the offset of the lower grid point into the table along that
+    // channel's axis, and the position between it and the next one.
+    int[][] offsets = new int[3][Color.MAX_VALUE + 1];
+    float[][] fractions = new float[3][Color.MAX_VALUE + 1];
+    int[] strides = {3, size * 3, size * size * 3};
+    for (int i = 0; i < 3; i++) {
+      for (int v = 0; v <= Color.MAX_VALUE; v++) {
+        float position = ((float) v / Color.MAX_VALUE - domainMin[i])
+                / (domainMax[i] - domainMin[i]) * (size - 1);
+        position = Math.max(0, Math.min(size - 1, position));
+        int low = Math.min(size - 2, (int) position);
+        offsets[i][v] = low * strides[i];
+        fractions[i][v] = position - low;
+      }
+    }
+
+    return (Color c) -> {
+      int base = offsets[0][c.red()] + offsets[1][c.green()] + offsets[2][c.blue()];
+      float fr = fractions[0][c.red()];
+      float fg = fractions[1][c.green()];
+      float fb = fractions[2][c.blue()];
+      if (interpolation == Interpolation.TRILINEAR) {
+        return trilinear(table, base, strides, fr, fg, fb);
+      }
+      return tetrahedral(table, base, strides, fr, fg, fb);
+    };
+  }
+
+  // Blend the eight corners of the grid cell around the color, one channel at a time.
+  private static Color trilinear(float[] table, int base, int[] strides, float fr, float fg,
+                                 float fb) {
+    return new Color(level(trilinear(table, base, strides, fr, fg, fb, 0)),
+            level(trilinear(table, base, strides, fr, fg, fb, 1)),
+            level(trilinear(table, base, strides, fr, fg, fb, 2)));
+  }
+
+  private static float trilinear(float[] table, int base, int[] strides, float fr, float fg,
+                                 float fb, int channel) {
+    int dr = strides[0];
+    int dg = strides[1];
+    int db = strides[2];
+    int p = base + channel;
+    float c00 = table[p] + (table[p + dr] - table[p]) * fr;
+    float c10 = table[p + dg] + (table[p + dg + dr] - table[p + dg]) * fr;
+    float c01 = table[p + db] + (table[p + db + dr] - table[p + db]) * fr;
+    float c11 = table[p + db + dg] + (table[p + db + dg + dr] - table[p + db + dg]) * fr;
+    float c0 = c00 + (c10 - c00) * fg;
+    float c1 = c01 + (c11 - c01) * fg;
+    return c0 + (c1 - c0) * fb;
+  }
+
+  // Blend the corners of the tetrahedron around the color, found by ordering the position within
+  // the cell along each axis, walking from the lower corner to the upper corner one axis at a time.
+  private static Color tetrahedral(float[] table, int base, int[] strides, float fr, float fg,
+                                   float fb) {
+    // Sort the axes by how far along them the color is, largest first, keeping the order of red,
+    // green and blue for ties.
+    float f0 = fr;
+    float f1 = fg;
+    float f2 = fb;
+    int s0 = strides[0];
+    int s1 = strides[1];
+    int s2 = strides[2];
+    if (f0 < f1) {
+      float f = f0;
+      f0 = f1;
+      f1 = f;
+      int s = s0;
+      s0 = s1;
+      s1 = s;
+    }
+    if (f1 < f2) {
+      float f = f1;
+      f1 = f2;
+      f2 = f;
+      int s = s1;
+      s1 = s2;
+      s2 = s;
+    }
+    if (f0 < f1) {
+      float f = f0;
+      f0 = f1;
+      f1 = f;
+      int s = s0;
+      s0 = s1;
+      s1 = s;
+    }
+    int first = base + s0;
+    int second = first + s1;
+    int last = second + s2;
+    float w0 = 1 - f0;
+    float w1 = f0 - f1;
+    float w2 = f1 - f2;
+    float w3 = f2;
+    return new Color(
+            level(w0 * table[base] + w1 * table[first] + w2 * table[second] + w3 * table[last]),
+            level(w0 * table[base + 1] + w1 * table[first + 1] + w2 * table[second + 1]
+                    + w3 * table[last + 1]),
+            level(w0 * table[base + 2] + w1 * table[first + 2] + w2 * table[second + 2]
+                    + w3 * table[last + 2]));
+  }
+
+  // Turn a table output from 0 to 1 into a channel value.
+  private static int level(float value) {
+    return Math.round(value * Color.MAX_VALUE);
+  }
+}
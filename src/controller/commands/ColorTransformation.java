@@ -1,5 +1,7 @@
 package controller.commands;
 
+import java.util.Arrays;
+
 import model.color.Color;
 import model.image.ImageModel;
 import util.Util;
@@ -9,7 +11,7 @@ import util.Util;
  * combinations of its initial rgb values. Distinct from filtering which is applied separately on
  * every channel based on its neighbors.
  */
-public class ColorTransformation implements ImageProcessingCommand {
+public class ColorTransformation implements RegionCommand {
   private final float[][] transformMatrix;
 
   /**
@@ -25,6 +27,11 @@ public class ColorTransformation implements ImageProcessingCommand {
     this.transformMatrix = linearTransformation;
   }
 
+  @Override
+  public String getKey() {
+    return "color-transformation " + Arrays.deepToString(this.transformMatrix);
+  }
+
   /**
    * Modify the given image by linearly transforming every pixel.
    * @param m the image to modify
@@ -33,18 +40,27 @@ public class ColorTransformation implements ImageProcessingCommand {
   @Override
   public ImageModel process(ImageModel m) throws IllegalArgumentException {
     Util.requireNonNullArg(m);
+    return m.createNew(this.processRegion(m, 0, 0, m.getHeight(), m.getWidth()));
+  }
 
-    int width = m.getWidth();
-    int height = m.getHeight();
+  @Override
+  public int getHalo() {
+    return 0;
+  }
+
+  @Override
+  public Color[][] processRegion(ImageModel m, int row, int col, int height, int width)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
 
     Color[][] res = new Color[height][width];
 
     for (int r = 0; r < height; r++) {
       for (int c = 0; c < width; c++) {
-        res[r][c] = applyTransformation(m.colorAt(r, c));
+        res[r][c] = applyTransformation(m.colorAt(row + r, col + c));
       }
     }
-    return m.createNew(res);
+    return res;
   }
 
   /**
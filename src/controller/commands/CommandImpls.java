@@ -30,6 +30,46 @@ public class CommandImpls {
           {-0.125f, -0.125f, -0.125f, -0.125f, -0.125f},
   });
 
+  // Sobel kernels for the horizontal and vertical gradients.
+  private static final float[][][] SOBEL_KERNELS = {
+      {
+          {-1, 0, 1},
+          {-2, 0, 2},
+          {-1, 0, 1}
+      },
+      {
+          {-1, -2, -1},
+          {0, 0, 0},
+          {1, 2, 1}
+      }
+  };
+
+  /**
+   * Sobel is an edge detection operation that replaces every channel with the magnitude of its
+   * gradient, measured by one kernel across and one kernel down the image in the same pass.
+   */
+  public static final ImageProcessingCommand SOBEL = new FilterBank(SOBEL_KERNELS,
+      (float[] r) -> Math.sqrt(r[0] * r[0] + r[1] * r[1]), false, "sobel");
+
+  /**
+   * Edge magnitude is the sobel operation on the luma of an image, giving a grey image of how
+   * strongly the brightness changes at every pixel regardless of color.
+   */
+  public static final ImageProcessingCommand EDGE_MAGNITUDE = new FilterBank(SOBEL_KERNELS,
+      (float[] r) -> Math.sqrt(r[0] * r[0] + r[1] * r[1]), true, "edge-magnitude");
+
+  /**
+   * The laplacian is an edge detection operation that replaces every channel with how much it
+   * differs from the average of the pixels around it, which is large on both sides of an edge.
+   */
+  public static final ImageProcessingCommand LAPLACIAN = new FilterBank(new float[][][]{
+      {
+          {0, 1, 0},
+          {1, -4, 1},
+          {0, 1, 0}
+      }
+  }, (float[] r) -> Math.abs(r[0]), false, "laplacian");
+
   /**
    * The sepia tone command is a color transformation that converts all colors in an image to give
    * it a reddish-brownish tone, like in old photographs.
@@ -81,7 +121,7 @@ public class CommandImpls {
    * Command to set all channels the same as the maximum for the pixel, for all pixels in an image.
    */
   public static final ImageProcessingCommand VALUE = new SetAllChannels(
-      (Color color) -> Math.max(color.red(), Math.max(color.green(), color.blue()))
+      (Color color) -> Math.max(color.red(), Math.max(color.green(), color.blue())), "value"
   );
 
   /**
@@ -89,6 +129,6 @@ public class CommandImpls {
    * the three channels), for all pixels in an image.
    */
   public static final ImageProcessingCommand INTENSITY = new SetAllChannels(
-      (Color color) -> (color.red() + color.green() + color.blue()) / 3
+      (Color color) -> (color.red() + color.green() + color.blue()) / 3, "intensity"
   );
 }
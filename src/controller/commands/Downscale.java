@@ -1,29 +1,83 @@
 package controller.commands;
 
-import model.color.Color;
-import model.color.IColor;
 import model.image.ImageModel;
+import util.PixelUtil;
 import util.Util;
 
 /**
  * Represents a command that downsizes a given image to an instantiated size.
+ *
+ * <p>The sample positions and weights for every output row and column are computed once per
+ * image in a {@link ResampleTable}, and the image is then resampled by the same {@link Resampler}
+ * engine that {@link Resize} uses.
  */
 public class Downscale implements ImageProcessingCommand {
+
+  /**
+   * Represents the ways a downscale can choose source pixels for each output pixel.
+   * Bilinear samples the four source pixels nearest to the output pixel's position, and area
+   * averages every source pixel the output pixel covers, which avoids aliasing on large
+   * reductions.
+   */
+  public enum Mode { BILINEAR, AREA }
+
   private final int cols;
   private final int rows;
+  private final Mode mode;
 
   /**
-   * Initializes a downscale object with the supplied dimensions for resizing images.
+   * Initializes a bilinear downscale object with the supplied dimensions for resizing images.
    * @param width the downscaled image width
    * @param height the downscaled image height
    * @throws IllegalArgumentException if width or height is not positive
    */
   public Downscale(int width, int height) throws IllegalArgumentException {
+    this(width, height, Mode.BILINEAR);
+  }
+
+  /**
+   * Initializes a downscale object with the supplied dimensions and sampling mode.
+   * @param width the downscaled image width
+   * @param height the downscaled image height
+   * @param mode how to choose the source pixels for each output pixel
+   * @throws IllegalArgumentException if width or height is not positive or the mode is null
+   */
+  public Downscale(int width, int height, Mode mode) throws IllegalArgumentException {
     if (width < 1 || height < 1) {
       throw new IllegalArgumentException("Image dimensions must be positive");
     }
     this.cols = width;
     this.rows = height;
+    this.mode = Util.requireNonNullArg(mode);
+  }
+
+  /**
+   * Get the width that this downscales images to.
+   * @return the downscaled image width
+   */
+  public int getWidth() {
+    return this.cols;
+  }
+
+  /**
+   * Get the height that this downscales images to.
+   * @return the downscaled image height
+   */
+  public int getHeight() {
+    return this.rows;
+  }
+
+  /**
+   * Get the way this downscale chooses source pixels for each output pixel.
+   * @return the sampling mode
+   */
+  public Mode getMode() {
+    return this.mode;
+  }
+
+  @Override
+  public String getKey() {
+    return "downscale " + this.cols + " " + this.rows + " " + this.mode;
   }
 
   @Override
@@ -37,41 +91,21 @@ public class Downscale implements ImageProcessingCommand {
       return m;
     }
 
-    Color[][] res = new Color[this.rows][this.cols];
-
-    for (int row = 0; row < this.rows; row++) {
-      for (int col = 0; col < this.cols; col++) {
-        float cCounterpart = m.getWidth() * ((float) col / this.cols);
-        float rCounterpart = m.getHeight() * ((float) row / this.rows);
-
-          res[row][col] = new Color(
-                  this.downsizeChannel(rCounterpart, cCounterpart, m, IColor.Channel.Red),
-                  this.downsizeChannel(rCounterpart, cCounterpart, m, IColor.Channel.Green),
-                  this.downsizeChannel(rCounterpart, cCounterpart, m, IColor.Channel.Blue));
-      }
+    ResampleTable colTable;
+    ResampleTable rowTable;
+    if (this.mode == Mode.AREA) {
+      colTable = ResampleTable.area(m.getWidth(), this.cols);
+      rowTable = ResampleTable.area(m.getHeight(), this.rows);
+    } else {
+      colTable = ResampleTable.bilinear(m.getWidth(), this.cols, false);
+      rowTable = ResampleTable.bilinear(m.getHeight(), this.rows, true);
     }
 
-    return m.createNew(res);
-  }
-
-  // Private helper method to get the average value for a single channel based on the four
-  // surrounding pixels in the original image.
-  private int downsizeChannel(float r, float c, ImageModel img, IColor.Channel channel) {
-    int floorC = (int) Math.floor(c);
-    int floorR = (int) Math.floor(r);
-    int ceilC = (int) Math.ceil(c);
-    int ceilR = (int) Math.ceil(r);
-
-    IColor colorA = img.colorAt(floorR, floorC);
-    IColor colorB = img.colorAt(floorR, ceilC);
-    IColor colorC = img.colorAt(ceilR, floorC);
-    IColor colorD = img.colorAt(ceilR, ceilC);
-
-    float m = colorB.getChannel(channel) * (c - floorC)
-            + colorA.getChannel(channel) * (floorC + 1 - c);
-    float n = colorD.getChannel(channel) * (c - floorC)
-            + colorC.getChannel(channel) * (floorC + 1 - c);
-    return (int) (m * (r - floorR) + n * (floorR + 1 - r));
+    // Area averages are rounded to the nearest value, bilinear samples are truncated as they
+    // always have been.
+    int[] res = Resampler.resample(PixelUtil.toPacked(m), m.getWidth(), colTable, rowTable,
+            this.mode == Mode.AREA);
+    return PixelUtil.fromPacked(m, res, this.cols, this.rows);
   }
 
 }
@@ -1,5 +1,7 @@
 package controller.commands;
 
+import java.util.Arrays;
+
 import model.color.Color;
 import model.color.IColor.Channel;
 import model.image.ImageModel;
@@ -10,7 +12,7 @@ import util.Util;
  * on a pixel in an image and a channel. An entire image can be filtered by overlaying the kernel
  * atop relevant pixels for every channel.
  */
-public class Filter implements ImageProcessingCommand {
+public class Filter implements RegionCommand {
 
   private final float[][] kernel;
   private final int kWidth;
@@ -32,6 +34,11 @@ public class Filter implements ImageProcessingCommand {
     this.kWidth = kernel[0].length;
   }
 
+  @Override
+  public String getKey() {
+    return "filter " + Arrays.deepToString(this.kernel);
+  }
+
   /**
    * Modify the given image by filtering it with the kernel.
    * (i.e. for every pixel in the supplied image, apply the kernel on each channel).
@@ -41,23 +48,39 @@ public class Filter implements ImageProcessingCommand {
   @Override
   public ImageModel process(ImageModel m) throws IllegalArgumentException {
     Util.requireNonNullArg(m);
+    return m.createNew(this.processRegion(m, 0, 0, m.getHeight(), m.getWidth()));
+  }
+
+  @Override
+  public int getHalo() {
+    return Math.max(this.kHeight, this.kWidth) / 2;
+  }
 
-    int width = m.getWidth();
-    int height = m.getHeight();
+  /**
+   * Filter only the given rectangle of the image. Pixels around the rectangle are still read
+   * as the kernel overlaps them, but are not filtered themselves.
+   */
+  @Override
+  public Color[][] processRegion(ImageModel m, int row, int col, int height, int width)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    if (row < 0 || col < 0 || row + height > m.getHeight() || col + width > m.getWidth()) {
+      throw new IllegalArgumentException("Cannot filter outside of image bounds.");
+    }
 
     Color[][] res = new Color[height][width];
 
     for (int r = 0; r < height; r++) {
       for (int c = 0; c < width; c++) {
         res[r][c] = new Color(
-          applyKernel(r, c, m, Channel.Red),
-          applyKernel(r, c, m, Channel.Green),
-          applyKernel(r, c, m, Channel.Blue)
+          applyKernel(row + r, col + c, m, Channel.Red),
+          applyKernel(row + r, col + c, m, Channel.Green),
+          applyKernel(row + r, col + c, m, Channel.Blue)
         );
       }
     }
 
-    return m.createNew(res);
+    return res;
   }
 
   /**
@@ -0,0 +1,218 @@
+package controller.commands;
+
+import java.util.function.ToDoubleFunction;
+
+import model.color.Color;
+import model.image.ImageModel;
+import util.Util;
+
+/**
+ * Function object command to filter an image with several kernels at once and combine their
+ * responses into one value per channel, such as the magnitude of a gradient measured by a pair
+ * of kernels. Like {@link Filter}, only the pixels overlapped by a kernel inside the image count.
+ *
+ * <p>Each neighborhood is read from the image once, and every kernel is evaluated against it in the
+ * same pass, rather than filtering the whole image once per kernel and combining afterwards. The
+ * bank can also run on the luma of the image, producing a single grey plane.
+ */
+public class FilterBank implements RegionCommand {
+
+  private final ToDoubleFunction<float[]> combiner;
+  private final boolean luma;
+  private final String key;
+  private final int kHeight;
+  private final int kWidth;
+  private final int count;
+  // The kernel cells where at least one kernel has a nonzero weight, as row and column offsets
+  // into the kernel, and the weight of every kernel at each of those cells.
+  private final int[] cellRows;
+  private final int[] cellCols;
+  private final float[][] cellWeights;
+
+  /**
+   * Initializes a filter bank that filters each channel of an image separately.
+   * @param kernels the kernels, which must all have the same odd dimensions
+   * @param combiner a function object to turn the responses of the kernels, in order, into the
+   *                 value of a channel
+   * @throws IllegalArgumentException if any argument is null, there are no kernels, or the kernels
+   *                                  do not share the same odd dimensions
+   */
+  public FilterBank(float[][][] kernels, ToDoubleFunction<float[]> combiner)
+          throws IllegalArgumentException {
+    this(kernels, combiner, false);
+  }
+
+  /**
+   * Initializes a filter bank.
+   * @param kernels the kernels, which must all have the same odd dimensions
+   * @param combiner a function object to turn the responses of the kernels, in order, into the
+   *                 value of a channel
+   * @param luma whether to filter the luma of the image, giving a grey image, rather than filtering
+   *             each channel
+   * @throws IllegalArgumentException if any argument is null, there are no kernels, or the kernels
+   *                                  do not share the same odd dimensions
+   */
+  public FilterBank(float[][][] kernels, ToDoubleFunction<float[]> combiner, boolean luma)
+          throws IllegalArgumentException {
+    this(kernels, combiner, luma, null);
+  }
+
+  /**
+   * Initializes a filter bank with a key describing it.
+   * @param kernels the kernels, which must all have the same odd dimensions
+   * @param combiner a function object to turn the responses of the kernels, in order, into the
+   *                 value of a channel
+   * @param luma whether to filter the luma of the image, giving a grey image, rather than filtering
+   *             each channel
+   * @param key a key that only filter banks giving the same images share, or null if there is none
+   * @throws IllegalArgumentException if the kernels or combiner are null, there are no kernels, or
+   *                                  the kernels do not share the same odd dimensions
+   */
+  public FilterBank(float[][][] kernels, ToDoubleFunction<float[]> combiner, boolean luma,
+                    String key) throws IllegalArgumentException {
+    this.key = key;
+    Util.requireNonNullArg(kernels);
+    this.combiner = Util.requireNonNullArg(combiner);
+    if (kernels.length == 0) {
+      throw new IllegalArgumentException("A filter bank needs at least one kernel.");
+    }
+    this.kHeight = Util.requireNonNullArg(kernels[0]).length;
+    this.kWidth = this.kHeight == 0 ? 0 : Util.requireNonNullArg(kernels[0][0]).length;
+    if (this.kHeight % 2 != 1 || this.kWidth % 2 != 1) {
+      throw new IllegalArgumentException("Kernel for a filter operation must have odd dimensions.");
+    }
+    for (float[][] kernel : kernels) {
+      if (Util.requireNonNullArg(kernel).length != this.kHeight) {
+        throw new IllegalArgumentException("Kernels in a filter bank must have the same size.");
+      }
+      for (float[] kernelRow : kernel) {
+        if (Util.requireNonNullArg(kernelRow).length != this.kWidth) {
+          throw new IllegalArgumentException("Kernels in a filter bank must have the same size.");
+        }
+      }
+    }
+    this.luma = luma;
+    this.count = kernels.length;
+
+    int cells = 0;
+    for (int i = 0; i < this.kHeight; i++) {
+      for (int j = 0; j < this.kWidth; j++) {
+        if (anyWeight(kernels, i, j)) {
+          cells++;
+        }
+      }
+    }
+    this.cellRows = new int[cells];
+    this.cellCols = new int[cells];
+    this.cellWeights = new float[cells][this.count];
+    int cell = 0;
+    for (int i = 0; i < this.kHeight; i++) {
+      for (int j = 0; j < this.kWidth; j++) {
+        if (anyWeight(kernels, i, j)) {
+          this.cellRows[cell] = i;
+          this.cellCols[cell] = j;
+          for (int k = 0; k < this.count; k++) {
+            this.cellWeights[cell][k] = kernels[k][i][j];
+          }
+          cell++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Modify the given image by filtering it with every kernel and combining the responses.
+   * @param m the image to modify
+   * @return the filtered image
+   */
+  @Override
+  public ImageModel process(ImageModel m) throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    return m.createNew(this.processRegion(m, 0, 0, m.getHeight(), m.getWidth()));
+  }
+
+  @Override
+  public String getKey() {
+    return this.key;
+  }
+
+  @Override
+  public int getHalo() {
+    return Math.max(this.kHeight, this.kWidth) / 2;
+  }
+
+  @Override
+  public Color[][] processRegion(ImageModel m, int row, int col, int height, int width)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    if (row < 0 || col < 0 || row + height > m.getHeight() || col + width > m.getWidth()) {
+      throw new IllegalArgumentException("Cannot filter outside of image bounds.");
+    }
+
+    // Copy the rectangle and the pixels the kernels overlap around it into planes, where pixels
+    // outside of the image are zero, so that they add nothing just like in a regular filter.
+    int up = this.kHeight / 2;
+    int left = this.kWidth / 2;
+    int areaHeight = height + 2 * up;
+    int areaWidth = width + 2 * left;
+    int planes = this.luma ? 1 : 3;
+    float[][] area = new float[planes][areaHeight * areaWidth];
+    int rowStart = Math.max(0, row - up);
+    int rowEnd = Math.min(m.getHeight(), row + height + up);
+    int colStart = Math.max(0, col - left);
+    int colEnd = Math.min(m.getWidth(), col + width + left);
+    for (int r = rowStart; r < rowEnd; r++) {
+      for (int c = colStart; c < colEnd; c++) {
+        Color color = m.colorAt(r, c);
+        int idx = (r - row + up) * areaWidth + c - col + left;
+        if (this.luma) {
+          area[0][idx] = 0.2126f * color.red() + 0.7152f * color.green()
+                  + 0.0722f * color.blue();
+        } else {
+          area[0][idx] = color.red();
+          area[1][idx] = color.green();
+          area[2][idx] = color.blue();
+        }
+      }
+    }
+
+    Color[][] res = new Color[height][width];
+    float[] responses = new float[this.count];
+    int[] values = new int[planes];
+    for (int r = 0; r < height; r++) {
+      for (int c = 0; c < width; c++) {
+        for (int p = 0; p < planes; p++) {
+          values[p] = this.evaluate(area[p], areaWidth, r, c, responses);
+        }
+        res[r][c] = this.luma ? new Color(values[0], values[0], values[0])
+                : new Color(values[0], values[1], values[2]);
+      }
+    }
+    return res;
+  }
+
+  // Evaluate every kernel at one output pixel of a plane, reading each pixel of the neighborhood
+  // once, and combine the responses.
+  private int evaluate(float[] plane, int areaWidth, int r, int c, float[] responses) {
+    for (int k = 0; k < this.count; k++) {
+      responses[k] = 0;
+    }
+    for (int cell = 0; cell < this.cellRows.length; cell++) {
+      float value = plane[(r + this.cellRows[cell]) * areaWidth + c + this.cellCols[cell]];
+      float[] weights = this.cellWeights[cell];
+      for (int k = 0; k < this.count; k++) {
+        responses[k] += weights[k] * value;
+      }
+    }
+    return (int) Math.round(this.combiner.applyAsDouble(responses));
+  }
+
+  private static boolean anyWeight(float[][][] kernels, int i, int j) {
+    for (float[][] kernel : kernels) {
+      if (kernel[i][j] != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
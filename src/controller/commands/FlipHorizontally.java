@@ -9,6 +9,11 @@ import util.Util;
  */
 public class FlipHorizontally implements ImageProcessingCommand {
 
+  @Override
+  public String getKey() {
+    return "horizontal-flip";
+  }
+
   /**
    * Modify the given image model by flipping it horizontally
    * (i.e. the left column swaps with the right and so on).
@@ -9,6 +9,11 @@ import util.Util;
  */
 public class FlipVertically implements ImageProcessingCommand {
 
+  @Override
+  public String getKey() {
+    return "vertical-flip";
+  }
+
   /**
    * Modify the given image model by flipping it vertically
    * (i.e. the top row swaps with the bottom and so on).
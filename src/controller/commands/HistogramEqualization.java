@@ -0,0 +1,211 @@
+package controller.commands;
+
+import java.util.stream.IntStream;
+
+import model.color.Color;
+import model.image.ImageModel;
+import util.ImageUtil;
+import util.Util;
+
+/**
+ * Function object command to spread the values of each channel of an image evenly over the whole
+ * range, which normalizes the contrast of images that are too flat or too dark.
+ *
+ * <p>For contrast limited adaptive equalization the image is split into a grid of tiles that are
+ * equalized on their own, with every histogram bin clipped at a multiple of the average bin
+ * count and the clipped counts spread over all bins, so that flat areas do not have their noise
+ * stretched. The tile histograms and their lookup tables are built in parallel, and every output
+ * pixel is then blended from the lookup tables of the four tiles around it in one pass, so there
+ * are no seams between tiles. Plain equalization is the same with a single tile and no clipping.
+ */
+public class HistogramEqualization implements ImageProcessingCommand {
+
+  private static final int LEVELS = Color.MAX_VALUE + 1;
+  // Images with fewer pixels than this are blended on the calling thread only.
+  private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+  private final int tiles;
+  private final double clip;
+
+  /**
+   * Initializes a plain histogram equalization over the whole image.
+   */
+  public HistogramEqualization() {
+    this(1, 0);
+  }
+
+  /**
+   * Initializes a contrast limited adaptive histogram equalization.
+   * @param tiles the number of tiles across and down the image
+   * @param clip the multiple of the average bin count that any bin of a tile's histogram is clipped
+   *             to, or zero to not clip
+   * @throws IllegalArgumentException if there is not at least one tile or the clip is negative
+   */
+  public HistogramEqualization(int tiles, double clip) throws IllegalArgumentException {
+    if (tiles < 1) {
+      throw new IllegalArgumentException("There must be at least one tile.");
+    }
+    if (!(clip >= 0) || Double.isInfinite(clip)) {
+      throw new IllegalArgumentException("Clip limit must be a non-negative number.");
+    }
+    this.tiles = tiles;
+    this.clip = clip;
+  }
+
+  @Override
+  public String getKey() {
+    return "equalize " + this.tiles + " " + this.clip;
+  }
+
+  /**
+   * Modify the given image by equalizing the histogram of each of its channels.
+   * @param m the image to modify
+   * @return the equalized image
+   */
+  @Override
+  public ImageModel process(ImageModel m) throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    int height = m.getHeight();
+    int width = m.getWidth();
+    int tileRows = Math.min(this.tiles, height);
+    int tileCols = Math.min(this.tiles, width);
+
+    // One lookup table per channel of every tile, built from that tile's histograms.
+    int[][][] luts = new int[tileRows * tileCols][][];
+    IntStream.range(0, luts.length).parallel().forEach(t -> {
+      int tileRow = t / tileCols;
+      int tileCol = t % tileCols;
+      int row = tileRow * height / tileRows;
+      int col = tileCol * width / tileCols;
+      int tileHeight = (tileRow + 1) * height / tileRows - row;
+      int tileWidth = (tileCol + 1) * width / tileCols - col;
+      luts[t] = new int[][]{
+          this.lut(ImageUtil.histogram(m, row, col, tileHeight, tileWidth, Color::red)),
+          this.lut(ImageUtil.histogram(m, row, col, tileHeight, tileWidth, Color::green)),
+          this.lut(ImageUtil.histogram(m, row, col, tileHeight, tileWidth, Color::blue))};
+    });
+
+    // The tiles whose centers are on either side of every row and column, and the weight of the
+    // second one.
+    int[] rowTile = new int[height];
+    float[] rowWeight = new float[height];
+    centers(height, tileRows, rowTile, rowWeight);
+    int[] colTile = new int[width];
+    float[] colWeight = new float[width];
+    centers(width, tileCols, colTile, colWeight);
+
+    Color[][] res = new Color[height][width];
+    IntStream rows = IntStream.range(0, height);
+    if ((long) height * width >= PARALLEL_THRESHOLD) {
+      rows = rows.parallel();
+    }
+    rows.forEach(r -> {
+      int top = rowTile[r];
+      int bottom = Math.min(top + 1, tileRows - 1);
+      float wy = rowWeight[r];
+      for (int c = 0; c < width; c++) {
+        int left = colTile[c];
+        int right = Math.min(left + 1, tileCols - 1);
+        float wx = colWeight[c];
+        int[][] topLeft = luts[top * tileCols + left];
+        int[][] topRight = luts[top * tileCols + right];
+        int[][] bottomLeft = luts[bottom * tileCols + left];
+        int[][] bottomRight = luts[bottom * tileCols + right];
+        Color color = m.colorAt(r, c);
+        res[r][c] = new Color(
+                blend(topLeft[0], topRight[0], bottomLeft[0], bottomRight[0], color.red(), wx, wy),
+                blend(topLeft[1], topRight[1], bottomLeft[1], bottomRight[1], color.green(), wx,
+                        wy),
+                blend(topLeft[2], topRight[2], bottomLeft[2], bottomRight[2], color.blue(), wx,
+                        wy));
+      }
+    });
+    return m.createNew(res);
+  }
+
+  // Blend the values the lookup tables of the four tiles around a pixel give one of its channels.
+  private static int blend(int[] topLeft, int[] topRight, int[] bottomLeft, int[] bottomRight,
+                           int v, float wx, float wy) {
+    float upper = topLeft[v] + (topRight[v] - topLeft[v]) * wx;
+    float lower = bottomLeft[v] + (bottomRight[v] - bottomLeft[v]) * wx;
+    return Math.round(upper + (lower - upper) * wy);
+  }
+
+  // Build the lookup table that equalizes a tile, from the tile's histogram of one channel.
+  private int[] lut(int[] histogram) {
+    if (this.clip > 0) {
+      long total = 0;
+      for (int count : histogram) {
+        total += count;
+      }
+      clipHistogram(histogram, Math.max(1, (int) (this.clip * total / LEVELS)));
+    }
+
+    long[] cdf = new long[LEVELS];
+    long running = 0;
+    long cdfMin = 0;
+    for (int v = 0; v < LEVELS; v++) {
+      running += histogram[v];
+      cdf[v] = running;
+      if (cdfMin == 0) {
+        cdfMin = running;
+      }
+    }
+
+    int[] lut = new int[LEVELS];
+    for (int v = 0; v < LEVELS; v++) {
+      if (running == cdfMin) { // A tile of a single value is left as it is.
+        lut[v] = v;
+      } else if (cdf[v] > 0) {
+        // Stretch so the lowest value present maps to 0 and the highest to 255.
+        lut[v] = (int) Math.round((double) (cdf[v] - cdfMin) * Color.MAX_VALUE
+                / (running - cdfMin));
+      }
+    }
+    return lut;
+  }
+
+  // Clip every bin of a histogram at the limit and spread the clipped counts evenly over all bins,
+  // handing any remainder out across the whole range.
+  private static void clipHistogram(int[] histogram, int limit) {
+    long excess = 0;
+    for (int v = 0; v < LEVELS; v++) {
+      if (histogram[v] > limit) {
+        excess += histogram[v] - limit;
+        histogram[v] = limit;
+      }
+    }
+    int share = (int) (excess / LEVELS);
+    int remainder = (int) (excess % LEVELS);
+    for (int v = 0; v < LEVELS; v++) {
+      histogram[v] += share;
+    }
+    if (remainder > 0) {
+      int step = LEVELS / remainder;
+      for (int i = 0; i < remainder; i++) {
+        histogram[i * step]++;
+      }
+    }
+  }
+
+  // For every pixel along an axis, find the tile whose center is at or before it, and how far the
+  // pixel is towards the center of the next tile. Pixels before the first center or past the last
+  // use that tile alone.
+  private static void centers(int length, int tileCount, int[] tile, float[] weight) {
+    float tileSize = (float) length / tileCount;
+    for (int i = 0; i < length; i++) {
+      float position = (i + 0.5f) / tileSize - 0.5f;
+      int first = (int) Math.floor(position);
+      if (first < 0) {
+        tile[i] = 0;
+        weight[i] = 0;
+      } else if (first >= tileCount - 1) {
+        tile[i] = tileCount - 1;
+        weight[i] = 0;
+      } else {
+        tile[i] = first;
+        weight[i] = position - first;
+      }
+    }
+  }
+}
@@ -15,4 +15,15 @@ public interface ImageProcessingCommand {
    */
   ImageModel process(ImageModel m) throws IllegalArgumentException;
 
+  /**
+   * Get a key describing this command and all of its parameters, such that any two commands with
+   * equal keys produce equal images from equal images. Processors can use the key to reuse the
+   * result of running a command again on the same image instead of computing it again. Commands
+   * built from arbitrary function objects cannot be described this way, and have no key.
+   * @return the key of this command, or null if it has none
+   */
+  default String getKey() {
+    return null;
+  }
+
 }
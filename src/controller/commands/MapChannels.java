@@ -8,16 +8,27 @@ import util.Util;
 /**
  * A generalized command to transform all the colors in a given image into new colors.
  */
-public class MapChannels implements ImageProcessingCommand {
+public class MapChannels implements RegionCommand {
   private final Function<Color,Color> mapping;
+  private final String key;
 
   /**
    * Initializes this with the Color to Color command to be mapped.
    * @param mapping a function object to convert a Color into a new Color
    */
   public MapChannels(Function<Color, Color> mapping) {
+    this(mapping, null);
+  }
+
+  /**
+   * Initializes this with the Color to Color command to be mapped, and a key describing it.
+   * @param mapping a function object to convert a Color into a new Color
+   * @param key a key that only mappings giving the same colors share, or null if there is none
+   */
+  public MapChannels(Function<Color, Color> mapping, String key) {
     Util.requireNonNullArg(mapping);
     this.mapping = mapping;
+    this.key = key;
   }
 
   /**
@@ -30,18 +41,32 @@ public class MapChannels implements ImageProcessingCommand {
   @Override
   public ImageModel process(ImageModel m) throws IllegalArgumentException {
     Util.requireNonNullArg(m);
+    return m.createNew(this.processRegion(m, 0, 0, m.getHeight(), m.getWidth()));
+  }
+
+  @Override
+  public String getKey() {
+    return this.key;
+  }
 
-    int height = m.getHeight();
-    int width = m.getWidth();
+  @Override
+  public int getHalo() {
+    return 0;
+  }
+
+  @Override
+  public Color[][] processRegion(ImageModel m, int row, int col, int height, int width)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
 
     Color[][] res = new Color[height][width];
     for (int r = 0; r < height; r++) {
       for (int c = 0; c < width; c++) {
-        res[r][c] = this.mapping.apply(m.colorAt(r, c));
+        res[r][c] = this.mapping.apply(m.colorAt(row + r, col + c));
       }
     }
 
-    return m.createNew(res);
+    return res;
   }
 
 }
@@ -6,9 +6,20 @@ import util.Util;
 
 /**
  * Represents a command that applies to only part of an image as specified by a mask.
+ *
+ * <p>If the command is a {@link RegionCommand}, only part of the image is computed, and every
+ * pixel outside the mask is taken straight from the original image. A command that only looks at
+ * each pixel itself is run on just the runs of masked pixels in each row. A command with a halo
+ * has to read around every region it computes and often sets up state for it, so it is run once
+ * on the box around the masked pixels of each band of rows instead, and the masked pixels picked
+ * out of that. Otherwise the command has to process the whole image before the masked pixels are
+ * picked out.
  */
 public class MaskedCommand implements ImageProcessingCommand {
 
+  // The number of rows whose masked pixels a command with a halo computes in one region.
+  private static final int BAND_ROWS = 64;
+
   private final ImageModel mask;
   private final ImageProcessingCommand command;
 
@@ -34,6 +45,13 @@ public class MaskedCommand implements ImageProcessingCommand {
       throw new IllegalArgumentException("Mask dimensions do not match image dimensions.");
     }
 
+    if (this.command instanceof RegionCommand) {
+      RegionCommand regionCommand = (RegionCommand) this.command;
+      return m.createNew(regionCommand.getHalo() == 0
+              ? this.processMaskedRuns(m, regionCommand)
+              : this.processMaskedBands(m, regionCommand));
+    }
+
     // Process image normally using command delegate.
     ImageModel processedImage = this.command.process(m);
 
@@ -41,11 +59,10 @@ public class MaskedCommand implements ImageProcessingCommand {
       throw new IllegalArgumentException("Mask dimensions do not match image dimensions.");
     }
 
-    Color maskColor = new Color(0,0,0); // Use black as the mask color.
     Color[][] maskResultPixels = new Color[maskHeight][maskWidth];
     for (int r = 0; r < maskHeight; r++) {
       for (int c = 0; c < maskWidth; c++) {
-        if (this.mask.colorAt(r,c).equals(maskColor)) {
+        if (this.isMasked(r, c)) {
           maskResultPixels[r][c] = processedImage.colorAt(r,c);
         } else {
           maskResultPixels[r][c] = m.colorAt(r,c);
@@ -55,4 +72,70 @@ public class MaskedCommand implements ImageProcessingCommand {
 
     return m.createNew(maskResultPixels);
   }
+
+  // Run the region command over each horizontal run of masked pixels, sharing the original colors
+  // everywhere else.
+  private Color[][] processMaskedRuns(ImageModel m, RegionCommand regionCommand) {
+    int height = m.getHeight();
+    int width = m.getWidth();
+    Color[][] res = new Color[height][width];
+    for (int r = 0; r < height; r++) {
+      int c = 0;
+      while (c < width) {
+        if (!this.isMasked(r, c)) {
+          res[r][c] = m.colorAt(r, c);
+          c++;
+          continue;
+        }
+        int runStart = c;
+        while (c < width && this.isMasked(r, c)) {
+          c++;
+        }
+        Color[][] run = regionCommand.processRegion(m, r, runStart, 1, c - runStart);
+        System.arraycopy(run[0], 0, res[r], runStart, c - runStart);
+      }
+    }
+    return res;
+  }
+
+  // Run the region command once over the box around the masked pixels of each band of rows,
+  // keeping only the masked pixels of it and sharing the original colors everywhere else.
+  private Color[][] processMaskedBands(ImageModel m, RegionCommand regionCommand) {
+    int height = m.getHeight();
+    int width = m.getWidth();
+    Color[][] res = new Color[height][width];
+    boolean[][] masked = new boolean[BAND_ROWS][width];
+    for (int top = 0; top < height; top += BAND_ROWS) {
+      int bottom = Math.min(height, top + BAND_ROWS);
+      int firstRow = bottom;
+      int lastRow = -1;
+      int firstCol = width;
+      int lastCol = -1;
+      for (int r = top; r < bottom; r++) {
+        for (int c = 0; c < width; c++) {
+          masked[r - top][c] = this.isMasked(r, c);
+          if (masked[r - top][c]) {
+            firstRow = Math.min(firstRow, r);
+            lastRow = r;
+            firstCol = Math.min(firstCol, c);
+            lastCol = Math.max(lastCol, c);
+          }
+        }
+      }
+      Color[][] box = lastRow < 0 ? null : regionCommand.processRegion(m, firstRow, firstCol,
+              lastRow - firstRow + 1, lastCol - firstCol + 1);
+      for (int r = top; r < bottom; r++) {
+        for (int c = 0; c < width; c++) {
+          res[r][c] = masked[r - top][c] ? box[r - firstRow][c - firstCol] : m.colorAt(r, c);
+        }
+      }
+    }
+    return res;
+  }
+
+  // Black pixels in the mask mark the parts of the image to process.
+  private boolean isMasked(int r, int c) {
+    Color maskColor = this.mask.colorAt(r, c);
+    return maskColor.red() == 0 && maskColor.green() == 0 && maskColor.blue() == 0;
+  }
 }
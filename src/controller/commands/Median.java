@@ -0,0 +1,267 @@
+package controller.commands;
+
+import java.util.Arrays;
+
+import model.color.Color;
+import model.image.ImageModel;
+import util.Util;
+
+/**
+ * Function object command to replace every pixel with the median of the square window of pixels
+ * around it, separately for each channel. Only pixels inside the image are part of a window, so
+ * windows shrink at the edges of the image. This removes speckle noise while keeping edges sharp.
+ *
+ * <p>Medians are found with the constant time algorithm of Perreault and Hebert: every column keeps
+ * a histogram of the pixels in the window rows, and the window histogram slides along a row by
+ * adding one column histogram and removing another. Histograms have 16 coarse bins over the 256
+ * fine ones, and a fine segment of the window histogram is only brought up to date when the median
+ * falls into it, so the work per pixel does not depend on the radius.
+ *
+ * <p>The column histograms are kept per thread and emptied row by row once a region is done, so
+ * filtering many small regions, as masking does, neither allocates nor clears 256 bins for every
+ * column of every region.
+ */
+public class Median implements RegionCommand {
+
+  // Fine bins per coarse bin, which is also the number of coarse bins.
+  private static final int SEGMENT = 16;
+  private static final int LEVELS = Color.MAX_VALUE + 1;
+  // The most columns of histograms kept for reuse by a thread, about four megabytes.
+  private static final int MAX_KEPT_COLUMNS = 4096;
+  // Empty column histograms left by the last region filtered on each thread, if any.
+  private static final ThreadLocal<ColumnHistograms> KEPT = new ThreadLocal<>();
+
+  private final int radius;
+
+  /**
+   * Initializes a median filter over windows that reach the given distance from their center.
+   * @param radius the distance, in rows and columns, from the center to the edge of a window
+   * @throws IllegalArgumentException if the radius is negative
+   */
+  public Median(int radius) throws IllegalArgumentException {
+    if (radius < 0) {
+      throw new IllegalArgumentException("Median radius cannot be negative.");
+    }
+    this.radius = radius;
+  }
+
+  @Override
+  public String getKey() {
+    return "median " + this.radius;
+  }
+
+  /**
+   * Modify the given image by replacing every pixel with the median of the window around it.
+   * @param m the image to modify
+   * @return the filtered image
+   */
+  @Override
+  public ImageModel process(ImageModel m) throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    return m.createNew(this.processRegion(m, 0, 0, m.getHeight(), m.getWidth()));
+  }
+
+  @Override
+  public int getHalo() {
+    return this.radius;
+  }
+
+  @Override
+  public Color[][] processRegion(ImageModel m, int row, int col, int height, int width)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    if (row < 0 || col < 0 || row + height > m.getHeight() || col + width > m.getWidth()) {
+      throw new IllegalArgumentException("Cannot filter outside of image bounds.");
+    }
+
+    // The area of the image read by the windows of the rectangle, split into channel planes.
+    int top = Math.max(0, row - this.radius);
+    int left = Math.max(0, col - this.radius);
+    int areaHeight = Math.min(m.getHeight(), row + height + this.radius) - top;
+    int areaWidth = Math.min(m.getWidth(), col + width + this.radius) - left;
+    int[][] planes = new int[3][areaHeight * areaWidth];
+    for (int r = 0; r < areaHeight; r++) {
+      for (int c = 0; c < areaWidth; c++) {
+        Color color = m.colorAt(top + r, left + c);
+        int idx = r * areaWidth + c;
+        planes[0][idx] = color.red();
+        planes[1][idx] = color.green();
+        planes[2][idx] = color.blue();
+      }
+    }
+
+    int[][] medians = new int[3][];
+    for (int i = 0; i < 3; i++) {
+      medians[i] = this.medianPlane(planes[i], areaWidth, areaHeight,
+              row - top, col - left, height, width);
+    }
+
+    Color[][] res = new Color[height][width];
+    for (int r = 0; r < height; r++) {
+      for (int c = 0; c < width; c++) {
+        int idx = r * width + c;
+        res[r][c] = new Color(medians[0][idx], medians[1][idx], medians[2][idx]);
+      }
+    }
+    return res;
+  }
+
+  // Find the window medians of one channel plane for the rectangle starting at the given offset
+  // within the plane. Windows are clipped to the plane, which holds every pixel they can reach.
+  private int[] medianPlane(int[] plane, int areaWidth, int areaHeight,
+                            int rowOffset, int colOffset, int height, int width) {
+    int radius = this.radius;
+    ColumnHistograms histograms = takeHistograms(areaWidth);
+    int[][] colFine = histograms.fine;
+    int[][] colCoarse = histograms.coarse;
+    int[] fine = new int[LEVELS];
+    int[] coarse = new int[SEGMENT];
+    // The column whose window each fine segment of the window histogram currently describes.
+    int[] segmentAt = new int[SEGMENT];
+    int[] res = new int[height * width];
+
+    // Fill the column histograms with the window rows of the first output row.
+    int rowLo = Math.max(0, rowOffset - radius);
+    int rowHi = Math.min(areaHeight, rowOffset + radius + 1);
+    for (int r = rowLo; r < rowHi; r++) {
+      addRow(plane, areaWidth, r, colFine, colCoarse, 1);
+    }
+
+    for (int r = 0; r < height; r++) {
+      int y = rowOffset + r;
+      if (r > 0) {
+        // Slide every column histogram down one row.
+        if (y - radius - 1 >= 0) {
+          addRow(plane, areaWidth, y - radius - 1, colFine, colCoarse, -1);
+        }
+        if (y + radius < areaHeight) {
+          addRow(plane, areaWidth, y + radius, colFine, colCoarse, 1);
+        }
+      }
+      int windowRows = Math.min(areaHeight, y + radius + 1) - Math.max(0, y - radius);
+
+      // Start the window at the first output column; fine segments are filled when first needed.
+      Arrays.fill(coarse, 0);
+      Arrays.fill(segmentAt, Integer.MIN_VALUE);
+      int x0 = colOffset;
+      for (int c = Math.max(0, x0 - radius); c < Math.min(areaWidth, x0 + radius + 1); c++) {
+        for (int k = 0; k < SEGMENT; k++) {
+          coarse[k] += colCoarse[c][k];
+        }
+      }
+
+      for (int c = 0; c < width; c++) {
+        int x = colOffset + c;
+        if (c > 0) {
+          if (x - radius - 1 >= 0) {
+            for (int k = 0; k < SEGMENT; k++) {
+              coarse[k] -= colCoarse[x - radius - 1][k];
+            }
+          }
+          if (x + radius < areaWidth) {
+            for (int k = 0; k < SEGMENT; k++) {
+              coarse[k] += colCoarse[x + radius][k];
+            }
+          }
+        }
+        int windowCols = Math.min(areaWidth, x + radius + 1) - Math.max(0, x - radius);
+        // Zero based rank of the median, the upper one for windows with an even count.
+        int rank = windowRows * windowCols / 2;
+
+        int k = 0;
+        while (rank >= coarse[k]) {
+          rank -= coarse[k];
+          k++;
+        }
+        this.updateSegment(k, x, segmentAt, fine, colFine, areaWidth);
+        int bin = k * SEGMENT;
+        while (rank >= fine[bin]) {
+          rank -= fine[bin];
+          bin++;
+        }
+        res[r * width + c] = bin;
+      }
+    }
+
+    // Remove the window rows of the last output row, leaving the histograms empty for reuse.
+    int lastY = rowOffset + Math.max(0, height - 1);
+    for (int r = Math.max(0, lastY - radius); r < Math.min(areaHeight, lastY + radius + 1); r++) {
+      addRow(plane, areaWidth, r, colFine, colCoarse, -1);
+    }
+    if (colFine.length <= MAX_KEPT_COLUMNS) {
+      KEPT.set(histograms);
+    }
+    return res;
+  }
+
+  // Take the empty histograms kept by this thread if they have enough columns, or make new ones.
+  // Kept histograms are taken away while in use, so they are never handed out half full.
+  private static ColumnHistograms takeHistograms(int columns) {
+    ColumnHistograms kept = KEPT.get();
+    KEPT.remove();
+    if (kept != null && kept.fine.length >= columns) {
+      return kept;
+    }
+    return new ColumnHistograms(columns);
+  }
+
+  // Bring one fine segment of the window histogram up to date with the window centered on column
+  // x, either by sliding it from the column it was last used at or by rebuilding it.
+  private void updateSegment(int k, int x, int[] segmentAt, int[] fine, int[][] colFine,
+                             int areaWidth) {
+    int radius = this.radius;
+    int from = k * SEGMENT;
+    int to = from + SEGMENT;
+    int last = segmentAt[k];
+    if (last == x) {
+      return;
+    }
+    if ((long) x - last > 2 * radius + 1) {
+      Arrays.fill(fine, from, to, 0);
+      for (int c = Math.max(0, x - radius); c < Math.min(areaWidth, x + radius + 1); c++) {
+        int[] hist = colFine[c];
+        for (int b = from; b < to; b++) {
+          fine[b] += hist[b];
+        }
+      }
+    } else {
+      for (int j = last + 1; j <= x; j++) {
+        if (j - radius - 1 >= 0) {
+          int[] hist = colFine[j - radius - 1];
+          for (int b = from; b < to; b++) {
+            fine[b] -= hist[b];
+          }
+        }
+        if (j + radius < areaWidth) {
+          int[] hist = colFine[j + radius];
+          for (int b = from; b < to; b++) {
+            fine[b] += hist[b];
+          }
+        }
+      }
+    }
+    segmentAt[k] = x;
+  }
+
+  // Add (or with a negative count, remove) one row of the plane to the column histograms.
+  private static void addRow(int[] plane, int areaWidth, int r, int[][] colFine,
+                             int[][] colCoarse, int count) {
+    int offset = r * areaWidth;
+    for (int c = 0; c < areaWidth; c++) {
+      int value = plane[offset + c];
+      colFine[c][value] += count;
+      colCoarse[c][value / SEGMENT] += count;
+    }
+  }
+
+  // Fine and coarse histograms for a number of columns.
+  private static class ColumnHistograms {
+    private final int[][] fine;
+    private final int[][] coarse;
+
+    private ColumnHistograms(int columns) {
+      this.fine = new int[columns][LEVELS];
+      this.coarse = new int[columns][SEGMENT];
+    }
+  }
+}
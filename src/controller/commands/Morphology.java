@@ -0,0 +1,385 @@
+package controller.commands;
+
+import model.color.Color;
+import model.image.ImageModel;
+import util.Util;
+
+/**
+ * Function object command for the morphological operations with a rectangular structuring element.
+ * Erosion replaces every pixel with the darkest value in the rectangle around it and dilation with
+ * the brightest, separately for each channel, and opening and closing run one after the other.
+ * Only pixels inside the image are part of a rectangle. On black and white masks, dilation grows
+ * the white areas and erosion grows the black, masked, areas.
+ *
+ * <p>The rectangle is separable, so a row pass is followed by a column pass, and each pass uses the
+ * van Herk/Gil-Werman algorithm: the line is cut into blocks as long as the element, and every
+ * window is the combination of one running suffix and one running prefix, costing a constant
+ * three comparisons per pixel for any element size. Images that are only black and white are
+ * packed into bitsets, so 64 pixels are combined with every word operation, and images that are
+ * grey are processed as a single plane instead of three.
+ */
+public class Morphology implements RegionCommand {
+
+  /**
+   * Represents the available morphological operations.
+   */
+  public enum Operation { ERODE, DILATE, OPEN, CLOSE }
+
+  private static final int BITS = 64;
+  private static final long ALL = -1L;
+
+  private final Operation operation;
+  private final int width;
+  private final int height;
+
+  /**
+   * Initializes a morphological operation with a structuring element of the given size. For even
+   * sizes, erosion reaches one pixel further right and down than left and up, and dilation the
+   * other way around, so that opening and closing put every pixel back where it was.
+   * @param operation the operation to run
+   * @param width the width of the structuring element
+   * @param height the height of the structuring element
+   * @throws IllegalArgumentException if the operation is null or a size is not positive
+   */
+  public Morphology(Operation operation, int width, int height) throws IllegalArgumentException {
+    this.operation = Util.requireNonNullArg(operation);
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Structuring element dimensions must be positive.");
+    }
+    this.width = width;
+    this.height = height;
+  }
+
+  @Override
+  public String getKey() {
+    return "morphology " + this.operation + " " + this.width + " " + this.height;
+  }
+
+  /**
+   * Modify the given image by running the morphological operation on it.
+   * @param m the image to modify
+   * @return the processed image
+   */
+  @Override
+  public ImageModel process(ImageModel m) throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    return m.createNew(this.processRegion(m, 0, 0, m.getHeight(), m.getWidth()));
+  }
+
+  @Override
+  public int getHalo() {
+    int halo = Math.max(this.width, this.height) / 2;
+    return this.steps().length * halo;
+  }
+
+  @Override
+  public Color[][] processRegion(ImageModel m, int row, int col, int height, int width)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    if (row < 0 || col < 0 || row + height > m.getHeight() || col + width > m.getWidth()) {
+      throw new IllegalArgumentException("Cannot process outside of image bounds.");
+    }
+
+    // Every pixel that can affect the rectangle; pixels near the edge of this area are wrong when
+    // the area is cut short of the image edge, but those are never part of the rectangle.
+    int halo = this.getHalo();
+    int top = Math.max(0, row - halo);
+    int left = Math.max(0, col - halo);
+    int areaHeight = (int) Math.min(m.getHeight(), (long) row + height + halo) - top;
+    int areaWidth = (int) Math.min(m.getWidth(), (long) col + width + halo) - left;
+    int[] red = new int[areaHeight * areaWidth];
+    int[] green = new int[red.length];
+    int[] blue = new int[red.length];
+    boolean grey = true;
+    boolean binary = true;
+    for (int r = 0; r < areaHeight; r++) {
+      for (int c = 0; c < areaWidth; c++) {
+        Color color = m.colorAt(top + r, left + c);
+        int idx = r * areaWidth + c;
+        red[idx] = color.red();
+        green[idx] = color.green();
+        blue[idx] = color.blue();
+        grey &= red[idx] == green[idx] && red[idx] == blue[idx];
+        binary &= red[idx] == 0 || red[idx] == Color.MAX_VALUE;
+      }
+    }
+
+    // An element more than twice as large as the area already covers all of it from every pixel,
+    // so any larger one gives the same result and only costs more.
+    int elementWidth = (int) Math.min(this.width, 2L * areaWidth + 1);
+    int elementHeight = (int) Math.min(this.height, 2L * areaHeight + 1);
+
+    Color[][] res = new Color[height][width];
+    if (grey) {
+      int[] plane = binary
+              ? this.processBits(red, areaWidth, areaHeight, elementWidth, elementHeight)
+              : this.processPlane(red, areaWidth, areaHeight, elementWidth, elementHeight);
+      // Grey values repeat a lot, so share one color object per value.
+      Color[] shades = new Color[Color.MAX_VALUE + 1];
+      for (int r = 0; r < height; r++) {
+        int offset = (row - top + r) * areaWidth + col - left;
+        for (int c = 0; c < width; c++) {
+          int value = plane[offset + c];
+          if (shades[value] == null) {
+            shades[value] = new Color(value, value, value);
+          }
+          res[r][c] = shades[value];
+        }
+      }
+    } else {
+      red = this.processPlane(red, areaWidth, areaHeight, elementWidth, elementHeight);
+      green = this.processPlane(green, areaWidth, areaHeight, elementWidth, elementHeight);
+      blue = this.processPlane(blue, areaWidth, areaHeight, elementWidth, elementHeight);
+      for (int r = 0; r < height; r++) {
+        int offset = (row - top + r) * areaWidth + col - left;
+        for (int c = 0; c < width; c++) {
+          res[r][c] = new Color(red[offset + c], green[offset + c], blue[offset + c]);
+        }
+      }
+    }
+    return res;
+  }
+
+  // Whether each step of the operation takes the brightest value (dilation) or the darkest.
+  private boolean[] steps() {
+    switch (this.operation) {
+      case ERODE:
+        return new boolean[]{false};
+      case DILATE:
+        return new boolean[]{true};
+      case OPEN:
+        return new boolean[]{false, true};
+      case CLOSE:
+        return new boolean[]{true, false};
+      default:
+        throw new IllegalStateException("Unknown morphological operation.");
+    }
+  }
+
+  // How many pixels before the current one the window starts, along an axis with the given
+  // element size. Dilation uses the element reflected through its center.
+  private static int before(int size, boolean max) {
+    return max ? size / 2 : (size - 1) / 2;
+  }
+
+  // Run every step of the operation on one plane of values with an element of the given size,
+  // rows first and then columns.
+  private int[] processPlane(int[] plane, int areaWidth, int areaHeight, int elementWidth,
+                             int elementHeight) {
+    int[] res = plane;
+    for (boolean max : this.steps()) {
+      int[] rows = new int[res.length];
+      int length = areaWidth + elementWidth - 1;
+      int[] prefix = new int[length];
+      int[] suffix = new int[length];
+      for (int r = 0; r < areaHeight; r++) {
+        lineFilter(res, r * areaWidth, areaWidth, elementWidth, before(elementWidth, max), max,
+                prefix, suffix, rows);
+      }
+      res = columnFilter(rows, areaWidth, areaHeight, elementHeight,
+              before(elementHeight, max), max);
+    }
+    return res;
+  }
+
+  // Filter one line of values with a window of the given size, using the van Herk/Gil-Werman
+  // prefix and suffix running extremes over blocks of the window size. Values past the ends of
+  // the line never win.
+  private static void lineFilter(int[] src, int offset, int n, int size, int before, boolean max,
+                                 int[] prefix, int[] suffix, int[] dst) {
+    int identity = max ? 0 : Color.MAX_VALUE;
+    int length = n + size - 1;
+    for (int start = 0; start < length; start += size) {
+      int end = Math.min(length, start + size);
+      int acc = identity;
+      for (int j = start; j < end; j++) {
+        int i = j - before;
+        int value = i >= 0 && i < n ? src[offset + i] : identity;
+        acc = max ? Math.max(acc, value) : Math.min(acc, value);
+        prefix[j] = acc;
+      }
+      acc = identity;
+      for (int j = end - 1; j >= start; j--) {
+        int i = j - before;
+        int value = i >= 0 && i < n ? src[offset + i] : identity;
+        acc = max ? Math.max(acc, value) : Math.min(acc, value);
+        suffix[j] = acc;
+      }
+    }
+    for (int i = 0; i < n; i++) {
+      int a = suffix[i];
+      int b = prefix[i + size - 1];
+      dst[offset + i] = max ? Math.max(a, b) : Math.min(a, b);
+    }
+  }
+
+  // Filter every column at once by running the line filter over whole rows, so memory is only
+  // ever read along rows.
+  private static int[] columnFilter(int[] src, int areaWidth, int areaHeight, int size,
+                                    int before, boolean max) {
+    int identity = max ? 0 : Color.MAX_VALUE;
+    int length = areaHeight + size - 1;
+    int[] prefix = new int[length * areaWidth];
+    int[] suffix = new int[length * areaWidth];
+    for (int start = 0; start < length; start += size) {
+      int end = Math.min(length, start + size);
+      for (int j = start; j < end; j++) {
+        int i = j - before;
+        for (int c = 0; c < areaWidth; c++) {
+          int value = i >= 0 && i < areaHeight ? src[i * areaWidth + c] : identity;
+          int acc = j == start ? identity : prefix[(j - 1) * areaWidth + c];
+          prefix[j * areaWidth + c] = max ? Math.max(acc, value) : Math.min(acc, value);
+        }
+      }
+      for (int j = end - 1; j >= start; j--) {
+        int i = j - before;
+        for (int c = 0; c < areaWidth; c++) {
+          int value = i >= 0 && i < areaHeight ? src[i * areaWidth + c] : identity;
+          int acc = j == end - 1 ? identity : suffix[(j + 1) * areaWidth + c];
+          suffix[j * areaWidth + c] = max ? Math.max(acc, value) : Math.min(acc, value);
+        }
+      }
+    }
+    int[] res = new int[areaHeight * areaWidth];
+    for (int r = 0; r < areaHeight; r++) {
+      int a = r * areaWidth;
+      int b = (r + size - 1) * areaWidth;
+      for (int c = 0; c < areaWidth; c++) {
+        res[a + c] = max ? Math.max(suffix[a + c], prefix[b + c])
+                : Math.min(suffix[a + c], prefix[b + c]);
+      }
+    }
+    return res;
+  }
+
+  // Run every step of the operation on a black and white plane with an element of the given size,
+  // packed into one bit per pixel with white set, and unpack the result.
+  private int[] processBits(int[] plane, int areaWidth, int areaHeight, int elementWidth,
+                            int elementHeight) {
+    int words = (areaWidth + BITS - 1) / BITS;
+    long[][] bits = new long[areaHeight][words];
+    for (int r = 0; r < areaHeight; r++) {
+      for (int c = 0; c < areaWidth; c++) {
+        if (plane[r * areaWidth + c] != 0) {
+          bits[r][c / BITS] |= 1L << (c % BITS);
+        }
+      }
+    }
+
+    for (boolean max : this.steps()) {
+      for (int r = 0; r < areaHeight; r++) {
+        bits[r] = rowBits(bits[r], areaWidth, elementWidth, before(elementWidth, max), max);
+      }
+      bits = columnBits(bits, words, elementHeight, before(elementHeight, max), max);
+    }
+
+    int[] res = new int[areaHeight * areaWidth];
+    for (int r = 0; r < areaHeight; r++) {
+      for (int c = 0; c < areaWidth; c++) {
+        res[r * areaWidth + c] = (bits[r][c / BITS] >>> (c % BITS) & 1) != 0 ? Color.MAX_VALUE : 0;
+      }
+    }
+    return res;
+  }
+
+  // Filter one packed row, where a whole word of pixels is combined at once. A window of any size
+  // is built up from windows of doubling size, each the combination of two shifted copies of the
+  // one before, so a row costs a handful of word operations per element size bit.
+  private static long[] rowBits(long[] row, int n, int size, int before, boolean max) {
+    // Move the row so that every window starts at the pixel it belongs to, padding it with enough
+    // bits that never win for the windows that start before the row does.
+    int padded = n + size;
+    long[] span = shift(row, -before, n, (padded + BITS - 1) / BITS, max);
+    // Windows of the current doubling size, and of the size built so far, starting at each bit.
+    long[] res = null;
+    int built = 0;
+    for (int bit = 1; bit <= size; bit <<= 1) {
+      if ((size & bit) != 0) {
+        res = res == null ? span : combine(res, shift(span, built, padded, span.length, max), max);
+        built += bit;
+      }
+      if (bit << 1 <= size) {
+        span = combine(span, shift(span, bit, padded, span.length, max), max);
+      }
+    }
+    long[] trimmed = new long[row.length];
+    System.arraycopy(res, 0, trimmed, 0, row.length);
+    return trimmed;
+  }
+
+  // Get the given number of words where each bit is the bit the given distance after it in the
+  // row of n bits, or the bit that never wins past the ends of the row.
+  private static long[] shift(long[] row, int distance, int n, int words, boolean max) {
+    long fill = max ? 0 : ALL;
+    long[] res = new long[words];
+    for (int w = 0; w < words; w++) {
+      res[w] = readWord(row, (long) w * BITS + distance, n, fill);
+    }
+    return res;
+  }
+
+  // Read the 64 bits of a packed row starting at any bit, filling bits outside the row.
+  private static long readWord(long[] row, long start, int n, long fill) {
+    long value = 0;
+    if (start >= 0 && start + BITS <= n) {
+      int w = (int) (start / BITS);
+      int offset = (int) (start % BITS);
+      value = row[w] >>> offset;
+      if (offset != 0) {
+        value |= row[w + 1] << (BITS - offset);
+      }
+      return value;
+    }
+    for (int b = 0; b < BITS; b++) {
+      long i = start + b;
+      long bit = i >= 0 && i < n ? row[(int) (i / BITS)] >>> (i % BITS) & 1 : fill & 1;
+      value |= bit << b;
+    }
+    return value;
+  }
+
+  private static long[] combine(long[] a, long[] b, boolean max) {
+    long[] res = new long[a.length];
+    for (int w = 0; w < a.length; w++) {
+      res[w] = max ? a[w] | b[w] : a[w] & b[w];
+    }
+    return res;
+  }
+
+  // Filter every column of packed rows at once with the van Herk/Gil-Werman blocks, combining
+  // whole words of pixels at a time.
+  private static long[][] columnBits(long[][] rows, int words, int size, int before,
+                                     boolean max) {
+    int areaHeight = rows.length;
+    long identity = max ? 0 : ALL;
+    int length = areaHeight + size - 1;
+    long[][] prefix = new long[length][];
+    long[][] suffix = new long[length][];
+    for (int start = 0; start < length; start += size) {
+      int end = Math.min(length, start + size);
+      for (int j = start; j < end; j++) {
+        prefix[j] = new long[words];
+        int i = j - before;
+        for (int w = 0; w < words; w++) {
+          long value = i >= 0 && i < areaHeight ? rows[i][w] : identity;
+          long acc = j == start ? identity : prefix[j - 1][w];
+          prefix[j][w] = max ? acc | value : acc & value;
+        }
+      }
+      for (int j = end - 1; j >= start; j--) {
+        suffix[j] = new long[words];
+        int i = j - before;
+        for (int w = 0; w < words; w++) {
+          long value = i >= 0 && i < areaHeight ? rows[i][w] : identity;
+          long acc = j == end - 1 ? identity : suffix[j + 1][w];
+          suffix[j][w] = max ? acc | value : acc & value;
+        }
+      }
+    }
+    long[][] res = new long[areaHeight][];
+    for (int r = 0; r < areaHeight; r++) {
+      res[r] = combine(suffix[r], prefix[r + size - 1], max);
+    }
+    return res;
+  }
+}
@@ -0,0 +1,151 @@
+package controller.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.color.Color;
+import model.image.ImageModel;
+import util.Util;
+
+/**
+ * Represents a chain of commands run one after another on an image, as if each command's output
+ * were handed to the next command.
+ *
+ * <p>Consecutive {@link RegionCommand}s (point operations and neighborhood filters) are fused:
+ * instead of producing a whole intermediate image per command, the output is computed one tile at
+ * a time, running every fused command over just that tile grown by the halos of the commands after
+ * it. Only the tiles in flight and the final image are ever held. Any other command (resampling,
+ * flips, rotations) needs its whole input, so the image is materialized before it runs.
+ */
+public class Pipeline implements ImageProcessingCommand {
+
+  // The default side length, in pixels, of the output tiles of fused commands.
+  public static final int DEFAULT_TILE = 64;
+
+  private final List<ImageProcessingCommand> commands;
+  private final int tile;
+
+  /**
+   * Create a pipeline of the given commands, in the order they run.
+   * @param commands the commands to run
+   * @throws IllegalArgumentException if the list or any command in it is null
+   */
+  public Pipeline(List<ImageProcessingCommand> commands) throws IllegalArgumentException {
+    this(commands, DEFAULT_TILE);
+  }
+
+  /**
+   * Create a pipeline of the given commands, in the order they run, with a given tile size.
+   * @param commands the commands to run
+   * @param tile the side length, in pixels, of the output tiles of fused commands
+   * @throws IllegalArgumentException if the list or any command in it is null, or the tile size is
+   *                                  not positive
+   */
+  public Pipeline(List<ImageProcessingCommand> commands, int tile)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(commands);
+    for (ImageProcessingCommand command : commands) {
+      Util.requireNonNullArg(command);
+    }
+    if (tile < 1) {
+      throw new IllegalArgumentException("Tile size must be positive.");
+    }
+    this.commands = new ArrayList<>(commands);
+    this.tile = tile;
+  }
+
+  /**
+   * Get the key of this pipeline, made of the keys of its commands in order.
+   * @return the key of this pipeline, or null if any of its commands has no key
+   */
+  @Override
+  public String getKey() {
+    StringBuilder key = new StringBuilder("pipeline");
+    for (ImageProcessingCommand command : this.commands) {
+      String commandKey = command.getKey();
+      if (commandKey == null) {
+        return null;
+      }
+      key.append(" (").append(commandKey).append(')');
+    }
+    return key.toString();
+  }
+
+  @Override
+  public ImageModel process(ImageModel m) throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    ImageModel img = m;
+    List<RegionCommand> fused = new ArrayList<>();
+    for (ImageProcessingCommand command : this.commands) {
+      if (command instanceof RegionCommand) {
+        fused.add((RegionCommand) command);
+      } else {
+        img = command.process(this.runFused(fused, img));
+        fused.clear();
+      }
+    }
+    return this.runFused(fused, img);
+  }
+
+  // Run consecutive region commands over the image tile by tile.
+  private ImageModel runFused(List<RegionCommand> fused, ImageModel m) {
+    if (fused.isEmpty()) {
+      return m;
+    } else if (fused.size() == 1) {
+      return fused.get(0).process(m);
+    }
+
+    int height = m.getHeight();
+    int width = m.getWidth();
+    Color[][] res = new Color[height][width];
+    for (int row = 0; row < height; row += this.tile) {
+      int tileHeight = Math.min(this.tile, height - row);
+      for (int col = 0; col < width; col += this.tile) {
+        int tileWidth = Math.min(this.tile, width - col);
+        Color[][] tilePixels = computeRegion(fused, m, row, col, tileHeight, tileWidth);
+        for (int r = 0; r < tileHeight; r++) {
+          System.arraycopy(tilePixels[r], 0, res[row + r], col, tileWidth);
+        }
+      }
+    }
+    return m.createNew(res);
+  }
+
+  /**
+   * Compute one rectangle of the output of running the region commands in order over the image.
+   * Each command only computes the part of its output that the commands after it will read.
+   * @param stages the region commands to run, in order, of which there must be at least one
+   * @param m the image to run them on, which only needs pixels within the combined halo of the
+   *          commands around the rectangle
+   * @param row the first row of the rectangle
+   * @param col the first column of the rectangle
+   * @param height the number of rows in the rectangle
+   * @param width the number of columns in the rectangle
+   * @return the output pixels of the rectangle
+   */
+  public static Color[][] computeRegion(List<RegionCommand> stages, ImageModel m,
+                                        int row, int col, int height, int width) {
+    int count = stages.size();
+    // The rectangle each stage has to produce: the last produces the requested one, and each
+    // earlier stage also produces the halo that the stage after it reads.
+    int[][] regions = new int[count][];
+    regions[count - 1] = new int[]{row, col, row + height, col + width};
+    for (int i = count - 2; i >= 0; i--) {
+      int halo = stages.get(i + 1).getHalo();
+      int[] next = regions[i + 1];
+      regions[i] = new int[]{
+          Math.max(0, next[0] - halo), Math.max(0, next[1] - halo),
+          Math.min(m.getHeight(), next[2] + halo), Math.min(m.getWidth(), next[3] + halo)};
+    }
+
+    ImageModel input = m;
+    Color[][] out = null;
+    for (int i = 0; i < count; i++) {
+      int[] region = regions[i];
+      out = stages.get(i).processRegion(input, region[0], region[1],
+              region[2] - region[0], region[3] - region[1]);
+      input = new TileView(out, region[0], region[1], m.getWidth(), m.getHeight());
+    }
+    return out;
+  }
+}
@@ -0,0 +1,67 @@
+package controller.commands;
+
+import model.image.ImageModel;
+import util.PixelUtil;
+import util.Util;
+
+/**
+ * Function object command to rotate the given image clockwise by a whole number of quarter turns.
+ *
+ * <p>Quarter and three-quarter turns are a {@link Transpose} with the output rows or columns
+ * reversed, and move pixels in cache-sized tiles. A half turn just reverses the packed pixels.
+ */
+public class QuarterRotation implements ImageProcessingCommand {
+
+  private final int turns;
+
+  /**
+   * Initializes the rotation with a number of clockwise quarter turns.
+   * @param turns the number of quarter turns, where negative turns rotate counterclockwise
+   */
+  public QuarterRotation(int turns) {
+    this.turns = Math.floorMod(turns, 4);
+  }
+
+  /**
+   * Get the number of clockwise quarter turns this rotates by, from 0 to 3.
+   * @return the number of quarter turns
+   */
+  public int getTurns() {
+    return this.turns;
+  }
+
+  @Override
+  public String getKey() {
+    return "rotate-quarter " + this.turns;
+  }
+
+  /**
+   * Modify the given image model by rotating it.
+   * @param m the base image model
+   * @return the rotated image
+   */
+  @Override
+  public ImageModel process(ImageModel m) throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    int width = m.getWidth();
+    int height = m.getHeight();
+    int[] src = PixelUtil.toPacked(m);
+
+    switch (this.turns) {
+      case 1:
+        return PixelUtil.fromPacked(m, Transpose.transpose(src, width, height, false, true),
+                height, width);
+      case 2:
+        int[] res = new int[src.length];
+        for (int i = 0; i < src.length; i++) {
+          res[i] = src[src.length - 1 - i];
+        }
+        return PixelUtil.fromPacked(m, res, width, height);
+      case 3:
+        return PixelUtil.fromPacked(m, Transpose.transpose(src, width, height, true, false),
+                height, width);
+      default:
+        return m;
+    }
+  }
+}
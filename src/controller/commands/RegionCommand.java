@@ -0,0 +1,33 @@
+package controller.commands;
+
+import model.color.Color;
+import model.image.ImageModel;
+
+/**
+ * Represents an image processing command that keeps the dimensions of the image and where every
+ * output pixel only depends on the input pixels within a fixed distance (the halo) of the same
+ * location. Any rectangular part of the output can therefore be computed on its own, which lets
+ * callers such as masking compute only the pixels they actually need.
+ */
+public interface RegionCommand extends ImageProcessingCommand {
+
+  /**
+   * Get how far, in rows and columns, the input pixels that affect an output pixel can be from it.
+   * Commands that only look at the pixel itself have a halo of zero.
+   * @return the halo
+   */
+  int getHalo();
+
+  /**
+   * Compute only the given rectangle of the output of processing the image.
+   * @param m the image to process
+   * @param row the first row of the rectangle
+   * @param col the first column of the rectangle
+   * @param height the number of rows in the rectangle
+   * @param width the number of columns in the rectangle
+   * @return the processed pixels of the rectangle, as height rows of width colors
+   * @throws IllegalArgumentException if the image is null or the rectangle is not in the image
+   */
+  Color[][] processRegion(ImageModel m, int row, int col, int height, int width)
+          throws IllegalArgumentException;
+}
@@ -0,0 +1,74 @@
+package controller.commands;
+
+/**
+ * Represents the filters that resizing can reconstruct an image with. Area averages the source
+ * pixels each output pixel covers, and the rest are convolution kernels that are widened when
+ * reducing an image so that they also average away detail too fine for the output.
+ */
+public enum ResampleFilter {
+  AREA(0),
+  BILINEAR(1),
+  BICUBIC(2),
+  LANCZOS(3);
+
+  private final double radius;
+
+  ResampleFilter(double radius) {
+    this.radius = radius;
+  }
+
+  /**
+   * Build the weight table that resamples one axis with this filter.
+   * @param src the number of source pixels along the axis
+   * @param dst the number of output pixels along the axis
+   * @return the table
+   */
+  public ResampleTable table(int src, int dst) {
+    if (this == AREA) {
+      return ResampleTable.area(src, dst);
+    }
+    return ResampleTable.convolve(src, dst, this::weight, this.radius);
+  }
+
+  /**
+   * Find the filter with the given lowercase name, as used in scripts.
+   * @param name the filter name
+   * @return the filter
+   * @throws IllegalArgumentException if no filter has the given name
+   */
+  public static ResampleFilter fromName(String name) throws IllegalArgumentException {
+    for (ResampleFilter filter : values()) {
+      if (filter.name().toLowerCase().equals(name)) {
+        return filter;
+      }
+    }
+    throw new IllegalArgumentException("Unknown resampling filter: " + name);
+  }
+
+  // The value of this filter's kernel at the given distance from its center.
+  private double weight(double x) {
+    x = Math.abs(x);
+    switch (this) {
+      case BILINEAR:
+        return x < 1 ? 1 - x : 0;
+      case BICUBIC:
+        // Catmull-Rom spline, a = -0.5.
+        if (x < 1) {
+          return (1.5 * x - 2.5) * x * x + 1;
+        } else if (x < 2) {
+          return ((-0.5 * x + 2.5) * x - 4) * x + 2;
+        }
+        return 0;
+      case LANCZOS:
+        if (x == 0) {
+          return 1;
+        } else if (x < this.radius) {
+          double px = Math.PI * x;
+          return this.radius * Math.sin(px) * Math.sin(px / this.radius) / (px * px);
+        }
+        return 0;
+      default:
+        throw new IllegalStateException("Filter has no kernel.");
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package controller.commands;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Represents precomputed resampling weights along one axis of an image. For every output index
+ * the table stores the first source index that contributes to it and the fixed-point weights of
+ * that source index and the ones following it, so resampling never has to recompute sample
+ * positions per pixel. Weights for one output index always sum to exactly {@link #ONE}.
+ */
+public class ResampleTable {
+
+  // Number of fractional bits used by the fixed-point weights.
+  public static final int SHIFT = 14;
+  // The fixed-point representation of a weight of 1.
+  public static final int ONE = 1 << SHIFT;
+
+  private final int[] starts;
+  private final int[][] weights;
+
+  /**
+   * Create a table from the first contributing source index and the weights for every output.
+   * @param starts the first source index for each output index
+   * @param weights the fixed-point weights for each output index
+   */
+  private ResampleTable(int[] starts, int[][] weights) {
+    this.starts = starts;
+    this.weights = weights;
+  }
+
+  /**
+   * Build a table that samples the two nearest source pixels, matching the sample positions that
+   * downscaling has always used (output i samples source position src * i / dst).
+   * @param src the number of source pixels along the axis
+   * @param dst the number of output pixels along the axis
+   * @param fractionToFloor whether the fractional part of the sample position weights the lower
+   *                        source pixel rather than the upper one; the original downscaling
+   *                        weighted rows this way and columns the other way
+   * @return the table
+   */
+  public static ResampleTable bilinear(int src, int dst, boolean fractionToFloor) {
+    int[] starts = new int[dst];
+    int[][] weights = new int[dst][];
+    for (int i = 0; i < dst; i++) {
+      float pos = src * ((float) i / dst);
+      int floor = (int) Math.floor(pos);
+      int ceil = Math.min((int) Math.ceil(pos), src - 1);
+      starts[i] = floor;
+      if (floor == ceil) {
+        weights[i] = new int[]{ONE};
+      } else {
+        int frac = Math.round((pos - floor) * ONE);
+        weights[i] = fractionToFloor ? new int[]{frac, ONE - frac} : new int[]{ONE - frac, frac};
+      }
+    }
+    return new ResampleTable(starts, weights);
+  }
+
+  /**
+   * Build a table where every output pixel is the average of the whole source footprint it covers,
+   * with partially covered source pixels weighted by how much of them is covered.
+   * @param src the number of source pixels along the axis
+   * @param dst the number of output pixels along the axis
+   * @return the table
+   */
+  public static ResampleTable area(int src, int dst) {
+    int[] starts = new int[dst];
+    int[][] weights = new int[dst][];
+    // Work in units of 1 / (src * dst): source pixel i covers [i * dst, (i + 1) * dst), and
+    // output pixel j covers [j * src, (j + 1) * src), so every overlap is an exact integer.
+    // Each weight is the difference of the rounded coverage at its two ends, rather than its own
+    // rounded overlap, so the weights sum to exactly ONE and no rounding error builds up on one
+    // weight, however many source pixels there are.
+    for (int j = 0; j < dst; j++) {
+      long lo = (long) j * src;
+      long hi = lo + src;
+      int first = (int) (lo / dst);
+      int last = (int) ((hi - 1) / dst);
+      int[] w = new int[last - first + 1];
+      long before = 0;
+      for (int i = first; i <= last; i++) {
+        long covered = Math.min((long) (i + 1) * dst, hi) - lo;
+        long upTo = (covered * ONE + src / 2) / src;
+        w[i - first] = (int) (upTo - before);
+        before = upTo;
+      }
+      starts[j] = first;
+      weights[j] = w;
+    }
+    return new ResampleTable(starts, weights);
+  }
+
+  /**
+   * Build a table that convolves the source with a kernel centered on each output pixel's
+   * position. When reducing, the kernel is stretched by the reduction factor so that it covers the
+   * whole source footprint of the output pixel. Weights that would fall outside the source are
+   * dropped and the rest renormalized.
+   * @param src the number of source pixels along the axis
+   * @param dst the number of output pixels along the axis
+   * @param kernel the kernel, taking the distance from its center in source pixels divided by
+   *               the reduction factor when reducing
+   * @param radius the distance from the center beyond which the kernel is zero
+   * @return the table
+   */
+  public static ResampleTable convolve(int src, int dst, DoubleUnaryOperator kernel,
+                                       double radius) {
+    double scale = (double) src / dst;
+    double stretch = Math.max(1, scale);
+    double support = radius * stretch;
+    int[] starts = new int[dst];
+    int[][] weights = new int[dst][];
+    for (int i = 0; i < dst; i++) {
+      double center = (i + 0.5) * scale - 0.5;
+      int first = Math.max(0, (int) Math.ceil(center - support));
+      int last = Math.min(src - 1, (int) Math.floor(center + support));
+      if (last < first) { // Support narrower than a pixel, just take the nearest one.
+        first = Math.min(src - 1, Math.max(0, (int) Math.round(center)));
+        last = first;
+      }
+      double[] exact = new double[last - first + 1];
+      double sum = 0;
+      for (int j = first; j <= last; j++) {
+        exact[j - first] = kernel.applyAsDouble((j - center) / stretch);
+        sum += exact[j - first];
+      }
+      // Rounded from the running total like the area weights, so they sum to exactly ONE.
+      int[] w = new int[exact.length];
+      double total = 0;
+      long before = 0;
+      for (int k = 0; k < w.length; k++) {
+        total += exact[k];
+        long upTo = sum == 0 ? ONE : Math.round(total / sum * ONE);
+        w[k] = (int) (upTo - before);
+        before = upTo;
+      }
+      w[w.length - 1] += ONE - before;
+      starts[i] = first;
+      weights[i] = w;
+    }
+    return new ResampleTable(starts, weights);
+  }
+
+  /**
+   * Get the number of output pixels this table produces.
+   * @return the output size
+   */
+  public int size() {
+    return this.starts.length;
+  }
+
+  /**
+   * Get the first source index that contributes to the given output index.
+   * @param i the output index
+   * @return the first contributing source index
+   */
+  public int start(int i) {
+    return this.starts[i];
+  }
+
+  /**
+   * Get the fixed-point weights of the source indices contributing to the given output index,
+   * beginning at {@link #start(int)}.
+   * @param i the output index
+   * @return the weights
+   */
+  public int[] weights(int i) {
+    return this.weights[i];
+  }
+}
@@ -0,0 +1,99 @@
+package controller.commands;
+
+import java.util.stream.IntStream;
+
+import util.PixelUtil;
+import util.Util;
+
+/**
+ * Represents the engine shared by the resampling commands. It resamples packed pixels in two
+ * separable passes, first along every row with the column table and then along every column with
+ * the row table, using the fixed-point weights precomputed in each {@link ResampleTable}.
+ *
+ * <p>Every output row of a pass only depends on the input of that pass, so large images have the
+ * rows of each pass split across threads.
+ */
+public class Resampler {
+
+  // Images with fewer pixels than this are resampled on the calling thread only.
+  private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+  /**
+   * Resample packed 0xRRGGBB pixels to the sizes of the given tables.
+   * @param src the packed source pixels, row by row
+   * @param srcWidth the width of the source image
+   * @param colTable the weights along the horizontal axis, sized to the output width
+   * @param rowTable the weights along the vertical axis, sized to the output height
+   * @param round whether to round results to the nearest value rather than truncate them
+   * @return the packed output pixels, row by row
+   * @throws IllegalArgumentException if any argument is null or the source width does not
+   *                                  evenly divide the source pixels
+   */
+  public static int[] resample(int[] src, int srcWidth, ResampleTable colTable,
+                               ResampleTable rowTable, boolean round)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(src);
+    Util.requireNonNullArg(colTable);
+    Util.requireNonNullArg(rowTable);
+    if (srcWidth < 1 || src.length % srcWidth != 0) {
+      throw new IllegalArgumentException("Source pixels do not match the supplied width.");
+    }
+    int dstWidth = colTable.size();
+    int dstHeight = rowTable.size();
+    int srcHeight = src.length / srcWidth;
+    boolean parallel = src.length + dstWidth * dstHeight >= PARALLEL_THRESHOLD;
+
+    // Horizontal pass: one row of channel sums per source row, still scaled by ONE.
+    int[] horizontal = new int[srcHeight * dstWidth * 3];
+    rows(srcHeight, parallel).forEach(r -> {
+      int rowOffset = r * srcWidth;
+      int out = r * dstWidth * 3;
+      for (int c = 0; c < dstWidth; c++) {
+        int[] w = colTable.weights(c);
+        int idx = rowOffset + colTable.start(c);
+        int red = 0;
+        int green = 0;
+        int blue = 0;
+        for (int k = 0; k < w.length; k++) {
+          int p = src[idx + k];
+          red += w[k] * ((p >> 16) & 255);
+          green += w[k] * ((p >> 8) & 255);
+          blue += w[k] * (p & 255);
+        }
+        horizontal[out++] = red;
+        horizontal[out++] = green;
+        horizontal[out++] = blue;
+      }
+    });
+
+    // Vertical pass: combine the horizontal sums of the contributing source rows.
+    int shift = 2 * ResampleTable.SHIFT;
+    long bias = round ? 1L << (shift - 1) : 0;
+    int[] res = new int[dstWidth * dstHeight];
+    int rowLength = dstWidth * 3;
+    rows(dstHeight, parallel).forEach(r -> {
+      int[] w = rowTable.weights(r);
+      int first = rowTable.start(r) * rowLength;
+      for (int c = 0; c < dstWidth; c++) {
+        long red = bias;
+        long green = bias;
+        long blue = bias;
+        int idx = first + c * 3;
+        for (int k = 0; k < w.length; k++) {
+          red += (long) w[k] * horizontal[idx];
+          green += (long) w[k] * horizontal[idx + 1];
+          blue += (long) w[k] * horizontal[idx + 2];
+          idx += rowLength;
+        }
+        res[r * dstWidth + c] = PixelUtil.pack(
+                (int) (red >> shift), (int) (green >> shift), (int) (blue >> shift));
+      }
+    });
+    return res;
+  }
+
+  private static IntStream rows(int count, boolean parallel) {
+    IntStream rows = IntStream.range(0, count);
+    return parallel ? rows.parallel() : rows;
+  }
+}
@@ -0,0 +1,63 @@
+package controller.commands;
+
+import model.image.ImageModel;
+import util.PixelUtil;
+import util.Util;
+
+/**
+ * Represents a command that resizes a given image to an instantiated size, either larger or
+ * smaller than the original, reconstructing it with a chosen {@link ResampleFilter}.
+ *
+ * <p>The weights for every output row and column are computed once per image in a
+ * {@link ResampleTable} and the image is resampled in two separable passes by the
+ * {@link Resampler}.
+ */
+public class Resize implements ImageProcessingCommand {
+  private final int cols;
+  private final int rows;
+  private final ResampleFilter filter;
+
+  /**
+   * Initializes a resize object with the supplied dimensions, using the bicubic filter.
+   * @param width the resized image width
+   * @param height the resized image height
+   * @throws IllegalArgumentException if width or height is not positive
+   */
+  public Resize(int width, int height) throws IllegalArgumentException {
+    this(width, height, ResampleFilter.BICUBIC);
+  }
+
+  /**
+   * Initializes a resize object with the supplied dimensions and filter.
+   * @param width the resized image width
+   * @param height the resized image height
+   * @param filter the filter to reconstruct the image with
+   * @throws IllegalArgumentException if width or height is not positive or the filter is null
+   */
+  public Resize(int width, int height, ResampleFilter filter) throws IllegalArgumentException {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Image dimensions must be positive");
+    }
+    this.cols = width;
+    this.rows = height;
+    this.filter = Util.requireNonNullArg(filter);
+  }
+
+  @Override
+  public String getKey() {
+    return "resize " + this.cols + " " + this.rows + " " + this.filter;
+  }
+
+  @Override
+  public ImageModel process(ImageModel m) throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    if (this.rows == m.getHeight() && this.cols == m.getWidth()) { // saves processing time
+      return m;
+    }
+
+    int[] res = Resampler.resample(PixelUtil.toPacked(m), m.getWidth(),
+            this.filter.table(m.getWidth(), this.cols),
+            this.filter.table(m.getHeight(), this.rows), true);
+    return PixelUtil.fromPacked(m, res, this.cols, this.rows);
+  }
+}
@@ -0,0 +1,160 @@
+package controller.commands;
+
+import java.util.stream.IntStream;
+
+import model.image.ImageModel;
+import util.PixelUtil;
+import util.Util;
+
+/**
+ * Function object command to rotate the given image clockwise by an arbitrary angle. The output
+ * is enlarged to fit the whole rotated image, and the corners it uncovers are black.
+ *
+ * <p>Each output row is walked with fixed-point source coordinates that only need one addition
+ * per pixel, so there is no per-pixel trigonometry or division. Rows are independent and are split
+ * across threads for large images. Angles that are a multiple of 90 degrees are handed to
+ * {@link QuarterRotation}, which moves pixels exactly.
+ */
+public class Rotate implements ImageProcessingCommand {
+
+  /**
+   * Represents the ways source pixels can be sampled for each output pixel.
+   * Nearest takes the single closest source pixel, and bilinear blends the four closest.
+   */
+  public enum Sampling { BILINEAR, NEAREST }
+
+  // Number of fractional bits used by the fixed-point source coordinates, which are longs so that
+  // images more than 32768 pixels across do not overflow them.
+  private static final int SHIFT = 16;
+  private static final double ONE = 1 << SHIFT;
+  // Images with fewer output pixels than this are rotated on the calling thread only.
+  private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+  private final double degrees;
+  private final Sampling sampling;
+
+  /**
+   * Initializes a bilinear rotation by the given angle.
+   * @param degrees the clockwise angle, in degrees
+   */
+  public Rotate(double degrees) {
+    this(degrees, Sampling.BILINEAR);
+  }
+
+  /**
+   * Initializes a rotation by the given angle, using the given sampling.
+   * @param degrees the clockwise angle, in degrees
+   * @param sampling how to sample source pixels
+   * @throws IllegalArgumentException if the angle is not finite or the sampling is null
+   */
+  public Rotate(double degrees, Sampling sampling) throws IllegalArgumentException {
+    if (Double.isNaN(degrees) || Double.isInfinite(degrees)) {
+      throw new IllegalArgumentException("Rotation angle must be a finite number.");
+    }
+    this.degrees = degrees;
+    this.sampling = Util.requireNonNullArg(sampling);
+  }
+
+  @Override
+  public String getKey() {
+    return "rotate " + this.degrees + " " + this.sampling;
+  }
+
+  /**
+   * Modify the given image model by rotating it.
+   * @param m the base image model
+   * @return the rotated image
+   */
+  @Override
+  public ImageModel process(ImageModel m) throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    if (this.degrees % 90 == 0) {
+      return new QuarterRotation((int) ((this.degrees % 360) / 90)).process(m);
+    }
+
+    int width = m.getWidth();
+    int height = m.getHeight();
+    double radians = Math.toRadians(this.degrees);
+    double cos = Math.cos(radians);
+    double sin = Math.sin(radians);
+    int outWidth = (int) Math.ceil(Math.abs(width * cos) + Math.abs(height * sin) - 1e-9);
+    int outHeight = (int) Math.ceil(Math.abs(width * sin) + Math.abs(height * cos) - 1e-9);
+
+    int[] src = PixelUtil.toPacked(m);
+    int[] res = new int[outWidth * outHeight];
+    // Moving one output pixel right moves the source position by (cos, -sin).
+    long stepU = Math.round(cos * ONE);
+    long stepV = Math.round(-sin * ONE);
+    // Bilinear samples are taken relative to pixel centers, nearest samples by the pixel they land
+    // in.
+    double centerOffset = this.sampling == Sampling.BILINEAR ? 0.5 : 0;
+
+    IntStream rows = IntStream.range(0, outHeight);
+    if ((long) outWidth * outHeight >= PARALLEL_THRESHOLD) {
+      rows = rows.parallel();
+    }
+    rows.forEach(r -> {
+      // Source position of the center of the first pixel in this row.
+      double dx = 0.5 - outWidth / 2.0;
+      double dy = r + 0.5 - outHeight / 2.0;
+      double u = cos * dx + sin * dy + width / 2.0 - centerOffset;
+      double v = -sin * dx + cos * dy + height / 2.0 - centerOffset;
+      long fu = Math.round(u * ONE);
+      long fv = Math.round(v * ONE);
+      int out = r * outWidth;
+      for (int c = 0; c < outWidth; c++) {
+        res[out + c] = this.sampling == Sampling.BILINEAR
+                ? sampleBilinear(src, width, height, fu, fv)
+                : sampleNearest(src, width, height, fu, fv);
+        fu += stepU;
+        fv += stepV;
+      }
+    });
+
+    return PixelUtil.fromPacked(m, res, outWidth, outHeight);
+  }
+
+  // Take the source pixel a fixed-point position lands in, or black outside of the image.
+  private static int sampleNearest(int[] src, int width, int height, long fu, long fv) {
+    long x = fu >> SHIFT;
+    long y = fv >> SHIFT;
+    if (x < 0 || y < 0 || x >= width || y >= height) {
+      return 0;
+    }
+    return src[(int) y * width + (int) x];
+  }
+
+  // Blend the four source pixels around a fixed-point position, with 8 bits of weight precision.
+  // Pixels beyond the image count as black, which smooths the edges of the rotated image.
+  private static int sampleBilinear(int[] src, int width, int height, long fu, long fv) {
+    if (fu >> SHIFT < -1 || fv >> SHIFT < -1 || fu >> SHIFT >= width || fv >> SHIFT >= height) {
+      return 0;
+    }
+    int x = (int) (fu >> SHIFT);
+    int y = (int) (fv >> SHIFT);
+    int fx = (int) (fu >> (SHIFT - 8)) & 255;
+    int fy = (int) (fv >> (SHIFT - 8)) & 255;
+    int p00 = pixelOrBlack(src, width, height, x, y);
+    int p01 = pixelOrBlack(src, width, height, x + 1, y);
+    int p10 = pixelOrBlack(src, width, height, x, y + 1);
+    int p11 = pixelOrBlack(src, width, height, x + 1, y + 1);
+    int w00 = (256 - fx) * (256 - fy);
+    int w01 = fx * (256 - fy);
+    int w10 = (256 - fx) * fy;
+    int w11 = fx * fy;
+    int red = (((p00 >> 16) & 255) * w00 + ((p01 >> 16) & 255) * w01
+            + ((p10 >> 16) & 255) * w10 + ((p11 >> 16) & 255) * w11 + 32768) >> 16;
+    int green = (((p00 >> 8) & 255) * w00 + ((p01 >> 8) & 255) * w01
+            + ((p10 >> 8) & 255) * w10 + ((p11 >> 8) & 255) * w11 + 32768) >> 16;
+    int blue = ((p00 & 255) * w00 + (p01 & 255) * w01
+            + (p10 & 255) * w10 + (p11 & 255) * w11 + 32768) >> 16;
+    return red << 16 | green << 8 | blue;
+  }
+
+  private static int pixelOrBlack(int[] src, int width, int height, int x, int y) {
+    if (x < 0 || y < 0 || x >= width || y >= height) {
+      return 0;
+    }
+    return src[y * width + x];
+  }
+}
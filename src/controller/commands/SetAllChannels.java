@@ -15,9 +15,19 @@ public class SetAllChannels extends MapChannels {
    * @param mapping a function object to convert a Color into a new Integer
    */
   public SetAllChannels(Function<Color,Integer> mapping) {
+    this(mapping, null);
+  }
+
+  /**
+   * Produces new Colors made up of the produced Integer for all colors in an image, with a key
+   * describing the mapping.
+   * @param mapping a function object to convert a Color into a new Integer
+   * @param key a key that only mappings giving the same values share, or null if there is none
+   */
+  public SetAllChannels(Function<Color,Integer> mapping, String key) {
     super((Color c) -> {
       int value = Util.requireNonNullArg(mapping).apply(c);
       return new Color(value, value, value);
-    });
+    }, key);
   }
 }
@@ -0,0 +1,64 @@
+package controller.commands;
+
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import util.Util;
+
+/**
+ * Represents a window onto part of a larger image, used to hand a partially computed or partially
+ * read image to a {@link RegionCommand}. The view reports the dimensions of the whole image, so
+ * commands see the real image edges, but only the pixels inside the window are available.
+ */
+public class TileView implements ImageModel {
+
+  private final Color[][] pixels;
+  private final int row;
+  private final int col;
+  private final int width;
+  private final int height;
+
+  /**
+   * Create a view of the given pixels placed within a larger image.
+   * @param pixels the pixels of the window, as rows of colors
+   * @param row the row of the whole image that the window starts at
+   * @param col the column of the whole image that the window starts at
+   * @param width the width of the whole image
+   * @param height the height of the whole image
+   * @throws IllegalArgumentException if the pixels are null
+   */
+  public TileView(Color[][] pixels, int row, int col, int width, int height)
+          throws IllegalArgumentException {
+    this.pixels = Util.requireNonNullArg(pixels);
+    this.row = row;
+    this.col = col;
+    this.width = width;
+    this.height = height;
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public Color colorAt(int r, int c) throws IllegalArgumentException {
+    int tileRow = r - this.row;
+    int tileCol = c - this.col;
+    if (tileRow < 0 || tileCol < 0 || tileRow >= this.pixels.length
+            || tileCol >= this.pixels[tileRow].length) {
+      throw new IllegalArgumentException("Cannot get color outside of the computed tile.");
+    }
+    return this.pixels[tileRow][tileCol];
+  }
+
+  @Override
+  public ImageModel createNew(Color[][] pixels) throws IllegalArgumentException {
+    return new SimpleImage(pixels);
+  }
+}
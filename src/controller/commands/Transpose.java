@@ -0,0 +1,67 @@
+package controller.commands;
+
+import model.image.ImageModel;
+import util.PixelUtil;
+import util.Util;
+
+/**
+ * Function object command to transpose the given image, swapping its rows with its columns
+ * (i.e. the pixel at row r and column c moves to row c and column r).
+ *
+ * <p>Pixels are moved between packed buffers in square tiles, so that both the rows being read
+ * and the rows being written stay in cache while a tile is copied.
+ */
+public class Transpose implements ImageProcessingCommand {
+
+  // The side length, in pixels, of the tiles that pixels are moved in.
+  private static final int TILE = 16;
+
+  @Override
+  public String getKey() {
+    return "transpose";
+  }
+
+  /**
+   * Modify the given image model by transposing it.
+   * @param m the base image model
+   * @return the transposed image
+   */
+  @Override
+  public ImageModel process(ImageModel m) throws IllegalArgumentException {
+    Util.requireNonNullArg(m);
+    int[] res = transpose(PixelUtil.toPacked(m), m.getWidth(), m.getHeight(), false, false);
+    return PixelUtil.fromPacked(m, res, m.getHeight(), m.getWidth());
+  }
+
+  /**
+   * Transpose packed pixels tile by tile, optionally reversing the order of the output rows or
+   * columns, which turns the transpose into a quarter rotation.
+   * @param src the packed source pixels, row by row
+   * @param width the width of the source image
+   * @param height the height of the source image
+   * @param reverseRows whether to reverse the order of the output rows
+   * @param reverseCols whether to reverse the order of the output columns
+   * @return the packed output pixels, which are height wide and width tall
+   */
+  static int[] transpose(int[] src, int width, int height,
+                         boolean reverseRows, boolean reverseCols) {
+    int[] dst = new int[src.length];
+    int dstStep = reverseRows ? -height : height;
+    for (int rowTile = 0; rowTile < height; rowTile += TILE) {
+      int rowEnd = Math.min(rowTile + TILE, height);
+      for (int colTile = 0; colTile < width; colTile += TILE) {
+        int colEnd = Math.min(colTile + TILE, width);
+        int firstDstRow = reverseRows ? width - 1 - colTile : colTile;
+        for (int r = rowTile; r < rowEnd; r++) {
+          int srcIdx = r * width + colTile;
+          int dstIdx = firstDstRow * height + (reverseCols ? height - 1 - r : r);
+          for (int c = colTile; c < colEnd; c++) {
+            dst[dstIdx] = src[srcIdx++];
+            dstIdx += dstStep;
+          }
+        }
+      }
+    }
+    return dst;
+  }
+}
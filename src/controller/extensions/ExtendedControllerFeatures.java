@@ -1,16 +1,22 @@
 package controller.extensions;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 import controller.ControllerFeatures;
+import controller.commands.Bilateral;
 import controller.commands.Downscale;
 import controller.commands.ImageProcessingCommand;
 import controller.commands.MaskedCommand;
+import controller.commands.ResampleFilter;
+import controller.commands.Resize;
 import model.image.ImageModel;
 import model.processor.ImageProcessor;
 
 /**
- * An extended features object that adds the downscale command and capability for command masking.
+ * An extended features object that adds the downscale, resize and bilateral commands and
+ * capability for command masking.
  */
 public class ExtendedControllerFeatures extends ControllerFeatures {
 
@@ -23,7 +29,14 @@ public class ExtendedControllerFeatures extends ControllerFeatures {
    */
   public ExtendedControllerFeatures(ImageProcessor processor) throws IllegalArgumentException {
     super(processor);
-    this.knownCommands.put("downscale", (Scanner sc) -> new Downscale(sc.nextInt(), sc.nextInt()));
+    this.knownCommands.put("downscale", (Scanner sc) -> new Downscale(sc.nextInt(), sc.nextInt(),
+            sc.hasNext("area|bilinear") ? Downscale.Mode.valueOf(sc.next().toUpperCase())
+                    : Downscale.Mode.BILINEAR));
+    this.knownCommands.put("resize", (Scanner sc) -> new Resize(sc.nextInt(), sc.nextInt(),
+            sc.hasNext("area|bilinear|bicubic|lanczos") ? ResampleFilter.fromName(sc.next())
+                    : ResampleFilter.BICUBIC));
+    this.knownCommands.put("bilateral",
+        (Scanner sc) -> new Bilateral(sc.nextDouble(), sc.nextDouble()));
   }
 
   @Override
@@ -42,4 +55,13 @@ public class ExtendedControllerFeatures extends ControllerFeatures {
     }
     return command;
   }
+
+  @Override
+  public List<String> checkProcessingCommand(String cmd, Scanner sc) throws IllegalStateException {
+    List<String> images = new ArrayList<>(super.checkProcessingCommand(cmd, sc));
+    if (sc != null && sc.hasNext()) {
+      images.add(sc.next());
+    }
+    return images;
+  }
 }
@@ -1,7 +1,12 @@
 package controller.extensions;
 
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
 
+import javax.swing.SwingUtilities;
+
+import controller.commands.ImageProcessingCommand;
+import model.image.ImageModel;
 import model.processor.ImageProcessor;
 import util.Util;
 import view.ImageProcessorView;
@@ -34,9 +39,34 @@ public class ExtendedGuiControllerFeatures extends ExtendedControllerFeatures {
     this.view.displayImage(this.processor.getImageState(saveName));
   }
 
+  /**
+   * Run a processing command on the processor without waiting for it to finish, and show the
+   * processed image on the view once it is computed, or the error if it fails. The command and its
+   * arguments are still checked straight away.
+   * @param cmd the command to run
+   * @param name the name of the image to process
+   * @param saveName the name to save the processed image with
+   * @param sc the scanner for extra arguments
+   * @throws IllegalStateException if the command is not known or its arguments are invalid
+   */
   @Override
   public void runProcessingCommand(String cmd, String name, String saveName, Scanner sc) {
-    super.runProcessingCommand(cmd, name, saveName, sc);
-    this.view.displayImage(this.processor.getImageState(saveName));
+    ImageProcessingCommand command = this.createProcessingCommand(cmd, sc);
+    // The view is only updated from the event dispatch thread, whichever thread ran the command.
+    this.processor.processImageAsync(name, saveName, command).whenComplete(
+            (ImageModel img, Throwable error) -> SwingUtilities.invokeLater(() -> {
+              if (error == null) {
+                this.view.displayImage(img);
+              } else {
+                this.view.displayError(messageOf(error));
+              }
+            }));
+  }
+
+  // Get the message of what went wrong in a future, rather than of the exception wrapping it.
+  private static String messageOf(Throwable error) {
+    Throwable cause = error instanceof CompletionException && error.getCause() != null
+            ? error.getCause() : error;
+    return cause.getMessage() == null ? "Image could not be processed." : cause.getMessage();
   }
 }
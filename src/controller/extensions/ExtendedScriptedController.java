@@ -1,7 +1,9 @@
 package controller.extensions;
 
 import java.io.OutputStream;
+import java.util.EnumSet;
 import java.util.Optional;
+import java.util.Set;
 
 import controller.ScriptedImageProcessorController;
 import model.processor.ImageProcessor;
@@ -23,6 +25,25 @@ public class ExtendedScriptedController extends ScriptedImageProcessorController
   public ExtendedScriptedController(ImageProcessor processor, Readable input,
                                     Optional<OutputStream> overrideDest)
           throws IllegalArgumentException {
-    super(processor, input, overrideDest, new ExtendedControllerFeatures(processor));
+    this(processor, input, overrideDest, EnumSet.noneOf(Optimization.class));
+  }
+
+  /**
+   * Create a new image processor controller that runs input commands in order to process images,
+   * optimizing the script before it runs.
+   * If an exception is encountered, control is stopped.
+   *
+   * @param processor     a processor to use to process images
+   * @param input         a script from which to read the commands
+   * @param overrideDest  optional override on where to write images when called to save them
+   * @param optimizations the optimizations to apply to the script
+   * @throws IllegalArgumentException if any of the arguments are null
+   */
+  public ExtendedScriptedController(ImageProcessor processor, Readable input,
+                                    Optional<OutputStream> overrideDest,
+                                    Set<Optimization> optimizations)
+          throws IllegalArgumentException {
+    super(processor, input, overrideDest, new ExtendedControllerFeatures(processor),
+            optimizations);
   }
 }
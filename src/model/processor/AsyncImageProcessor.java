@@ -0,0 +1,144 @@
+package model.processor;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+import controller.commands.ImageProcessingCommand;
+import model.image.ImageModel;
+import util.Util;
+
+/**
+ * Represents an image processor whose names refer to future images, so that processing an image
+ * returns straight away and the command runs in the background.
+ *
+ * <p>Processing an image stores the future result under its new name at once, chained onto the
+ * future of the image it is computed from as it was when the command was given, so commands on
+ * images still being computed queue up behind them without anyone waiting. Only asking for an
+ * image with {@link #getImageState} waits for it, and the synchronous {@link #processImage} waits
+ * for its own result. Cancelling a future result before its command starts means the command never
+ * runs, and every result depending on it is cancelled with it.
+ */
+public class AsyncImageProcessor implements ImageProcessor {
+
+  private final ConcurrentMap<String, CompletableFuture<ImageModel>> images;
+  private final Executor executor;
+
+  /**
+   * Initializes a new asynchronous image processor, having no images to start, that runs
+   * commands on the common fork join pool.
+   */
+  public AsyncImageProcessor() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Initializes a new asynchronous image processor, having no images to start, that runs
+   * commands with the given executor.
+   * @param executor the executor to run commands with
+   * @throws IllegalArgumentException if the executor is null
+   */
+  public AsyncImageProcessor(Executor executor) throws IllegalArgumentException {
+    this.images = new ConcurrentHashMap<>();
+    this.executor = Util.requireNonNullArg(executor);
+  }
+
+  /**
+   * Retrieve the image with the given name, waiting for it to be computed if it is not yet.
+   * @param name the internal name of the image to get
+   * @return the image state
+   * @throws IllegalArgumentException if the name does not correspond to an image, or the command
+   *                                  computing it failed
+   * @throws IllegalStateException if computing the image was cancelled
+   */
+  @Override
+  public ImageModel getImageState(String name)
+          throws IllegalArgumentException, IllegalStateException {
+    return await(Util.requireNonNullArg(this.images.get(Util.requireNonNullArg(name))));
+  }
+
+  @Override
+  public void loadImage(String name, ImageModel img) throws IllegalArgumentException {
+    Util.requireNonNullArg(name);
+    this.images.put(name, CompletableFuture.completedFuture(Util.requireNonNullArg(img)));
+  }
+
+  @Override
+  public void processImage(String name, String saveName, ImageProcessingCommand cmd)
+          throws IllegalArgumentException, IllegalStateException {
+    await(this.processImageAsync(name, saveName, cmd));
+  }
+
+  @Override
+  public void removeImage(String name) throws IllegalArgumentException {
+    Util.requireNonNullArg(this.images.remove(Util.requireNonNullArg(name)));
+  }
+
+  @Override
+  public CompletableFuture<ImageModel> getImageFuture(String name) {
+    CompletableFuture<ImageModel> img = name == null ? null : this.images.get(name);
+    return img == null ? missing() : img;
+  }
+
+  /**
+   * Process a stored image with an image processing command in the background, storing the
+   * future result with a new name straight away. The returned future is the one stored, so
+   * cancelling it cancels the image under the new name and every image computed from it. The
+   * image is looked up and the result stored in one step for the new name, so commands processing
+   * an image into its own name at the same time are chained one after the other, and none is lost.
+   * @param name the name of the image to process
+   * @param saveName the name to associate with the processed image
+   * @param cmd the command to run to process the image
+   * @return the future processed image, failing with an IllegalArgumentException if the name does
+   *         not correspond to an image or the command fails
+   * @throws IllegalArgumentException if the new name or the command is null
+   */
+  @Override
+  public CompletableFuture<ImageModel> processImageAsync(String name, String saveName,
+                                                         ImageProcessingCommand cmd)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(saveName);
+    Util.requireNonNullArg(cmd);
+    if (name == null) {
+      return missing();
+    }
+    AtomicReference<CompletableFuture<ImageModel>> result = new AtomicReference<>();
+    this.images.compute(saveName, (String key, CompletableFuture<ImageModel> current) -> {
+      CompletableFuture<ImageModel> input = name.equals(key) ? current : this.images.get(name);
+      if (input == null) {
+        return current;
+      }
+      result.set(input.thenApplyAsync(cmd::process, this.executor));
+      return result.get();
+    });
+    return result.get() == null ? missing() : result.get();
+  }
+
+  private static CompletableFuture<ImageModel> missing() {
+    return CompletableFuture.failedFuture(
+            new IllegalArgumentException("No image with the given name."));
+  }
+
+  // Wait for a future image, throwing what its command threw rather than the wrapped exception.
+  private static ImageModel await(CompletableFuture<ImageModel> img)
+          throws IllegalArgumentException, IllegalStateException {
+    try {
+      return img.join();
+    } catch (CancellationException e) {
+      throw new IllegalStateException("Computing the image was cancelled.");
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof CancellationException) {
+        throw new IllegalStateException("Computing the image was cancelled.");
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Computing the image failed.");
+    }
+  }
+}
@@ -0,0 +1,262 @@
+package model.processor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import controller.commands.ImageProcessingCommand;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import util.Util;
+
+/**
+ * Represents an image processor that keeps the images it holds in memory within a budget of bytes,
+ * so that scripts making many intermediate images do not run out of memory.
+ *
+ * <p>When storing an image takes the images in memory over the budget, the least recently used
+ * images are evicted to scratch files, three bytes per pixel, and read back in as simple images the
+ * next time they are asked for. Stored images never change, so a scratch file stays valid until
+ * its name is given a new image, and an image that was read back in is evicted again without
+ * writing anything. The image most recently stored or read is always kept in memory, even if it is
+ * over the budget on its own. Scratch files are removed when the names they belong to are
+ * replaced, and when the program exits.
+ */
+public class BoundedImageProcessor implements ImageProcessor {
+
+  // Estimated memory taken by each pixel of a simple image on a 64 bit JVM: a reference in the
+  // pixel array, and the color object it refers to.
+  public static final long BYTES_PER_PIXEL = 32;
+
+  private final long budget;
+  // Images in memory, in access order so iteration starts at the least recently used.
+  private final LinkedHashMap<String, ImageModel> resident;
+  // Scratch files holding images, whether or not they are also in memory.
+  private final Map<String, Path> spilled;
+  private Path scratchDir;
+  private long residentBytes;
+  private long evictions;
+  private long faults;
+  private long bytesWritten;
+  private long bytesRead;
+
+  /**
+   * Initializes a new bounded image processor, having no images to start.
+   * @param budget the number of bytes the images in memory may take up together
+   * @throws IllegalArgumentException if the budget is negative
+   */
+  public BoundedImageProcessor(long budget) throws IllegalArgumentException {
+    if (budget < 0) {
+      throw new IllegalArgumentException("Memory budget cannot be negative.");
+    }
+    this.budget = budget;
+    this.resident = new LinkedHashMap<>(16, 0.75f, true);
+    this.spilled = new HashMap<>();
+    this.residentBytes = 0;
+  }
+
+  @Override
+  public synchronized ImageModel getImageState(String name) throws IllegalArgumentException {
+    ImageModel img = this.resident.get(name);
+    if (img == null) {
+      Path file = Util.requireNonNullArg(this.spilled.get(name));
+      img = this.readScratch(file);
+      this.faults++;
+      this.admit(name, img);
+    }
+    return img;
+  }
+
+  @Override
+  public synchronized void loadImage(String name, ImageModel img)
+          throws IllegalArgumentException {
+    this.store(name, Util.requireNonNullArg(img));
+  }
+
+  @Override
+  public synchronized void processImage(String name, String saveName, ImageProcessingCommand cmd)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(cmd);
+    ImageModel imgToProcess = this.getImageState(name);
+    this.store(saveName, cmd.process(imgToProcess));
+  }
+
+  @Override
+  public synchronized void removeImage(String name) throws IllegalArgumentException {
+    ImageModel img = this.resident.remove(name);
+    Path file = this.spilled.remove(name);
+    if (img == null && file == null) {
+      throw new IllegalArgumentException("No image to remove with the given name.");
+    }
+    if (img != null) {
+      this.residentBytes -= bytes(img);
+    }
+    if (file != null) {
+      deleteScratch(file);
+    }
+  }
+
+  /**
+   * Get the number of bytes the images currently in memory are estimated to take up.
+   * @return the estimated bytes in memory
+   */
+  public synchronized long getResidentBytes() {
+    return this.residentBytes;
+  }
+
+  /**
+   * Get the number of times an image has been evicted from memory.
+   * @return the number of evictions
+   */
+  public synchronized long getEvictions() {
+    return this.evictions;
+  }
+
+  /**
+   * Get the number of times an evicted image has been read back in from its scratch file.
+   * @return the number of faults
+   */
+  public synchronized long getFaults() {
+    return this.faults;
+  }
+
+  /**
+   * Get the number of bytes written to scratch files.
+   * @return the bytes written
+   */
+  public synchronized long getBytesWritten() {
+    return this.bytesWritten;
+  }
+
+  /**
+   * Get the number of bytes read back from scratch files.
+   * @return the bytes read
+   */
+  public synchronized long getBytesRead() {
+    return this.bytesRead;
+  }
+
+  // Store a new image under a name, dropping the scratch file of the image it replaces.
+  private void store(String name, ImageModel img) {
+    ImageModel previous = this.resident.get(name);
+    if (previous == img) {
+      return;
+    }
+    Path file = this.spilled.remove(name);
+    if (file != null) {
+      deleteScratch(file);
+    }
+    this.admit(name, img);
+  }
+
+  // Put an image in memory under a name, then evict least recently used images other than it
+  // until within budget.
+  private void admit(String name, ImageModel img) {
+    ImageModel previous = this.resident.put(name, img);
+    if (previous != null) {
+      this.residentBytes -= bytes(previous);
+    }
+    this.residentBytes += bytes(img);
+
+    Iterator<Map.Entry<String, ImageModel>> it = this.resident.entrySet().iterator();
+    while (this.residentBytes > this.budget && it.hasNext()) {
+      Map.Entry<String, ImageModel> entry = it.next();
+      if (!entry.getKey().equals(name)) {
+        if (!this.spilled.containsKey(entry.getKey())) {
+          this.spilled.put(entry.getKey(), this.writeScratch(entry.getValue()));
+        }
+        this.residentBytes -= bytes(entry.getValue());
+        this.evictions++;
+        it.remove();
+      }
+    }
+  }
+
+  // Write an image to a new scratch file as its width and height, then the red, green and blue
+  // bytes of every pixel row by row.
+  private Path writeScratch(ImageModel img) {
+    try {
+      if (this.scratchDir == null) {
+        this.scratchDir = Files.createTempDirectory("image-scratch");
+        // One hook for the whole directory rather than a delete on exit for every file, which the
+        // JVM would remember until it exits even after the file is long gone.
+        Path dir = this.scratchDir;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteScratchDir(dir)));
+      }
+      Path file = Files.createTempFile(this.scratchDir, "image", ".rgb");
+      int width = img.getWidth();
+      int height = img.getHeight();
+      byte[] row = new byte[width * 3];
+      try (DataOutputStream out = new DataOutputStream(
+              new BufferedOutputStream(Files.newOutputStream(file)))) {
+        out.writeInt(width);
+        out.writeInt(height);
+        for (int r = 0; r < height; r++) {
+          for (int c = 0; c < width; c++) {
+            Color color = img.colorAt(r, c);
+            row[3 * c] = (byte) color.red();
+            row[3 * c + 1] = (byte) color.green();
+            row[3 * c + 2] = (byte) color.blue();
+          }
+          out.write(row);
+        }
+      }
+      this.bytesWritten += 8 + 3L * width * height;
+      return file;
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not write image to scratch file.");
+    }
+  }
+
+  private ImageModel readScratch(Path file) {
+    try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(file)))) {
+      int width = in.readInt();
+      int height = in.readInt();
+      byte[] row = new byte[width * 3];
+      Color[][] pixels = new Color[height][width];
+      for (int r = 0; r < height; r++) {
+        in.readFully(row);
+        for (int c = 0; c < width; c++) {
+          pixels[r][c] = new Color(row[3 * c] & 0xFF, row[3 * c + 1] & 0xFF,
+                  row[3 * c + 2] & 0xFF);
+        }
+      }
+      this.bytesRead += 8 + 3L * width * height;
+      return new SimpleImage(pixels);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not read image back from scratch file.");
+    }
+  }
+
+  private static void deleteScratch(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      // Left for the scratch directory to be cleaned up on exit.
+    }
+  }
+
+  // Delete whatever scratch files are left in a scratch directory, then the directory itself.
+  private static void deleteScratchDir(Path dir) {
+    try (Stream<Path> files = Files.list(dir)) {
+      files.forEach(BoundedImageProcessor::deleteScratch);
+      Files.deleteIfExists(dir);
+    } catch (IOException e) {
+      // Nothing more can be done while the program is exiting.
+    }
+  }
+
+  private static long bytes(ImageModel img) {
+    return (long) img.getWidth() * img.getHeight() * BYTES_PER_PIXEL;
+  }
+}
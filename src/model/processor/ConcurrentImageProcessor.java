@@ -0,0 +1,110 @@
+package model.processor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import controller.commands.ImageProcessingCommand;
+import model.image.ImageModel;
+import util.Util;
+
+/**
+ * Represents an image processor that can be shared by several clients at once, such as a GUI
+ * session and a background script, or several script workers.
+ *
+ * <p>Images are kept in a concurrent map, so looking an image up never takes a lock and never
+ * waits for a command in progress: readers see the last image stored under a name until a new
+ * one replaces it. Every name holding an image has its own fair lock, found in a second concurrent
+ * map and held while a command saving to that name runs, so two commands saving to the same name
+ * store their results in the order they asked for the lock. Commands saving to different names
+ * never share a lock and run fully in parallel. A lock is dropped along with its name, so removing
+ * images leaves no locks behind.
+ */
+public class ConcurrentImageProcessor implements ImageProcessor {
+
+  private final ConcurrentMap<String, ImageModel> images;
+  private final ConcurrentMap<String, ReentrantLock> writeLocks;
+
+  /**
+   * Initializes a new concurrent image processor, having no images to start.
+   */
+  public ConcurrentImageProcessor() {
+    this.images = new ConcurrentHashMap<>();
+    this.writeLocks = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public ImageModel getImageState(String name) throws IllegalArgumentException {
+    return Util.requireNonNullArg(this.images.get(Util.requireNonNullArg(name)));
+  }
+
+  @Override
+  public void loadImage(String name, ImageModel img) throws IllegalArgumentException {
+    Util.requireNonNullArg(name);
+    Util.requireNonNullArg(img);
+    ReentrantLock lock = this.lock(name);
+    try {
+      this.images.put(name, img);
+    } finally {
+      this.unlock(name, lock);
+    }
+  }
+
+  @Override
+  public void processImage(String name, String saveName, ImageProcessingCommand cmd)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(saveName);
+    Util.requireNonNullArg(cmd);
+    ReentrantLock lock = this.lock(saveName);
+    try {
+      // The source is read under the lock so that a command saving over its own source sees the
+      // result of the command before it.
+      ImageModel imgToProcess = this.getImageState(name);
+      this.images.put(saveName, cmd.process(imgToProcess));
+    } finally {
+      this.unlock(saveName, lock);
+    }
+  }
+
+  @Override
+  public void removeImage(String name) throws IllegalArgumentException {
+    Util.requireNonNullArg(name);
+    ReentrantLock lock = this.lock(name);
+    try {
+      Util.requireNonNullArg(this.images.remove(name));
+    } finally {
+      this.unlock(name, lock);
+    }
+  }
+
+  // Take the lock of a name. A lock found in the map may be dropped by whoever holds it before it
+  // is taken, so it is only kept once taken if it is still the name's lock, and looked up again
+  // otherwise.
+  private ReentrantLock lock(String name) {
+    while (true) {
+      ReentrantLock lock = this.writeLocks.computeIfAbsent(name,
+              (String n) -> new ReentrantLock(true));
+      lock.lock();
+      if (this.writeLocks.get(name) == lock) {
+        return lock;
+      }
+      lock.unlock();
+    }
+  }
+
+  // Release the lock of a name, first dropping it from the map if the name holds no image.
+  private void unlock(String name, ReentrantLock lock) {
+    if (!this.images.containsKey(name)) {
+      this.writeLocks.remove(name, lock);
+    }
+    lock.unlock();
+  }
+
+  /**
+   * Get the number of names that currently have a lock.
+   * @return the number of locks held by this processor
+   */
+  public int getLockCount() {
+    return this.writeLocks.size();
+  }
+}
@@ -1,7 +1,10 @@
 package model.processor;
 
+import java.util.concurrent.CompletableFuture;
+
 import controller.commands.ImageProcessingCommand;
 import model.image.ImageModel;
+import util.Util;
 
 /**
  * Represents an image processor capable of managing multiple images in memory at once.
@@ -38,4 +41,58 @@ public interface ImageProcessor {
   void processImage(String name, String saveName, ImageProcessingCommand cmd)
           throws IllegalArgumentException;
 
+  /**
+   * Remove the image with the given name from the memory of this processor, so that the name no
+   * longer corresponds to an image and the memory the image takes up can be reclaimed. Scripts
+   * freeing their dead images need this, and keep every image on processors that do not support
+   * it. By default images cannot be removed.
+   * @param name the name of the image to remove
+   * @throws IllegalArgumentException if the name does not correspond to an image
+   * @throws UnsupportedOperationException if this processor cannot remove images
+   */
+  default void removeImage(String name)
+          throws IllegalArgumentException, UnsupportedOperationException {
+    throw new UnsupportedOperationException("This processor cannot remove images.");
+  }
+
+  /**
+   * Get a future of the image with the given name, which completes once the image is available.
+   * By default the image is looked up straight away, and the future is already complete.
+   * @param name the internal name of the image to get
+   * @return the future image, failing with an IllegalArgumentException if the name does not
+   *         correspond to an image, or with whatever else looking it up threw
+   */
+  default CompletableFuture<ImageModel> getImageFuture(String name) {
+    try {
+      return CompletableFuture.completedFuture(this.getImageState(name));
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /**
+   * Process a stored image with an image processing command without waiting for the command to
+   * finish, storing the result with a new name. The result is a future that can be chained with
+   * further work, or cancelled before it completes. Processing an image still being computed waits
+   * for it before running the command. By default the command runs straight away, and the future
+   * is already complete.
+   * @param name the name of the image to process
+   * @param saveName the name to associate with the processed image
+   * @param cmd the command to run to process the image
+   * @return the future processed image, failing with an IllegalArgumentException if the name does
+   *         not correspond to an image, or with whatever the command threw if it fails
+   * @throws IllegalArgumentException if the command is null
+   */
+  default CompletableFuture<ImageModel> processImageAsync(String name, String saveName,
+                                                          ImageProcessingCommand cmd)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(cmd);
+    try {
+      this.processImage(name, saveName, cmd);
+    } catch (RuntimeException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return this.getImageFuture(saveName);
+  }
+
 }
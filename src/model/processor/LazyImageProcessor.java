@@ -0,0 +1,141 @@
+package model.processor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import controller.commands.ImageProcessingCommand;
+import controller.commands.Pipeline;
+import model.image.ImageModel;
+import util.Util;
+
+/**
+ * Represents an image processor that does not run commands until their results are needed.
+ * Processing an image only records that the new image is the command applied to the current
+ * version of the old one, building a graph of pending images. Asking for an image, to save it,
+ * display it or use it as a mask, computes it together with every pending image it depends on,
+ * and images that are never asked for are never computed.
+ *
+ * <p>A chain of pending images is computed as a single {@link Pipeline}, so point operations and
+ * filters along it are fused tile by tile instead of each producing a whole intermediate image.
+ * Chains are only split at images that could still be asked for themselves, because a name still
+ * refers to them, or that more than one pending image depends on; those are computed and kept on
+ * the way. Errors from a command surface when its result is first needed, not when it is recorded.
+ */
+public class LazyImageProcessor implements ImageProcessor {
+
+  private final Map<String, Node> names;
+
+  /**
+   * Initializes a new lazy image processor, having no images to start.
+   */
+  public LazyImageProcessor() {
+    this.names = new HashMap<>();
+  }
+
+  @Override
+  public ImageModel getImageState(String name) throws IllegalArgumentException {
+    Node node = Util.requireNonNullArg(this.names.get(name));
+    materialize(node);
+    return node.value;
+  }
+
+  @Override
+  public void loadImage(String name, ImageModel img) throws IllegalArgumentException {
+    Util.requireNonNullArg(img);
+    Node node = new Node(null, null);
+    node.value = img;
+    this.bind(name, node);
+  }
+
+  @Override
+  public void processImage(String name, String saveName, ImageProcessingCommand cmd)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(cmd);
+    Node input = Util.requireNonNullArg(this.names.get(name));
+    input.consumers++;
+    this.bind(saveName, new Node(input, cmd));
+  }
+
+  /**
+   * Remove the image with the given name. If it is still pending and no other pending image depends
+   * on it, it is never computed.
+   * @param name the name of the image to remove
+   * @throws IllegalArgumentException if the name does not correspond to an image
+   */
+  @Override
+  public void removeImage(String name) throws IllegalArgumentException {
+    Util.requireNonNullArg(this.names.remove(name)).named--;
+  }
+
+  /**
+   * Get the number of named images that have not been computed yet.
+   * @return the number of pending named images
+   */
+  public int getPendingImages() {
+    int pending = 0;
+    for (Node node : this.names.values()) {
+      if (node.value == null) {
+        pending++;
+      }
+    }
+    return pending;
+  }
+
+  private void bind(String name, Node node) {
+    node.named++;
+    Node previous = this.names.put(name, node);
+    if (previous != null) {
+      previous.named--;
+    }
+  }
+
+  // Compute a node from its nearest computed ancestor, running each stretch of the path between
+  // nodes that have to be kept as one pipeline.
+  private static void materialize(Node target) {
+    List<Node> path = new ArrayList<>();
+    Node node = target;
+    while (node.value == null) {
+      path.add(node);
+      node = node.input;
+    }
+
+    ImageModel img = node.value;
+    List<ImageProcessingCommand> stretch = new ArrayList<>();
+    for (int i = path.size() - 1; i >= 0; i--) {
+      Node step = path.get(i);
+      stretch.add(step.cmd);
+      if (step == target || step.named > 0 || step.consumers > 1) {
+        img = new Pipeline(stretch).process(img);
+        stretch.clear();
+        step.value = img;
+      }
+    }
+    // Every node on the path is now computed or folded into one that is, so none of them depends
+    // on its input any more.
+    for (Node step : path) {
+      step.input.consumers--;
+      step.input = null;
+      step.cmd = null;
+    }
+  }
+
+  /**
+   * An image in the graph: either computed, with its value, or pending, with the image it is
+   * computed from and the command to compute it with.
+   */
+  private static class Node {
+    private ImageModel value;
+    private Node input;
+    private ImageProcessingCommand cmd;
+    // How many names refer to this image, and how many pending images are computed from it.
+    private int named;
+    private int consumers;
+
+    private Node(Node input, ImageProcessingCommand cmd) {
+      this.input = input;
+      this.cmd = cmd;
+    }
+  }
+}
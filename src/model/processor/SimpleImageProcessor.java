@@ -1,10 +1,18 @@
 package model.processor;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import controller.commands.Downscale;
 import controller.commands.ImageProcessingCommand;
 import model.image.ImageModel;
+import util.ImageUtil;
+import util.PixelUtil;
+import util.QoiCodec;
 import util.Util;
 
 /**
@@ -12,35 +20,462 @@ import util.Util;
  * and model to load simple images and process commands, storing all the edited models.
  * This enables an image to not know its name or interaction with the greater program, and instead
  * have its raw functionality support pixels only.
+ *
+ * <p>Downscales are run on a cached pyramid of power-of-two area reductions of the stored image,
+ * starting from the smallest level that is still at least as large as the target, so repeatedly
+ * downscaling the same image only reads the full resolution image once. A level is only kept while
+ * halving leaves no pixel partly covered, and is built from exact channel sums, so an area
+ * downscale to exactly the size of a level is the same image the downscale computes on its own.
+ * Any other downscale from a level is close to, but not always the same as, the downscale of the
+ * stored image, so its cached result is kept apart from the result of the command itself. The
+ * pyramids are bounded by a total pixel budget, evicting the least recently used pyramid first, a
+ * pyramid over the budget on its own is never built, and a pyramid is dropped as soon as the image
+ * it was built from is replaced.
+ *
+ * <p>Images that have not been used for a while can be compressed in memory with a lossless codec,
+ * and decompressed the next time they are used, so intermediates that are kept around only to be
+ * looked at much later take a fraction of the memory. This is only done when given a time after
+ * which unused images count as cold, as compressing and decompressing cost time on the thread
+ * storing or reading an image. Cold images are then looked for when an image is stored, at most
+ * twice in each such time, so an image is compressed within one and a half times of it.
+ *
+ * <p>Results of commands that have a {@link ImageProcessingCommand#getKey key} are cached by the
+ * key together with a 64 bit hash of the content of the image they were run on, so running the
+ * same command on the same pixels again, under any name, reuses the earlier result. The hash of
+ * an image is computed once per stored image, the inputs themselves are not kept, and the cached
+ * results are bounded by a total pixel budget, evicting the least recently used result first.
+ * A result is dropped from the cache when an image stored from it is compressed, so that the cache
+ * never keeps a cold image in memory uncompressed.
  */
 public class SimpleImageProcessor implements ImageProcessor {
 
+  // The default number of pixels that all cached pyramid levels may take up together.
+  public static final long DEFAULT_PYRAMID_BUDGET = 1L << 24;
+  // The time before compressing unused images that means they are never compressed.
+  public static final long NEVER_COMPRESS = Long.MAX_VALUE;
+  // The default number of pixels that all cached command results may take up together.
+  public static final long DEFAULT_RESULT_BUDGET = 1L << 24;
+  // The deepest pyramid level, where a level's channel sums still fit in an int and the
+  // downscale's fixed-point weights for the level are exact.
+  private static final int MAX_PYRAMID_LEVEL = 11;
+
   private final Map<String, ImageModel> images;
+  private final Map<String, byte[]> compressed;
+  private final Map<String, Long> lastUsed;
+  private final long coldMillis;
+  // The earliest time cold images are looked for again.
+  private long nextSweep;
+  private long compressedBytes;
+  private final LinkedHashMap<String, List<ImageModel>> pyramids;
+  private final long pyramidBudget;
+  private long pyramidPixels;
+  // Hashes of the content of stored images, computed the first time a command with a key uses them.
+  private final Map<String, Long> hashes;
+  private final LinkedHashMap<String, ImageModel> results;
+  private final long resultBudget;
+  private long resultPixels;
+  private long resultHits;
+  private long resultMisses;
 
   /**
    * Initializes a new simple image processor, having no images to start.
    */
   public SimpleImageProcessor() {
+    this(DEFAULT_PYRAMID_BUDGET);
+  }
+
+  /**
+   * Initializes a new simple image processor, having no images to start, with a bound on the
+   * memory used to cache downscaling pyramids. Unused images are never compressed.
+   * @param pyramidBudget the number of pixels that all cached pyramid levels may take up together
+   * @throws IllegalArgumentException if the budget is negative
+   */
+  public SimpleImageProcessor(long pyramidBudget) throws IllegalArgumentException {
+    this(pyramidBudget, NEVER_COMPRESS);
+  }
+
+  /**
+   * Initializes a new simple image processor, having no images to start, with a bound on the
+   * memory used to cache downscaling pyramids and the time after which unused images are
+   * compressed.
+   * @param pyramidBudget the number of pixels that all cached pyramid levels may take up together
+   * @param coldMillis the number of milliseconds an image must go unused before it is compressed,
+   *                   or {@link #NEVER_COMPRESS} to never compress images
+   * @throws IllegalArgumentException if the budget or the time is negative
+   */
+  public SimpleImageProcessor(long pyramidBudget, long coldMillis)
+          throws IllegalArgumentException {
+    this(pyramidBudget, coldMillis, DEFAULT_RESULT_BUDGET);
+  }
+
+  /**
+   * Initializes a new simple image processor, having no images to start, with bounds on the
+   * memory used to cache downscaling pyramids and command results, and the time after which unused
+   * images are compressed.
+   * @param pyramidBudget the number of pixels that all cached pyramid levels may take up together
+   * @param coldMillis the number of milliseconds an image must go unused before it is compressed,
+   *                   or {@link #NEVER_COMPRESS} to never compress images
+   * @param resultBudget the number of pixels that all cached command results may take up together,
+   *                     where zero turns off caching results
+   * @throws IllegalArgumentException if either budget or the time is negative
+   */
+  public SimpleImageProcessor(long pyramidBudget, long coldMillis, long resultBudget)
+          throws IllegalArgumentException {
+    if (resultBudget < 0) {
+      throw new IllegalArgumentException("Result cache budget cannot be negative.");
+    }
+    if (pyramidBudget < 0) {
+      throw new IllegalArgumentException("Pyramid budget cannot be negative.");
+    }
+    if (coldMillis < 0) {
+      throw new IllegalArgumentException("Time before compressing images cannot be negative.");
+    }
     this.images = new HashMap<>();
+    this.compressed = new HashMap<>();
+    this.lastUsed = new HashMap<>();
+    this.coldMillis = coldMillis;
+    this.nextSweep = Long.MIN_VALUE;
+    this.compressedBytes = 0;
+    // Access ordered, so iteration starts at the least recently used pyramid.
+    this.pyramids = new LinkedHashMap<>(16, 0.75f, true);
+    this.pyramidBudget = pyramidBudget;
+    this.pyramidPixels = 0;
+    this.hashes = new HashMap<>();
+    this.results = new LinkedHashMap<>(16, 0.75f, true);
+    this.resultBudget = resultBudget;
+    this.resultPixels = 0;
   }
 
   @Override
   public ImageModel getImageState(String name) throws IllegalArgumentException {
-    return Util.requireNonNullArg(this.images.get(name));
+    ImageModel img = this.images.get(name);
+    if (img == null) {
+      byte[] data = Util.requireNonNullArg(this.compressed.remove(name));
+      this.compressedBytes -= data.length;
+      img = QoiCodec.decode(data);
+      this.images.put(name, img);
+    }
+    this.lastUsed.put(name, now());
+    return img;
   }
 
   @Override
   public void loadImage(String name, ImageModel img) throws IllegalArgumentException {
-    images.put(name, Util.requireNonNullArg(img));
+    this.store(name, Util.requireNonNullArg(img));
   }
 
   @Override
   public void processImage(String name, String saveName, ImageProcessingCommand cmd)
           throws IllegalArgumentException {
     Util.requireNonNullArg(cmd);
-    ImageModel imgToProcess = Util.requireNonNullArg(this.images.get(name));
+    ImageModel imgToProcess = this.getImageState(name);
+    int level = 0;
+    String levelKey = "";
+    if (cmd instanceof Downscale) {
+      Downscale downscale = (Downscale) cmd;
+      level = this.levelFor(imgToProcess, downscale.getWidth(), downscale.getHeight());
+      if (level > 0 && !(downscale.getMode() == Downscale.Mode.AREA
+              && imgToProcess.getWidth() >> level == downscale.getWidth()
+              && imgToProcess.getHeight() >> level == downscale.getHeight())) {
+        // Not the same image as the downscale of the stored image, so not cached as that.
+        levelKey = " from level " + level;
+      }
+    }
+    String resultKey = null;
+    if (this.resultBudget > 0 && cmd.getKey() != null) {
+      resultKey = this.contentHash(name, imgToProcess) + " " + cmd.getKey() + levelKey;
+      ImageModel cached = this.results.get(resultKey);
+      if (cached != null) {
+        this.resultHits++;
+        this.store(saveName, cached);
+        return;
+      }
+      this.resultMisses++;
+    }
+    if (level > 0) {
+      imgToProcess = this.pyramidLevel(name, imgToProcess, level);
+    }
     ImageModel processedImg = cmd.process(imgToProcess);
-    this.images.put(saveName, processedImg);
+    if (resultKey != null) {
+      this.cacheResult(resultKey, processedImg);
+    }
+    this.store(saveName, processedImg);
+  }
+
+  @Override
+  public void removeImage(String name) throws IllegalArgumentException {
+    ImageModel img = this.images.remove(name);
+    byte[] data = this.compressed.remove(name);
+    if (img == null && data == null) {
+      throw new IllegalArgumentException("No image to remove with the given name.");
+    }
+    if (data != null) {
+      this.compressedBytes -= data.length;
+    }
+    this.lastUsed.remove(name);
+    this.hashes.remove(name);
+    this.evictPyramid(name);
+  }
+
+  /**
+   * Get the number of pixels currently held by cached downscaling pyramids.
+   * @return the number of cached pyramid pixels
+   */
+  public long getPyramidPixels() {
+    return this.pyramidPixels;
+  }
+
+  /**
+   * Get the number of pixels currently held by cached command results.
+   * @return the number of cached result pixels
+   */
+  public long getResultPixels() {
+    return this.resultPixels;
+  }
+
+  /**
+   * Get the number of commands whose result was taken from the cache instead of being computed.
+   * @return the number of cache hits
+   */
+  public long getResultHits() {
+    return this.resultHits;
+  }
+
+  /**
+   * Get the number of commands with a key whose result was not cached, and had to be computed.
+   * @return the number of cache misses
+   */
+  public long getResultMisses() {
+    return this.resultMisses;
+  }
+
+  /**
+   * Get the number of images currently held compressed.
+   * @return the number of compressed images
+   */
+  public int getCompressedImages() {
+    return this.compressed.size();
+  }
+
+  /**
+   * Get the number of bytes taken by the images currently held compressed.
+   * @return the number of compressed bytes
+   */
+  public long getCompressedBytes() {
+    return this.compressedBytes;
+  }
+
+  // Store an image under a name, dropping the pyramid of the image it replaces, then compress
+  // the other images that have gone unused for long enough.
+  private void store(String name, ImageModel img) {
+    ImageModel previous = this.images.put(name, img);
+    byte[] data = this.compressed.remove(name);
+    if (data != null) {
+      this.compressedBytes -= data.length;
+    }
+    if (previous != img) {
+      this.evictPyramid(name);
+      this.hashes.remove(name);
+    }
+    this.lastUsed.put(name, now());
+    this.compressColdImages(name);
+  }
+
+  private void compressColdImages(String keep) {
+    if (this.coldMillis == NEVER_COMPRESS) {
+      return;
+    }
+    long now = now();
+    if (now < this.nextSweep) {
+      return;
+    }
+    this.nextSweep = now + this.coldMillis / 2;
+    Iterator<Map.Entry<String, ImageModel>> it = this.images.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, ImageModel> entry = it.next();
+      if (!entry.getKey().equals(keep)
+              && now - this.lastUsed.get(entry.getKey()) >= this.coldMillis) {
+        byte[] data = QoiCodec.encode(entry.getValue());
+        this.compressed.put(entry.getKey(), data);
+        this.compressedBytes += data.length;
+        it.remove();
+        this.evictResults(entry.getValue());
+      }
+    }
+  }
+
+  // Drop the cached results that are the given image, which would otherwise keep it in memory
+  // uncompressed after the name holding it is compressed.
+  private void evictResults(ImageModel img) {
+    Iterator<ImageModel> it = this.results.values().iterator();
+    while (it.hasNext()) {
+      ImageModel result = it.next();
+      if (result == img) {
+        this.resultPixels -= (long) result.getWidth() * result.getHeight();
+        it.remove();
+      }
+    }
+  }
+
+  private long contentHash(String name, ImageModel img) {
+    Long hash = this.hashes.get(name);
+    if (hash == null) {
+      hash = ImageUtil.contentHash(img);
+      this.hashes.put(name, hash);
+    }
+    return hash;
+  }
+
+  // Cache a command result, then evict least recently used results other than it until within
+  // budget. A result over the budget on its own is not cached at all.
+  private void cacheResult(String resultKey, ImageModel img) {
+    long pixels = (long) img.getWidth() * img.getHeight();
+    if (pixels > this.resultBudget) {
+      return;
+    }
+    this.results.put(resultKey, img);
+    this.resultPixels += pixels;
+    Iterator<Map.Entry<String, ImageModel>> it = this.results.entrySet().iterator();
+    while (this.resultPixels > this.resultBudget && it.hasNext()) {
+      Map.Entry<String, ImageModel> entry = it.next();
+      if (!entry.getKey().equals(resultKey)) {
+        this.resultPixels -= (long) entry.getValue().getWidth() * entry.getValue().getHeight();
+        it.remove();
+      }
+    }
+  }
+
+  private static long now() {
+    return System.nanoTime() / 1_000_000;
+  }
+
+  // Get the smallest pyramid level of an image that is at least the target size in both
+  // dimensions, counting the first halving as level one, or zero if there is no such level or the
+  // pyramid of the image would not fit in the budget.
+  private int levelFor(ImageModel img, int width, int height) {
+    int level = levelOf(img.getWidth(), img.getHeight(), width, height);
+    if (level > 0 && pyramidSize(img.getWidth(), img.getHeight()) > this.pyramidBudget) {
+      return 0;
+    }
+    return level;
+  }
+
+  // Get the given pyramid level of the named image, building and caching the pyramid if it does
+  // not exist yet.
+  private ImageModel pyramidLevel(String name, ImageModel img, int level) {
+    List<ImageModel> levels = this.pyramids.get(name);
+    if (levels == null) {
+      levels = buildPyramid(img);
+      this.pyramids.put(name, levels);
+      this.pyramidPixels += countPixels(levels);
+      this.trimPyramids(name);
+    }
+    return levels.get(level - 1);
+  }
+
+  // Evict least recently used pyramids, other than the one just added, until within budget.
+  private void trimPyramids(String keep) {
+    Iterator<Map.Entry<String, List<ImageModel>>> it = this.pyramids.entrySet().iterator();
+    while (this.pyramidPixels > this.pyramidBudget && it.hasNext()) {
+      Map.Entry<String, List<ImageModel>> entry = it.next();
+      if (!entry.getKey().equals(keep)) {
+        this.pyramidPixels -= countPixels(entry.getValue());
+        it.remove();
+      }
+    }
+  }
+
+  private void evictPyramid(String name) {
+    List<ImageModel> levels = this.pyramids.remove(name);
+    if (levels != null) {
+      this.pyramidPixels -= countPixels(levels);
+    }
+  }
+
+  // Get the smallest pyramid level of an image of the given size that is at least the target size
+  // in both dimensions, counting the first halving as level one, or zero if there is no such level.
+  private static int levelOf(int imgWidth, int imgHeight, int width, int height) {
+    int found = 0;
+    for (int level = 1; level <= MAX_PYRAMID_LEVEL && imgWidth % 2 == 0 && imgHeight % 2 == 0;
+         level++) {
+      imgWidth /= 2;
+      imgHeight /= 2;
+      if (imgWidth < width || imgHeight < height) {
+        break;
+      }
+      found = level;
+    }
+    return found;
+  }
+
+  // Count the pixels the pyramid of an image of the given size takes up, without building it.
+  private static long pyramidSize(int width, int height) {
+    long pixels = 0;
+    for (int level = 1; level <= MAX_PYRAMID_LEVEL && width % 2 == 0 && height % 2 == 0;
+         level++) {
+      width /= 2;
+      height /= 2;
+      pixels += (long) width * height;
+    }
+    return pixels;
+  }
+
+  // Build successive 2:1 area reductions of an image while both dimensions stay even, so that
+  // every level averages whole blocks of the image. The channel sums of each block are carried
+  // from level to level, and only rounded to form the level, so a level is exactly what an area
+  // downscale of the image itself to that size gives. The base image is not part of the levels.
+  private static List<ImageModel> buildPyramid(ImageModel img) {
+    List<ImageModel> levels = new ArrayList<>();
+    int[] packed = PixelUtil.toPacked(img);
+    int width = img.getWidth();
+    int height = img.getHeight();
+    // The channel sums of the previous level, three per pixel, or null at the image itself.
+    int[] sums = null;
+    int block = 1;
+    for (int level = 1; level <= MAX_PYRAMID_LEVEL && width % 2 == 0 && height % 2 == 0;
+         level++) {
+      int halfWidth = width / 2;
+      int halfHeight = height / 2;
+      int[] next = new int[halfWidth * halfHeight * 3];
+      for (int r = 0; r < halfHeight; r++) {
+        for (int c = 0; c < halfWidth; c++) {
+          int topLeft = 2 * r * width + 2 * c;
+          int bottomLeft = topLeft + width;
+          for (int channel = 0; channel < 3; channel++) {
+            next[(r * halfWidth + c) * 3 + channel] = sums == null
+                    ? channelOf(packed[topLeft], channel) + channelOf(packed[topLeft + 1], channel)
+                    + channelOf(packed[bottomLeft], channel)
+                    + channelOf(packed[bottomLeft + 1], channel)
+                    : sums[topLeft * 3 + channel] + sums[(topLeft + 1) * 3 + channel]
+                    + sums[bottomLeft * 3 + channel] + sums[(bottomLeft + 1) * 3 + channel];
+          }
+        }
+      }
+      block *= 4;
+      int[] pixels = new int[halfWidth * halfHeight];
+      for (int i = 0; i < pixels.length; i++) {
+        // Rounds half up, as the downscale itself does.
+        pixels[i] = PixelUtil.pack((next[3 * i] + block / 2) / block,
+                (next[3 * i + 1] + block / 2) / block, (next[3 * i + 2] + block / 2) / block);
+      }
+      levels.add(PixelUtil.fromPacked(img, pixels, halfWidth, halfHeight));
+      sums = next;
+      width = halfWidth;
+      height = halfHeight;
+    }
+    return levels;
+  }
+
+  private static int channelOf(int packed, int channel) {
+    return (packed >> (16 - 8 * channel)) & 255;
+  }
+
+  private static long countPixels(List<ImageModel> levels) {
+    long pixels = 0;
+    for (ImageModel level : levels) {
+      pixels += (long) level.getWidth() * level.getHeight();
+    }
+    return pixels;
   }
 
 }
@@ -9,6 +9,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 import javax.imageio.ImageIO;
 
@@ -242,26 +243,95 @@ public class ImageUtil {
 
   /**
    * Calculates a data representation for a histogram using a hashmap where the key is the
-   * respective 0-255 value and the value is the frequency.
+   * respective 0-255 value and the value is the frequency. Values that never occur are left out.
    * @param img the image to calculate a histogram data representation for
    * @param mapping converts a pixel Color into a value for the key
    * @return the data representation histogram
-   * @throws IllegalArgumentException if the supplied image or mapping function is null
+   * @throws IllegalArgumentException if the supplied image or mapping function is null, or the
+   *                                  mapping gives a value outside of 0-255
    */
   public static Map<Integer, Integer> imageToHistogram(
           ImageModel img, Function<Color, Integer> mapping) throws IllegalArgumentException {
-    Util.requireNonNullArg(img);
     Util.requireNonNullArg(mapping);
+    int[] counts = ImageUtil.histogram(img, mapping::apply);
 
     Map<Integer, Integer> histogram = new HashMap<>();
-    for (int row = 0; row < img.getHeight(); row++) {
-      for (int col = 0; col < img.getWidth(); col++) {
-        int result = mapping.apply(img.colorAt(row, col));
-        histogram.put(result, histogram.getOrDefault(result, 0) + 1);
+    for (int value = 0; value < counts.length; value++) {
+      if (counts[value] != 0) {
+        histogram.put(value, counts[value]);
       }
     }
     return histogram;
   }
 
+  /**
+   * Counts how often each 0-255 value occurs in an image.
+   * @param img the image to count the values of
+   * @param mapping converts a pixel Color into the value to count
+   * @return the number of pixels with each value, indexed by the value
+   * @throws IllegalArgumentException if the supplied image or mapping function is null, or the
+   *                                  mapping gives a value outside of 0-255
+   */
+  public static int[] histogram(ImageModel img, ToIntFunction<Color> mapping)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(img);
+    return ImageUtil.histogram(img, 0, 0, img.getHeight(), img.getWidth(), mapping);
+  }
+
+  /**
+   * Counts how often each 0-255 value occurs in a rectangle of an image.
+   * @param img the image to count the values of
+   * @param row the first row of the rectangle
+   * @param col the first column of the rectangle
+   * @param height the number of rows in the rectangle
+   * @param width the number of columns in the rectangle
+   * @param mapping converts a pixel Color into the value to count
+   * @return the number of pixels with each value, indexed by the value
+   * @throws IllegalArgumentException if the supplied image or mapping function is null, the
+   *                                  rectangle is not in the image, or the mapping gives a value
+   *                                  outside of 0-255
+   */
+  public static int[] histogram(ImageModel img, int row, int col, int height, int width,
+                                ToIntFunction<Color> mapping) throws IllegalArgumentException {
+    Util.requireNonNullArg(img);
+    Util.requireNonNullArg(mapping);
+    if (row < 0 || col < 0 || height < 0 || width < 0
+            || row + height > img.getHeight() || col + width > img.getWidth()) {
+      throw new IllegalArgumentException("Cannot count values outside of image bounds.");
+    }
+
+    int[] counts = new int[Color.MAX_VALUE + 1];
+    for (int r = row; r < row + height; r++) {
+      for (int c = col; c < col + width; c++) {
+        int value = mapping.applyAsInt(img.colorAt(r, c));
+        if (value < 0 || value > Color.MAX_VALUE) {
+          throw new IllegalArgumentException("Histogram values must be within 0 and 255.");
+        }
+        counts[value]++;
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Computes a 64 bit hash of the dimensions and every pixel of an image. Unlike the hash code of
+   * an image, it depends on all of the pixels, and is well enough mixed that two different images
+   * of any realistic collection are not expected to share a hash.
+   * @param img the image to hash
+   * @return the hash of the image
+   * @throws IllegalArgumentException if the supplied image is null
+   */
+  public static long contentHash(ImageModel img) throws IllegalArgumentException {
+    Util.requireNonNullArg(img);
+    long hash = (long) img.getWidth() << 32 | img.getHeight();
+    for (int pixel : PixelUtil.toPacked(img)) {
+      hash = (Long.rotateLeft(hash, 23) ^ pixel) * 0x9E3779B97F4A7C15L;
+    }
+    // Final avalanche, so every bit of the hash depends on every pixel.
+    hash = (hash ^ hash >>> 33) * 0xFF51AFD7ED558CCDL;
+    hash = (hash ^ hash >>> 33) * 0xC4CEB9FE1A85EC53L;
+    return hash ^ hash >>> 33;
+  }
+
 }
 
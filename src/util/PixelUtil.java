@@ -0,0 +1,99 @@
+package util;
+
+import model.color.Color;
+import model.image.ImageModel;
+
+/**
+ * Contains utility methods to move images in and out of a packed pixel representation, where
+ * every pixel is a single int laid out as 0xRRGGBB and the pixels of an image are stored row by
+ * row in one flat array. Commands that do heavy per-pixel work use this representation so their
+ * inner loops only touch primitive arrays instead of going through colorAt for every channel.
+ */
+public class PixelUtil {
+
+  /**
+   * Pack the pixels of an image into a flat row-major array of 0xRRGGBB ints.
+   * @param img the image to pack
+   * @return the packed pixels, of length width * height
+   * @throws IllegalArgumentException if the supplied image is null
+   */
+  public static int[] toPacked(ImageModel img) throws IllegalArgumentException {
+    Util.requireNonNullArg(img);
+    int width = img.getWidth();
+    int height = img.getHeight();
+    int[] res = new int[width * height];
+    for (int r = 0; r < height; r++) {
+      int offset = r * width;
+      for (int c = 0; c < width; c++) {
+        res[offset + c] = pack(img.colorAt(r, c));
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Create a new image of the same type as the template from a flat row-major array of
+   * 0xRRGGBB ints.
+   * @param template the image whose createNew method is used to build the result
+   * @param pixels the packed pixels
+   * @param width the width of the packed image
+   * @param height the height of the packed image
+   * @return the new image
+   * @throws IllegalArgumentException if any argument is null or the dimensions do not match the
+   *                                  number of pixels supplied
+   */
+  public static ImageModel fromPacked(ImageModel template, int[] pixels, int width, int height)
+          throws IllegalArgumentException {
+    Util.requireNonNullArg(template);
+    Util.requireNonNullArg(pixels);
+    if (width < 1 || height < 1 || pixels.length != width * height) {
+      throw new IllegalArgumentException("Packed pixels do not match the supplied dimensions.");
+    }
+    Color[][] res = new Color[height][width];
+    for (int r = 0; r < height; r++) {
+      int offset = r * width;
+      for (int c = 0; c < width; c++) {
+        res[r][c] = unpack(pixels[offset + c]);
+      }
+    }
+    return template.createNew(res);
+  }
+
+  /**
+   * Pack a color into a single 0xRRGGBB int.
+   * @param color the color to pack
+   * @return the packed color
+   */
+  public static int pack(Color color) {
+    return color.red() << 16 | color.green() << 8 | color.blue();
+  }
+
+  /**
+   * Pack the given channel values into a single 0xRRGGBB int, clamping each to the range 0-255.
+   * @param r the red value
+   * @param g the green value
+   * @param b the blue value
+   * @return the packed color
+   */
+  public static int pack(int r, int g, int b) {
+    return clamp(r) << 16 | clamp(g) << 8 | clamp(b);
+  }
+
+  /**
+   * Unpack a single 0xRRGGBB int into a color.
+   * @param rgb the packed color
+   * @return the color
+   */
+  public static Color unpack(int rgb) {
+    return new Color((rgb >> 16) & 255, (rgb >> 8) & 255, rgb & 255);
+  }
+
+  /**
+   * Clamp a channel value to the range 0-255.
+   * @param x the value to clamp
+   * @return the clamped value
+   */
+  public static int clamp(int x) {
+    return x < 0 ? 0 : (x > Color.MAX_VALUE ? Color.MAX_VALUE : x);
+  }
+}
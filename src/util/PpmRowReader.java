@@ -0,0 +1,121 @@
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import model.color.Color;
+
+/**
+ * Reads an image in the PPM format one row at a time, so that images too large to fit in memory
+ * can still be processed. Accepts the same files as {@link ImageUtil#readPPM(InputStream)}.
+ */
+public class PpmRowReader {
+
+  private final InputStream input;
+  private final int width;
+  private final int height;
+  private final float maxVal;
+  private int rowsRead;
+
+  /**
+   * Create a reader for the given input, reading the PPM header immediately.
+   * @param input the input that should be in the PPM format
+   * @throws IllegalArgumentException if the input is null
+   * @throws IllegalStateException if the input is not a ppm file or cannot be read
+   */
+  public PpmRowReader(InputStream input) throws IllegalArgumentException, IllegalStateException {
+    this.input = new BufferedInputStream(Util.requireNonNullArg(input));
+    if (!this.nextToken().equals("P3")) {
+      throw new IllegalStateException("Given file is not a PPM file.");
+    }
+    this.width = this.nextInt();
+    this.height = this.nextInt();
+    this.maxVal = this.nextInt();
+    this.rowsRead = 0;
+  }
+
+  /**
+   * Get the width of the image being read.
+   * @return the width
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Get the height of the image being read.
+   * @return the height
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Check whether there are rows left to read.
+   * @return whether there is another row
+   */
+  public boolean hasNextRow() {
+    return this.rowsRead < this.height;
+  }
+
+  /**
+   * Read the next row of the image.
+   * @return the colors of the row, from left to right
+   * @throws IllegalStateException if all rows have been read or the file ends early
+   */
+  public Color[] nextRow() throws IllegalStateException {
+    if (!this.hasNextRow()) {
+      throw new IllegalStateException("No rows left to read.");
+    }
+    Color[] row = new Color[this.width];
+    for (int c = 0; c < this.width; c++) {
+      // Correct values in case the max val of the file is not 255, as readPPM does.
+      int r = Math.round(this.nextInt() * Color.MAX_VALUE / this.maxVal);
+      int g = Math.round(this.nextInt() * Color.MAX_VALUE / this.maxVal);
+      int b = Math.round(this.nextInt() * Color.MAX_VALUE / this.maxVal);
+      row[c] = new Color(r, g, b);
+    }
+    this.rowsRead++;
+    return row;
+  }
+
+  private int nextInt() throws IllegalStateException {
+    try {
+      return Integer.parseInt(this.nextToken());
+    } catch (NumberFormatException e) {
+      throw new IllegalStateException("Malformed PPM file.");
+    }
+  }
+
+  // Read the next whitespace separated token, skipping lines that start with '#'.
+  private String nextToken() throws IllegalStateException {
+    try {
+      StringBuilder token = new StringBuilder();
+      boolean lineStart = true;
+      int ch = this.input.read();
+      while (ch != -1) {
+        if (lineStart && ch == '#') {
+          while (ch != -1 && ch != '\n') {
+            ch = this.input.read();
+          }
+        } else if (Character.isWhitespace(ch)) {
+          if (token.length() > 0) {
+            return token.toString();
+          }
+          lineStart = ch == '\n';
+        } else {
+          token.append((char) ch);
+          lineStart = false;
+        }
+        ch = this.input.read();
+      }
+      if (token.length() == 0) {
+        throw new IllegalStateException("PPM file ended unexpectedly.");
+      }
+      return token.toString();
+    } catch (IOException e) {
+      throw new IllegalStateException("IO exception encountered when reading from PPM file.");
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import model.color.Color;
+
+/**
+ * Writes an image in the PPM format one row at a time, producing the same output as
+ * {@link ImageUtil#writePPM(model.image.ImageModel, OutputStream)} without needing the whole image
+ * in memory.
+ */
+public class PpmRowWriter {
+
+  private final OutputStream dest;
+  private final int width;
+  private final int height;
+  private final String sep;
+  private int rowsWritten;
+
+  /**
+   * Create a writer to the given destination, writing the PPM header immediately.
+   * @param dest the destination to write to
+   * @param width the width of the image
+   * @param height the height of the image
+   * @throws IllegalArgumentException if the destination is null or the dimensions not positive
+   * @throws IllegalStateException if writing to the destination fails
+   */
+  public PpmRowWriter(OutputStream dest, int width, int height)
+          throws IllegalArgumentException, IllegalStateException {
+    Util.requireNonNullArg(dest);
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Image dimensions must be positive");
+    }
+    this.dest = new BufferedOutputStream(dest);
+    this.width = width;
+    this.height = height;
+    this.sep = System.lineSeparator();
+    this.rowsWritten = 0;
+    this.write("P3" + this.sep + width + " " + height + this.sep + Color.MAX_VALUE + this.sep);
+  }
+
+  /**
+   * Write the next row of the image, flushing the output after the last row.
+   * @param row the colors of the row, from left to right
+   * @throws IllegalArgumentException if the row is null or not as wide as the image
+   * @throws IllegalStateException if all rows have been written or writing fails
+   */
+  public void writeRow(Color[] row) throws IllegalArgumentException, IllegalStateException {
+    Util.requireNonNullArg(row);
+    if (row.length != this.width) {
+      throw new IllegalArgumentException("Row width does not match the image width.");
+    }
+    if (this.rowsWritten >= this.height) {
+      throw new IllegalStateException("All rows have already been written.");
+    }
+    this.rowsWritten++;
+    StringBuilder builder = new StringBuilder();
+    for (int c = 0; c < this.width; c++) {
+      Color color = row[c];
+      builder.append(color.red()).append(this.sep).append(color.green()).append(this.sep)
+              .append(color.blue());
+      // Add newline unless last row and col.
+      if (this.rowsWritten < this.height || c < this.width - 1) {
+        builder.append(this.sep);
+      }
+    }
+    this.write(builder.toString());
+    if (this.rowsWritten == this.height) {
+      try {
+        this.dest.flush();
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not write image to destination.");
+      }
+    }
+  }
+
+  private void write(String s) throws IllegalStateException {
+    try {
+      this.dest.write(s.getBytes());
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not write image to destination.");
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package util;
+
+import java.util.Arrays;
+
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+
+/**
+ * Contains utility methods to compress images into bytes in memory and back, with a lossless
+ * codec following the "quite OK image" format. Every pixel is written as the shortest of: a run
+ * of the previous pixel, a reference into a table of 64 recently seen colors, a small difference
+ * from the previous pixel in one or two bytes, or the full color in four bytes. Photographs
+ * typically shrink to a third to a half of three bytes per pixel, and flat or synthetic images
+ * much further, while encoding and decoding take a single pass with no lookups beyond the table.
+ *
+ * <p>The encoding starts with the width and height as four byte big endian ints. Colors have no
+ * alpha channel, so the four byte alpha form of the original format is never used.
+ */
+public class QoiCodec {
+
+  private static final int OP_INDEX = 0x00;
+  private static final int OP_DIFF = 0x40;
+  private static final int OP_LUMA = 0x80;
+  private static final int OP_RUN = 0xC0;
+  private static final int OP_RGB = 0xFE;
+  private static final int MASK = 0xC0;
+  private static final int MAX_RUN = 62;
+  private static final int HEADER = 8;
+
+  /**
+   * Compress an image into bytes.
+   * @param img the image to compress
+   * @return the compressed bytes
+   * @throws IllegalArgumentException if the image is null
+   */
+  public static byte[] encode(ImageModel img) throws IllegalArgumentException {
+    Util.requireNonNullArg(img);
+    int width = img.getWidth();
+    int height = img.getHeight();
+    // Four bytes is the longest any pixel can take.
+    byte[] out = new byte[HEADER + 4 * width * height];
+    int pos = writeInt(out, 0, width);
+    pos = writeInt(out, pos, height);
+
+    int[] index = new int[64];
+    int previous = 0;
+    int run = 0;
+    for (int r = 0; r < height; r++) {
+      for (int c = 0; c < width; c++) {
+        int pixel = PixelUtil.pack(img.colorAt(r, c));
+        boolean last = r == height - 1 && c == width - 1;
+        if (pixel == previous) {
+          run++;
+          if (run == MAX_RUN || last) {
+            out[pos++] = (byte) (OP_RUN | (run - 1));
+            run = 0;
+          }
+          continue;
+        }
+        if (run > 0) {
+          out[pos++] = (byte) (OP_RUN | (run - 1));
+          run = 0;
+        }
+
+        int hash = hash(pixel);
+        if (index[hash] == pixel) {
+          out[pos++] = (byte) (OP_INDEX | hash);
+        } else {
+          index[hash] = pixel;
+          // Differences wrap around, so 255 to 0 is a difference of one.
+          int dr = (byte) ((pixel >> 16) - (previous >> 16));
+          int dg = (byte) ((pixel >> 8) - (previous >> 8));
+          int db = (byte) (pixel - previous);
+          int drg = dr - dg;
+          int dbg = db - dg;
+          if (dr >= -2 && dr <= 1 && dg >= -2 && dg <= 1 && db >= -2 && db <= 1) {
+            out[pos++] = (byte) (OP_DIFF | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
+          } else if (dg >= -32 && dg <= 31 && drg >= -8 && drg <= 7 && dbg >= -8 && dbg <= 7) {
+            out[pos++] = (byte) (OP_LUMA | (dg + 32));
+            out[pos++] = (byte) ((drg + 8) << 4 | (dbg + 8));
+          } else {
+            out[pos++] = (byte) OP_RGB;
+            out[pos++] = (byte) (pixel >> 16);
+            out[pos++] = (byte) (pixel >> 8);
+            out[pos++] = (byte) pixel;
+          }
+        }
+        previous = pixel;
+      }
+    }
+    return Arrays.copyOf(out, pos);
+  }
+
+  /**
+   * Decompress bytes made by {@link #encode} back into an image.
+   * @param data the compressed bytes
+   * @return the image
+   * @throws IllegalArgumentException if the data is null or not a valid encoding
+   */
+  public static ImageModel decode(byte[] data) throws IllegalArgumentException {
+    Util.requireNonNullArg(data);
+    if (data.length < HEADER) {
+      throw new IllegalArgumentException("Compressed image is missing its header.");
+    }
+    int width = readInt(data, 0);
+    int height = readInt(data, 4);
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("Compressed image has invalid dimensions.");
+    }
+
+    Color[][] pixels = new Color[height][width];
+    int[] index = new int[64];
+    int pixel = 0;
+    Color color = new Color(0, 0, 0);
+    int run = 0;
+    int pos = HEADER;
+    try {
+      for (int r = 0; r < height; r++) {
+        for (int c = 0; c < width; c++) {
+          if (run > 0) {
+            run--;
+            pixels[r][c] = color;
+            continue;
+          }
+          int op = data[pos++] & 0xFF;
+          if (op == OP_RGB) {
+            pixel = (data[pos] & 0xFF) << 16 | (data[pos + 1] & 0xFF) << 8 | data[pos + 2] & 0xFF;
+            pos += 3;
+          } else if ((op & MASK) == OP_INDEX) {
+            pixel = index[op];
+          } else if ((op & MASK) == OP_DIFF) {
+            pixel = add(pixel, (op >> 4 & 3) - 2, (op >> 2 & 3) - 2, (op & 3) - 2);
+          } else if ((op & MASK) == OP_LUMA) {
+            int dg = (op & 0x3F) - 32;
+            int second = data[pos++] & 0xFF;
+            pixel = add(pixel, dg + (second >> 4) - 8, dg, dg + (second & 0x0F) - 8);
+          } else {
+            run = op & 0x3F;
+          }
+          index[hash(pixel)] = pixel;
+          color = PixelUtil.unpack(pixel);
+          pixels[r][c] = color;
+        }
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Compressed image ends before all of its pixels.");
+    }
+    return new SimpleImage(pixels);
+  }
+
+  private static int hash(int pixel) {
+    return ((pixel >> 16 & 0xFF) * 3 + (pixel >> 8 & 0xFF) * 5 + (pixel & 0xFF) * 7 + 255 * 11)
+            % 64;
+  }
+
+  private static int add(int pixel, int dr, int dg, int db) {
+    return PixelUtil.pack((pixel >> 16) + dr & 0xFF, (pixel >> 8) + dg & 0xFF, pixel + db & 0xFF);
+  }
+
+  private static int writeInt(byte[] out, int pos, int value) {
+    out[pos] = (byte) (value >>> 24);
+    out[pos + 1] = (byte) (value >>> 16);
+    out[pos + 2] = (byte) (value >>> 8);
+    out[pos + 3] = (byte) value;
+    return pos + 4;
+  }
+
+  private static int readInt(byte[] data, int pos) {
+    return (data[pos] & 0xFF) << 24 | (data[pos + 1] & 0xFF) << 16 | (data[pos + 2] & 0xFF) << 8
+            | data[pos + 3] & 0xFF;
+  }
+}
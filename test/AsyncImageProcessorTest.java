@@ -0,0 +1,222 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import controller.commands.BrightenChannels;
+import controller.commands.FlipHorizontally;
+import controller.commands.ImageProcessingCommand;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.AsyncImageProcessor;
+import model.processor.SimpleImageProcessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the asynchronous image processor, checking that processing returns before commands run,
+ * that work on pending images is chained and gives the same images as running in order, and that
+ * failures and cancellations reach the images depending on them. Also tests the default
+ * asynchronous methods of an ordinary processor.
+ */
+public class AsyncImageProcessorTest {
+  private ImageModel image;
+  private AsyncImageProcessor processor;
+  // Released to let a gated command finish.
+  private CountDownLatch gate;
+
+  @Before
+  public void setUp() {
+    Color[][] pixels = new Color[3][4];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        pixels[row][col] = new Color(row * 60, col * 50, 30);
+      }
+    }
+    this.image = new SimpleImage(pixels);
+    // Daemon threads, so commands left waiting never keep the tests from exiting.
+    this.processor = new AsyncImageProcessor(Executors.newFixedThreadPool(2, (Runnable r) -> {
+      Thread thread = new Thread(r);
+      thread.setDaemon(true);
+      return thread;
+    }));
+    this.processor.loadImage("img", this.image);
+    this.gate = new CountDownLatch(1);
+  }
+
+  // A command that only finishes once the gate is released.
+  private ImageProcessingCommand gated(ImageProcessingCommand cmd) {
+    return (ImageModel m) -> {
+      try {
+        if (!this.gate.await(10, TimeUnit.SECONDS)) {
+          throw new IllegalStateException("Gate never released.");
+        }
+      } catch (InterruptedException e) {
+        throw new IllegalStateException("Interrupted at the gate.");
+      }
+      return cmd.process(m);
+    };
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullExecutor() {
+    new AsyncImageProcessor(null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingImage() {
+    this.processor.getImageState("other");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testProcessMissingImage() {
+    this.processor.processImage("other", "res", new FlipHorizontally());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullCommand() {
+    this.processor.processImageAsync("img", "res", null);
+  }
+
+  @Test
+  public void testMissingImageFutureFails() {
+    assertTrue(this.processor.getImageFuture("other").isCompletedExceptionally());
+    assertTrue(this.processor.processImageAsync("other", "res", new FlipHorizontally())
+            .isCompletedExceptionally());
+    assertThrows(IllegalArgumentException.class, () -> this.processor.getImageState("res"));
+  }
+
+  @Test
+  public void testLoadedImageReturned() {
+    assertSame(this.image, this.processor.getImageState("img"));
+    assertSame(this.image, this.processor.getImageFuture("img").join());
+  }
+
+  @Test
+  public void testProcessingDoesNotWait() {
+    CompletableFuture<ImageModel> first = this.processor.processImageAsync("img", "res",
+            this.gated(new BrightenChannels(20)));
+    // Chained onto the pending image, under the same name, without waiting for it.
+    CompletableFuture<ImageModel> second = this.processor.processImageAsync("res", "res",
+            new FlipHorizontally());
+    assertFalse(first.isDone());
+    assertFalse(second.isDone());
+    assertSame(second, this.processor.getImageFuture("res"));
+
+    this.gate.countDown();
+    ImageModel expected = new FlipHorizontally().process(new BrightenChannels(20)
+            .process(this.image));
+    assertEquals(expected, second.join());
+    assertEquals(expected, this.processor.getImageState("res"));
+    assertEquals(new BrightenChannels(20).process(this.image), first.join());
+  }
+
+  @Test
+  public void testResultsUseVersionAtTimeOfCommand() {
+    this.processor.processImageAsync("img", "img", this.gated(new BrightenChannels(50)));
+    CompletableFuture<ImageModel> flipped = this.processor.processImageAsync("img", "res",
+            new FlipHorizontally());
+    this.processor.loadImage("img", this.image);
+    this.gate.countDown();
+    assertEquals(new FlipHorizontally().process(new BrightenChannels(50).process(this.image)),
+            flipped.join());
+    assertSame(this.image, this.processor.getImageState("img"));
+  }
+
+  @Test
+  public void testCommandErrorsReachDependents() {
+    this.processor.processImageAsync("img", "res", (ImageModel m) -> {
+      throw new IllegalArgumentException("Cannot process.");
+    });
+    CompletableFuture<ImageModel> after = this.processor.processImageAsync("res", "after",
+            new FlipHorizontally());
+    assertThrows(IllegalArgumentException.class, () -> this.processor.getImageState("res"));
+    assertThrows(IllegalArgumentException.class, () -> this.processor.getImageState("after"));
+    assertTrue(after.isCompletedExceptionally());
+  }
+
+  @Test
+  public void testCancelledCommandNeverRuns() {
+    AtomicInteger runs = new AtomicInteger();
+    this.processor.processImageAsync("img", "a", this.gated(new BrightenChannels(10)));
+    CompletableFuture<ImageModel> cancelled = this.processor.processImageAsync("a", "b",
+            (ImageModel m) -> {
+              runs.incrementAndGet();
+              return m;
+            });
+    CompletableFuture<ImageModel> dependent = this.processor.processImageAsync("b", "c",
+            new FlipHorizontally());
+    assertTrue(cancelled.cancel(false));
+    this.gate.countDown();
+
+    assertEquals(new BrightenChannels(10).process(this.image), this.processor.getImageState("a"));
+    assertThrows(IllegalStateException.class, () -> this.processor.getImageState("b"));
+    assertThrows(IllegalStateException.class, () -> this.processor.getImageState("c"));
+    assertTrue(dependent.isCompletedExceptionally());
+    assertEquals(0, runs.get());
+  }
+
+  @Test
+  public void testProcessingIntoSameNameNeverLost() throws InterruptedException {
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 25; j++) {
+          this.processor.processImageAsync("img", "img", new BrightenChannels(1));
+        }
+      });
+      threads[i].setDaemon(true);
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(new BrightenChannels(200).process(this.image),
+            this.processor.getImageState("img"));
+  }
+
+  @Test
+  public void testDefaultAsyncMethodsCatchAnyFailure() {
+    SimpleImageProcessor simple = new SimpleImageProcessor() {
+      @Override
+      public ImageModel getImageState(String name) {
+        throw new IllegalStateException("Cannot look up.");
+      }
+    };
+    simple.loadImage("img", this.image);
+    assertTrue(simple.getImageFuture("img").isCompletedExceptionally());
+    assertTrue(simple.processImageAsync("img", "res", (ImageModel m) -> {
+      throw new IllegalStateException("Cannot process.");
+    }).isCompletedExceptionally());
+  }
+
+  @Test
+  public void testRemoveImage() {
+    this.processor.removeImage("img");
+    assertThrows(IllegalArgumentException.class, () -> this.processor.getImageState("img"));
+    assertThrows(IllegalArgumentException.class, () -> this.processor.removeImage("img"));
+  }
+
+  @Test
+  public void testDefaultAsyncMethodsComplete() {
+    SimpleImageProcessor simple = new SimpleImageProcessor();
+    simple.loadImage("img", this.image);
+    CompletableFuture<ImageModel> flipped = simple.processImageAsync("img", "res",
+            new FlipHorizontally());
+    assertTrue(flipped.isDone());
+    assertEquals(new FlipHorizontally().process(this.image), flipped.join());
+    assertSame(simple.getImageState("res"), simple.getImageFuture("res").join());
+    assertTrue(simple.getImageFuture("other").isCompletedExceptionally());
+    assertTrue(simple.processImageAsync("other", "res", new FlipHorizontally())
+            .isCompletedExceptionally());
+  }
+}
@@ -0,0 +1,160 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Scanner;
+
+import controller.ControllerFeatureSet;
+import controller.commands.Bilateral;
+import controller.extensions.ExtendedControllerFeatures;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.ImageProcessor;
+import model.processor.SimpleImageProcessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the bilateral grid smoothing, checking that it smooths noise away from edges, keeps the
+ * edges themselves, and gives the same pixels for part of an image as for the whole image.
+ */
+public class BilateralTest {
+  private ImageModel noisyStep;
+
+  @Before
+  public void setUp() {
+    // A dark left half and a bright right half, both with a little noise.
+    Random random = new Random(37);
+    Color[][] pixels = new Color[60][80];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        int base = col < 40 ? 50 : 200;
+        int noise = random.nextInt(21) - 10;
+        pixels[row][col] = new Color(base + noise, base + noise, base + noise);
+      }
+    }
+    this.noisyStep = new SimpleImage(pixels);
+  }
+
+  // Sum of the absolute differences between neighboring pixels within one half of the image.
+  private int roughness(ImageModel m) {
+    int total = 0;
+    for (int row = 0; row < m.getHeight(); row++) {
+      for (int col = 1; col < m.getWidth(); col++) {
+        if (col != 40) {
+          total += Math.abs(m.colorAt(row, col).red() - m.colorAt(row, col - 1).red());
+        }
+      }
+    }
+    return total;
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadSpatialSigma() {
+    new Bilateral(0, 10);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadRangeSigma() {
+    new Bilateral(4, Double.NaN);
+  }
+
+  @Test
+  public void testFlatImageUnchanged() {
+    Color[][] pixels = new Color[17][23];
+    for (Color[] row : pixels) {
+      Arrays.fill(row, new Color(12, 130, 240));
+    }
+    ImageModel flat = new SimpleImage(pixels);
+    assertEquals(flat, new Bilateral(3, 20).process(flat));
+  }
+
+  @Test
+  public void testSmoothsNoiseAndKeepsEdge() {
+    ImageModel res = new Bilateral(4, 30).process(this.noisyStep);
+    assertTrue(this.roughness(res) * 3 < this.roughness(this.noisyStep));
+    for (int row = 0; row < res.getHeight(); row++) {
+      // Pixels right next to the edge keep to their own side.
+      assertTrue(Math.abs(res.colorAt(row, 39).red() - 50) <= 10);
+      assertTrue(Math.abs(res.colorAt(row, 40).red() - 200) <= 10);
+    }
+  }
+
+  @Test
+  public void testRegionMatchesWholeImage() {
+    Bilateral bilateral = new Bilateral(3, 20);
+    ImageModel expected = bilateral.process(this.noisyStep);
+    Color[][] region = bilateral.processRegion(this.noisyStep, 25, 31, 11, 20);
+    for (int r = 0; r < 11; r++) {
+      for (int c = 0; c < 20; c++) {
+        assertEquals(expected.colorAt(25 + r, 31 + c), region[r][c]);
+      }
+    }
+  }
+
+  @Test
+  public void testSmallSigmasCoarsenRange() {
+    // A grid one pixel wide and one level deep would hold 257 cells for every pixel, so the range
+    // cells are made deep enough for the grid to hold at most 8.
+    Bilateral bilateral = new Bilateral(1, 1);
+    assertEquals(new Bilateral(1, 255 / 6.0).getKey(), bilateral.getKey());
+    assertEquals("bilateral 8 1.0", new Bilateral(8, 1).getKey());
+    Color[][] pixels = new Color[1000][1000];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        pixels[row][col] = this.noisyStep.colorAt(row % 60, col % 80);
+      }
+    }
+    ImageModel large = new SimpleImage(pixels);
+    ImageModel res = bilateral.process(large);
+    Color[][] flatPixels = new Color[17][23];
+    for (Color[] row : flatPixels) {
+      Arrays.fill(row, new Color(12, 130, 240));
+    }
+    ImageModel flat = new SimpleImage(flatPixels);
+    assertEquals(flat, bilateral.process(flat));
+
+    // Still smooths noise and keeps edges, and parts match the whole.
+    ImageModel smoothed = new Bilateral(1, 30).process(this.noisyStep);
+    assertTrue(this.roughness(smoothed) * 2 < this.roughness(this.noisyStep));
+    for (int row = 0; row < smoothed.getHeight(); row++) {
+      assertTrue(Math.abs(smoothed.colorAt(row, 39).red() - 50) <= 10);
+      assertTrue(Math.abs(smoothed.colorAt(row, 40).red() - 200) <= 10);
+    }
+    // Bands of 64 rows, so this region spans two of them.
+    Color[][] region = bilateral.processRegion(large, 55, 31, 20, 20);
+    for (int r = 0; r < 20; r++) {
+      for (int c = 0; c < 20; c++) {
+        assertEquals(res.colorAt(55 + r, 31 + c), region[r][c]);
+      }
+    }
+  }
+
+  @Test
+  public void testMaskedTextCommand() {
+    Color[][] maskPixels = new Color[60][80];
+    for (int row = 0; row < maskPixels.length; row++) {
+      for (int col = 0; col < maskPixels[0].length; col++) {
+        maskPixels[row][col] = row < 30 ? new Color(0, 0, 0) : new Color(255, 255, 255);
+      }
+    }
+    ImageProcessor processor = new SimpleImageProcessor();
+    processor.loadImage("img", this.noisyStep);
+    processor.loadImage("mask", new SimpleImage(maskPixels));
+    ControllerFeatureSet features = new ExtendedControllerFeatures(processor);
+    features.runProcessingCommand("bilateral", "img", "a", new Scanner("4 30"));
+    features.runProcessingCommand("bilateral", "img", "b", new Scanner("4 30 mask"));
+
+    ImageModel expected = new Bilateral(4, 30).process(this.noisyStep);
+    assertEquals(expected, processor.getImageState("a"));
+    ImageModel masked = processor.getImageState("b");
+    for (int col = 0; col < 80; col++) {
+      assertEquals(expected.colorAt(10, col), masked.colorAt(10, col));
+      assertSame(this.noisyStep.colorAt(45, col), masked.colorAt(45, col));
+    }
+  }
+}
@@ -0,0 +1,163 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import controller.commands.BrightenChannels;
+import controller.commands.FlipHorizontally;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.BoundedImageProcessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the memory bounded image processor, checking that images over the budget are evicted
+ * and come back unchanged, and that its counters track the evictions and scratch file traffic.
+ */
+public class BoundedImageProcessorTest {
+  // Each test image is 4 by 5 pixels.
+  private static final long IMAGE_BYTES = 20 * BoundedImageProcessor.BYTES_PER_PIXEL;
+  private static final long IMAGE_FILE_BYTES = 8 + 20 * 3;
+
+  private ImageModel first;
+  private ImageModel second;
+  private ImageModel third;
+
+  private static ImageModel image(int seed) {
+    Color[][] pixels = new Color[4][5];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        pixels[row][col] = new Color(seed * 50 + row, col * 60, (seed + row * col) * 13);
+      }
+    }
+    return new SimpleImage(pixels);
+  }
+
+  @Before
+  public void setUp() {
+    this.first = image(1);
+    this.second = image(2);
+    this.third = image(3);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeBudget() {
+    new BoundedImageProcessor(-1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingImage() {
+    new BoundedImageProcessor(IMAGE_BYTES).getImageState("img");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullImage() {
+    new BoundedImageProcessor(IMAGE_BYTES).loadImage("img", null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullCommand() {
+    BoundedImageProcessor processor = new BoundedImageProcessor(IMAGE_BYTES);
+    processor.loadImage("img", this.first);
+    processor.processImage("img", "res", null);
+  }
+
+  @Test
+  public void testWithinBudgetNothingEvicted() {
+    BoundedImageProcessor processor = new BoundedImageProcessor(3 * IMAGE_BYTES);
+    processor.loadImage("a", this.first);
+    processor.loadImage("b", this.second);
+    processor.processImage("a", "c", new FlipHorizontally());
+    assertSame(this.first, processor.getImageState("a"));
+    assertSame(this.second, processor.getImageState("b"));
+    assertEquals(new FlipHorizontally().process(this.first), processor.getImageState("c"));
+    assertEquals(3 * IMAGE_BYTES, processor.getResidentBytes());
+    assertEquals(0, processor.getEvictions());
+    assertEquals(0, processor.getBytesWritten());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvictedAndFaultedBack() {
+    BoundedImageProcessor processor = new BoundedImageProcessor(2 * IMAGE_BYTES);
+    processor.loadImage("a", this.first);
+    processor.loadImage("b", this.second);
+    // Using a makes b the least recently used image.
+    processor.getImageState("a");
+    processor.loadImage("c", this.third);
+    assertEquals(1, processor.getEvictions());
+    assertEquals(IMAGE_FILE_BYTES, processor.getBytesWritten());
+    assertEquals(2 * IMAGE_BYTES, processor.getResidentBytes());
+    assertSame(this.first, processor.getImageState("a"));
+    assertSame(this.third, processor.getImageState("c"));
+
+    // b comes back with the same pixels, pushing out a, which was used before c.
+    assertEquals(this.second, processor.getImageState("b"));
+    assertEquals(1, processor.getFaults());
+    assertEquals(IMAGE_FILE_BYTES, processor.getBytesRead());
+    assertEquals(2, processor.getEvictions());
+    assertEquals(2 * IMAGE_FILE_BYTES, processor.getBytesWritten());
+    assertSame(this.third, processor.getImageState("c"));
+    assertEquals(this.first, processor.getImageState("a"));
+  }
+
+  @Test
+  public void testUnchangedImagesNotWrittenAgain() {
+    BoundedImageProcessor processor = new BoundedImageProcessor(IMAGE_BYTES);
+    processor.loadImage("a", this.first);
+    processor.loadImage("b", this.second);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(this.first, processor.getImageState("a"));
+      assertEquals(this.second, processor.getImageState("b"));
+    }
+    // Each image was written out once, and read back in every time after.
+    assertEquals(2 * IMAGE_FILE_BYTES, processor.getBytesWritten());
+    assertEquals(10, processor.getFaults());
+  }
+
+  @Test
+  public void testReplacedImageNotReadBack() {
+    BoundedImageProcessor processor = new BoundedImageProcessor(IMAGE_BYTES);
+    processor.loadImage("a", this.first);
+    processor.loadImage("b", this.second);
+    processor.loadImage("a", this.third);
+    assertSame(this.third, processor.getImageState("a"));
+    assertEquals(this.second, processor.getImageState("b"));
+    assertEquals(this.third, processor.getImageState("a"));
+  }
+
+  @Test
+  public void testProcessEvictedImage() {
+    BoundedImageProcessor processor = new BoundedImageProcessor(IMAGE_BYTES);
+    processor.loadImage("a", this.first);
+    processor.loadImage("b", this.second);
+    processor.processImage("a", "a", new BrightenChannels(5));
+    assertEquals(new BrightenChannels(5).process(this.first), processor.getImageState("a"));
+    assertEquals(this.second, processor.getImageState("b"));
+  }
+
+  @Test
+  public void testImageOverBudgetKept() {
+    BoundedImageProcessor processor = new BoundedImageProcessor(0);
+    processor.loadImage("a", this.first);
+    assertSame(this.first, processor.getImageState("a"));
+    processor.loadImage("b", this.second);
+    assertTrue(processor.getResidentBytes() <= IMAGE_BYTES);
+    assertEquals(this.first, processor.getImageState("a"));
+  }
+
+  @Test
+  public void testRemoveImage() {
+    BoundedImageProcessor processor = new BoundedImageProcessor(IMAGE_BYTES);
+    processor.loadImage("a", this.first);
+    processor.loadImage("b", this.second);
+    // a is only in its scratch file, and b only in memory.
+    processor.removeImage("a");
+    processor.removeImage("b");
+    assertEquals(0, processor.getResidentBytes());
+    assertThrows(IllegalArgumentException.class, () -> processor.getImageState("a"));
+    assertThrows(IllegalArgumentException.class, () -> processor.removeImage("b"));
+  }
+}
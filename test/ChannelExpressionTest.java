@@ -0,0 +1,146 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Scanner;
+
+import controller.ControllerFeatureSet;
+import controller.commands.BrightenChannels;
+import controller.commands.ChannelExpression;
+import controller.commands.CommandImpls;
+import controller.extensions.ExtendedControllerFeatures;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.ImageProcessor;
+import model.processor.SimpleImageProcessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the per pixel formula command, its parsing of formulas, and its text command.
+ */
+public class ChannelExpressionTest {
+  private ImageModel image;
+
+  @Before
+  public void setUp() {
+    Color[][] pixels = new Color[12][20];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        pixels[row][col] = new Color(row * 21, col * 13, (row * 37 + col * 11) % 256);
+      }
+    }
+    this.image = new SimpleImage(pixels);
+  }
+
+  // The color of a single pixel image after running the formulas on it.
+  private static Color apply(String red, String green, String blue, Color color) {
+    return new ChannelExpression(red, green, blue)
+            .process(new SimpleImage(new Color[][]{{color}})).colorAt(0, 0);
+  }
+
+  @Test
+  public void testIdentity() {
+    assertEquals(this.image, new ChannelExpression("r", "g", "b").process(this.image));
+  }
+
+  @Test
+  public void testMatchesBuiltInCommands() {
+    assertEquals(new BrightenChannels(30).process(this.image),
+            new ChannelExpression("r+30", "g + 30", "30+b").process(this.image));
+    assertEquals(CommandImpls.RED_CHANNEL.process(this.image),
+            new ChannelExpression("r", "r", "r").process(this.image));
+  }
+
+  @Test
+  public void testMixedChannels() {
+    ImageModel res = new ChannelExpression("(r+g+b)/3", "max(r, b) - min(r, b)", "abs(g - r)")
+            .process(this.image);
+    for (int row = 0; row < this.image.getHeight(); row++) {
+      for (int col = 0; col < this.image.getWidth(); col++) {
+        Color c = this.image.colorAt(row, col);
+        assertEquals(new Color(Math.round((c.red() + c.green() + c.blue()) / 3f),
+                Math.abs(c.red() - c.blue()), Math.abs(c.green() - c.red())),
+                res.colorAt(row, col));
+      }
+    }
+  }
+
+  @Test
+  public void testPrecedence() {
+    Color color = new Color(2, 3, 4);
+    assertEquals(new Color(14, 20, 14), apply("2+3*4", "(2+3)*4", "r+g*b", color));
+    assertEquals(new Color(0, 64, 5), apply("-r^2", "2^3^2/8", "--5", color));
+    assertEquals(new Color(3, 2, 2), apply("sqrt(9)", "floor(2.7)", "r/2*2", color));
+  }
+
+  @Test
+  public void testResultsClamped() {
+    assertEquals(new Color(255, 0, 0), apply("r*100", "g-1000", "0/0", new Color(50, 50, 50)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownName() {
+    new ChannelExpression("x", "g", "b");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnbalancedParentheses() {
+    new ChannelExpression("r", "(g+1", "b");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTrailingText() {
+    new ChannelExpression("r", "g", "b b");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadNumber() {
+    new ChannelExpression("1.2.3", "g", "b");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullFormula() {
+    new ChannelExpression("r", null, "b");
+  }
+
+  @Test
+  public void testRegion() {
+    ChannelExpression expression = new ChannelExpression("r*g/255", "b", "g");
+    ImageModel expected = expression.process(this.image);
+    Color[][] region = expression.processRegion(this.image, 3, 5, 4, 6);
+    for (int r = 0; r < 4; r++) {
+      for (int c = 0; c < 6; c++) {
+        assertEquals(expected.colorAt(3 + r, 5 + c), region[r][c]);
+      }
+    }
+  }
+
+  @Test
+  public void testTextCommand() {
+    Color[][] maskPixels = new Color[12][20];
+    for (int row = 0; row < maskPixels.length; row++) {
+      for (int col = 0; col < maskPixels[0].length; col++) {
+        maskPixels[row][col] = col < 10 ? new Color(0, 0, 0) : new Color(255, 255, 255);
+      }
+    }
+    ImageProcessor processor = new SimpleImageProcessor();
+    processor.loadImage("img", this.image);
+    processor.loadImage("mask", new SimpleImage(maskPixels));
+    ControllerFeatureSet features = new ExtendedControllerFeatures(processor);
+    features.runProcessingCommand("expr", "img", "a",
+            new Scanner("\"r*0.9 + 10\" g \"b * 1.1\""));
+    features.runProcessingCommand("expr", "img", "b", new Scanner("255-r 255-g 255-b mask"));
+
+    assertEquals(new ChannelExpression("r*0.9+10", "g", "b*1.1").process(this.image),
+            processor.getImageState("a"));
+    ImageModel masked = processor.getImageState("b");
+    for (int row = 0; row < 12; row++) {
+      Color inside = this.image.colorAt(row, 2);
+      assertEquals(new Color(255 - inside.red(), 255 - inside.green(), 255 - inside.blue()),
+              masked.colorAt(row, 2));
+      assertSame(this.image.colorAt(row, 15), masked.colorAt(row, 15));
+    }
+  }
+}
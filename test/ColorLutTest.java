@@ -0,0 +1,181 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Scanner;
+import java.util.function.Function;
+
+import controller.ControllerFeatureSet;
+import controller.ControllerFeatures;
+import controller.commands.ColorLut;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.ImageProcessor;
+import model.processor.SimpleImageProcessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests the 3D lookup table command, its reading of cube files, and the controller's reuse of
+ * tables already read.
+ */
+public class ColorLutTest {
+  private ImageModel image;
+
+  @Before
+  public void setUp() {
+    Color[][] pixels = new Color[16][16];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        pixels[row][col] = new Color(row * 17, col * 17, (row * 31 + col * 7) % 256);
+      }
+    }
+    this.image = new SimpleImage(pixels);
+  }
+
+  // A cube file of the given size, each output computed from the input at that entry.
+  private static String cube(String header, int size, Function<float[], float[]> output) {
+    StringBuilder builder = new StringBuilder(header);
+    builder.append("LUT_3D_SIZE ").append(size).append("\n");
+    for (int b = 0; b < size; b++) {
+      for (int g = 0; g < size; g++) {
+        for (int r = 0; r < size; r++) {
+          float[] out = output.apply(new float[]{(float) r / (size - 1), (float) g / (size - 1),
+              (float) b / (size - 1)});
+          builder.append(out[0]).append(" ").append(out[1]).append(" ").append(out[2])
+                  .append("\n");
+        }
+      }
+    }
+    return builder.toString();
+  }
+
+  private static InputStream stream(String text) {
+    return new ByteArrayInputStream(text.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Test
+  public void testIdentity() {
+    ColorLut lut = ColorLut.readCube(stream(cube("TITLE \"identity\"\n# comment\n", 5,
+        (float[] in) -> in)));
+    assertEquals(this.image, lut.process(this.image));
+    assertEquals(this.image,
+            lut.withInterpolation(ColorLut.Interpolation.TETRAHEDRAL).process(this.image));
+  }
+
+  @Test
+  public void testTrilinearIsExactForMultilinearTables() {
+    ColorLut lut = ColorLut.readCube(stream(cube("", 2,
+        (float[] in) -> new float[]{in[0] * in[1], in[1] * in[2], 1 - in[0]})));
+    ImageModel res = lut.process(this.image);
+    for (int row = 0; row < 16; row++) {
+      for (int col = 0; col < 16; col++) {
+        Color c = this.image.colorAt(row, col);
+        assertEquals(new Color(Math.round(c.red() * c.green() / 255f),
+                Math.round(c.green() * c.blue() / 255f), 255 - c.red()), res.colorAt(row, col));
+      }
+    }
+    // The four corners of a tetrahedron cannot follow the product off the grey axis.
+    assertNotEquals(res,
+            lut.withInterpolation(ColorLut.Interpolation.TETRAHEDRAL).process(this.image));
+  }
+
+  @Test
+  public void testTetrahedralKeepsGreysGrey() {
+    // A table whose corners away from the grey axis are strongly tinted.
+    ColorLut lut = ColorLut.readCube(stream(cube("", 2, (float[] in) ->
+        in[0] == in[1] && in[1] == in[2] ? in : new float[]{1, 0, in[2]})))
+            .withInterpolation(ColorLut.Interpolation.TETRAHEDRAL);
+    for (int v = 0; v < 256; v += 15) {
+      Color grey = new Color(v, v, v);
+      ImageModel res = lut.process(new SimpleImage(new Color[][]{{grey}}));
+      assertEquals(grey, res.colorAt(0, 0));
+    }
+  }
+
+  @Test
+  public void testDomain() {
+    // Inputs past the domain are clamped to its edges.
+    ColorLut lut = ColorLut.readCube(stream(cube("DOMAIN_MIN 0 0 0\nDOMAIN_MAX 0.5 0.5 0.5\n", 2,
+        (float[] in) -> in)));
+    ImageModel res = lut.process(new SimpleImage(new Color[][]{
+        {new Color(0, 51, 200)}}));
+    assertEquals(new Color(0, 102, 255), res.colorAt(0, 0));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testOneDimensionalTable() {
+    ColorLut.readCube(stream("LUT_1D_SIZE 2\n0 0 0\n1 1 1\n"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testIncompleteTable() {
+    ColorLut.readCube(stream("LUT_3D_SIZE 2\n0 0 0\n1 1 1\n"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testEntriesBeforeSize() {
+    ColorLut.readCube(stream("0 0 0\nLUT_3D_SIZE 2\n"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testMalformedEntry() {
+    ColorLut.readCube(stream("LUT_3D_SIZE 2\n0 zero 0\n"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongTableLength() {
+    new ColorLut(2, new float[3], new float[3], new float[]{1, 1, 1},
+            ColorLut.Interpolation.TRILINEAR);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testMissingFile() {
+    ImageProcessor processor = new SimpleImageProcessor();
+    processor.loadImage("img", this.image);
+    new ControllerFeatures(processor).runProcessingCommand("apply-lut", "img", "res",
+            new Scanner("no/such/file.cube"));
+  }
+
+  @Test
+  public void testTextCommandReusesTableUntilModified() throws IOException {
+    File file = File.createTempFile("lut", ".cube");
+    file.deleteOnExit();
+    String invert = cube("", 2, (float[] in) -> new float[]{1 - in[0], 1 - in[1], 1 - in[2]});
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(invert.getBytes(StandardCharsets.US_ASCII));
+    }
+    FileTime written = Files.getLastModifiedTime(file.toPath());
+
+    ImageProcessor processor = new SimpleImageProcessor();
+    processor.loadImage("img", this.image);
+    ControllerFeatureSet features = new ControllerFeatures(processor);
+    features.runProcessingCommand("apply-lut", "img", "a", new Scanner(file.getPath()));
+    features.runProcessingCommand("apply-lut", "img", "b",
+            new Scanner(file.getPath() + " tetrahedral"));
+    ImageModel inverted = ColorLut.readCube(stream(invert)).process(this.image);
+    assertEquals(inverted, processor.getImageState("a"));
+    assertEquals(inverted, processor.getImageState("b"));
+
+    // Changing the file without changing its modification time keeps the table already read.
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(cube("", 2, (float[] in) -> in).getBytes(StandardCharsets.US_ASCII));
+    }
+    Files.setLastModifiedTime(file.toPath(), written);
+    features.runProcessingCommand("apply-lut", "img", "c", new Scanner(file.getPath()));
+    assertEquals(inverted, processor.getImageState("c"));
+
+    Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(written.toMillis() + 5000));
+    features.runProcessingCommand("apply-lut", "img", "d", new Scanner(file.getPath()));
+    assertEquals(this.image, processor.getImageState("d"));
+  }
+}
@@ -0,0 +1,237 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import controller.commands.BrightenChannels;
+import controller.commands.FlipHorizontally;
+import controller.commands.ImageProcessingCommand;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.ConcurrentImageProcessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the concurrent image processor, both as a plain processor and when shared by several
+ * threads at once.
+ */
+public class ConcurrentImageProcessorTest {
+  private ImageModel image;
+  private ConcurrentImageProcessor processor;
+
+  @Before
+  public void setUp() {
+    Color[][] pixels = new Color[4][5];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        pixels[row][col] = new Color(row * 40, col * 30, 100);
+      }
+    }
+    this.image = new SimpleImage(pixels);
+    this.processor = new ConcurrentImageProcessor();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingImage() {
+    this.processor.getImageState("img");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullImage() {
+    this.processor.loadImage("img", null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testProcessMissingImage() {
+    this.processor.processImage("img", "res", new FlipHorizontally());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testProcessNullCommand() {
+    this.processor.loadImage("img", this.image);
+    this.processor.processImage("img", "res", null);
+  }
+
+  @Test
+  public void testLoadAndProcess() {
+    this.processor.loadImage("img", this.image);
+    assertSame(this.image, this.processor.getImageState("img"));
+    this.processor.processImage("img", "res", new BrightenChannels(10));
+    assertEquals(new BrightenChannels(10).process(this.image),
+            this.processor.getImageState("res"));
+    this.processor.processImage("res", "res", new BrightenChannels(-10));
+    assertEquals(this.image, this.processor.getImageState("res"));
+  }
+
+  @Test
+  public void testDifferentNamesInParallel() throws Exception {
+    this.processor.loadImage("img", this.image);
+    int workers = 8;
+    CountDownLatch allRunning = new CountDownLatch(workers);
+    // Every command waits until all of them are running at once, which only happens if commands
+    // saving to different names do not wait for each other.
+    ImageProcessingCommand rendezvous = (ImageModel m) -> {
+      allRunning.countDown();
+      try {
+        assertTrue(allRunning.await(10, TimeUnit.SECONDS));
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      return new FlipHorizontally().process(m);
+    };
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int i = 0; i < workers; i++) {
+        String saveName = "res" + i;
+        results.add(pool.submit(() -> this.processor.processImage("img", saveName, rendezvous)));
+      }
+      for (Future<?> result : results) {
+        result.get(20, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    for (int i = 0; i < workers; i++) {
+      assertEquals(new FlipHorizontally().process(this.image),
+              this.processor.getImageState("res" + i));
+    }
+  }
+
+  @Test
+  public void testReadersDoNotWaitForWriters() throws Exception {
+    this.processor.loadImage("img", this.image);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ImageProcessingCommand slow = (ImageModel m) -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      return new BrightenChannels(50).process(m);
+    };
+    Thread writer = new Thread(() -> this.processor.processImage("img", "img", slow));
+    writer.start();
+    assertTrue(started.await(10, TimeUnit.SECONDS));
+    // The old image stays readable while the new one is computed.
+    assertSame(this.image, this.processor.getImageState("img"));
+    this.processor.loadImage("other", this.image);
+    assertSame(this.image, this.processor.getImageState("other"));
+    release.countDown();
+    writer.join(10000);
+    assertFalse(writer.isAlive());
+    assertEquals(new BrightenChannels(50).process(this.image),
+            this.processor.getImageState("img"));
+  }
+
+  @Test
+  public void testSingleWriterPerName() throws Exception {
+    this.processor.loadImage("count", this.image);
+    AtomicInteger active = new AtomicInteger();
+    AtomicInteger maxActive = new AtomicInteger();
+    // Each command brightens the current image by one, so lost updates would show in the result.
+    ImageProcessingCommand increment = (ImageModel m) -> {
+      maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+      Thread.yield();
+      ImageModel res = new BrightenChannels(1).process(m);
+      active.decrementAndGet();
+      return res;
+    };
+    ExecutorService pool = Executors.newFixedThreadPool(6);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int i = 0; i < 60; i++) {
+        results.add(pool.submit(() -> this.processor.processImage("count", "count", increment)));
+      }
+      for (Future<?> result : results) {
+        result.get(20, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    assertEquals(1, maxActive.get());
+    assertEquals(new Color(60, 60, 160), this.processor.getImageState("count").colorAt(0, 0));
+  }
+
+  @Test
+  public void testRemoveImage() {
+    this.processor.loadImage("img", this.image);
+    this.processor.removeImage("img");
+    assertThrows(IllegalArgumentException.class, () -> this.processor.getImageState("img"));
+    assertThrows(IllegalArgumentException.class, () -> this.processor.removeImage("img"));
+    // The name can be used again.
+    this.processor.loadImage("img", this.image);
+    assertSame(this.image, this.processor.getImageState("img"));
+  }
+
+  @Test
+  public void testRemovedNamesLeaveNoLocks() {
+    for (int i = 0; i < 100; i++) {
+      this.processor.loadImage("img" + i, this.image);
+      this.processor.processImage("img" + i, "res" + i, new BrightenChannels(1));
+    }
+    assertEquals(200, this.processor.getLockCount());
+    for (int i = 0; i < 100; i++) {
+      this.processor.removeImage("img" + i);
+      this.processor.removeImage("res" + i);
+    }
+    assertEquals(0, this.processor.getLockCount());
+    // Failing to save or remove never leaves a lock either.
+    assertThrows(IllegalArgumentException.class,
+        () -> this.processor.processImage("missing", "res", new BrightenChannels(1)));
+    assertThrows(IllegalArgumentException.class, () -> this.processor.removeImage("missing"));
+    assertEquals(0, this.processor.getLockCount());
+  }
+
+  @Test
+  public void testSingleWriterWhileRemoving() throws Exception {
+    AtomicInteger active = new AtomicInteger();
+    AtomicInteger maxActive = new AtomicInteger();
+    ImageProcessingCommand tracked = (ImageModel m) -> {
+      maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+      Thread.yield();
+      active.decrementAndGet();
+      return m;
+    };
+    this.processor.loadImage("src", this.image);
+    ExecutorService pool = Executors.newFixedThreadPool(6);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int i = 0; i < 300; i++) {
+        if (i % 3 == 0) {
+          // Drops the lock of the name while other commands wait for it.
+          results.add(pool.submit(() -> {
+            try {
+              this.processor.removeImage("dst");
+            } catch (IllegalArgumentException e) {
+              // Already removed.
+            }
+          }));
+        } else {
+          results.add(pool.submit(() -> this.processor.processImage("src", "dst", tracked)));
+        }
+      }
+      for (Future<?> result : results) {
+        result.get(20, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    assertEquals(1, maxActive.get());
+  }
+}
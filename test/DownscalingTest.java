@@ -167,11 +167,82 @@ public class DownscalingTest {
             { new Color(115, 40, 3) }}));
   }
 
+  @Test
+  public void testAreaDownscale() {
+    // each output pixel of an exact 2:1 reduction is the average of a 2x2 block
+    ImageProcessingCommand area5x5Cmd = new Downscale(5, 5, Downscale.Mode.AREA);
+    ImageModel downscaled5x5 = area5x5Cmd.process(this.tenByTen);
+    assertTrue(downscaled5x5.getWidth() == 5 && downscaled5x5.getHeight() == 5);
+    for (int row = 0; row < 5; row++) {
+      for (int col = 0; col < 5; col++) {
+        int expected = 40 * row + 4 * col + 11;
+        assertEquals(new Color(expected, expected, expected), downscaled5x5.colorAt(row, col));
+      }
+    }
+
+    // partially covered source pixels contribute by how much of them is covered
+    ImageProcessingCommand area4x4Cmd = new Downscale(4, 4, Downscale.Mode.AREA);
+    ImageModel downscaled4x4 = area4x4Cmd.process(this.tenByTen);
+    assertEquals(new Color(18, 18, 18), downscaled4x4.colorAt(0, 0));
+    assertEquals(new Color(180, 180, 180), downscaled4x4.colorAt(3, 3));
+
+    // downscaling to a single pixel averages the whole image
+    ImageProcessingCommand area1x1Cmd = new Downscale(1, 1, Downscale.Mode.AREA);
+    assertEquals(new SimpleImage(new Color[][]{{ new Color(99, 99, 99) }}),
+            area1x1Cmd.process(this.tenByTen));
+  }
+
+  @Test
+  public void testLargeAreaReductionsAverage() {
+    // Reductions by hundreds or thousands of pixels once left some weights far off, or negative.
+    for (int width : new int[]{600, 6000, 20000}) {
+      Color[][] pixels = new Color[2][width];
+      long[] sums = new long[3];
+      long seed = width;
+      for (int row = 0; row < 2; row++) {
+        for (int col = 0; col < width; col++) {
+          seed = seed * 6364136223846793005L + 1442695040888963407L;
+          int noise = (int) (seed >>> 56);
+          pixels[row][col] = new Color(noise, col * 256 / width, row == 0 ? 255 : 0);
+          sums[0] += noise;
+          sums[1] += col * 256 / width;
+          sums[2] += row == 0 ? 255 : 0;
+        }
+      }
+      Color mean = new Downscale(1, 1, Downscale.Mode.AREA).process(new SimpleImage(pixels))
+              .colorAt(0, 0);
+      int[] channels = {mean.red(), mean.green(), mean.blue()};
+      for (int i = 0; i < 3; i++) {
+        double expected = sums[i] / (2.0 * width);
+        assertTrue(width + ": " + channels[i] + " vs " + expected,
+                Math.abs(channels[i] - expected) <= 1);
+      }
+    }
+  }
+
+  @Test
+  public void testDownscaleModeFromTextCommands() {
+    // Without a pyramid budget, so the image itself is downscaled rather than a pyramid level.
+    ImageProcessor model = new SimpleImageProcessor(0);
+    model.loadImage("img", this.tenByTen);
+
+    Readable input = new StringReader("downscale img area-img 5 5 area\n"
+            + "downscale img bilinear-img 4 4 bilinear\n");
+    ImageProcessorController controller =
+            new ExtendedScriptedController(model, input, Optional.of(out));
+    controller.run();
+
+    assertEquals(new Downscale(5, 5, Downscale.Mode.AREA).process(this.tenByTen),
+            model.getImageState("area-img"));
+    assertEquals(this.downscaledFourByFour, model.getImageState("bilinear-img"));
+  }
+
   @Test
   public void testDownscaleFromView() {
     String imgName = "test-img";
     MockDownscaleView view = new MockDownscaleView(imgName);
-    ImageProcessor model = new SimpleImageProcessor();
+    // Without a pyramid budget, so the image itself is downscaled rather than a pyramid level.
+    ImageProcessor model = new SimpleImageProcessor(0);
     ImageProcessorController guiController = new ExtendedGuiController(model, view);
     guiController.run();
     view.downscaleWidth.setText("4");
@@ -184,7 +255,8 @@ public class DownscalingTest {
   @Test
   public void testDownscaleFromTextCommands() {
     String imgName = "test-img";
-    ImageProcessor model = new SimpleImageProcessor();
+    // Without a pyramid budget, so the image itself is downscaled rather than a pyramid level.
+    ImageProcessor model = new SimpleImageProcessor(0);
     model.loadImage(imgName, this.tenByTen);
 
     Readable input = new StringReader("downscale " + imgName + " " + imgName + " 4 4");
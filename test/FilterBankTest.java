@@ -0,0 +1,162 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Scanner;
+
+import controller.ControllerFeatureSet;
+import controller.ControllerFeatures;
+import controller.commands.CommandImpls;
+import controller.commands.Filter;
+import controller.commands.FilterBank;
+import controller.commands.MaskedCommand;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.ImageProcessor;
+import model.processor.SimpleImageProcessor;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the filter bank and the edge detection commands built on it, comparing them against
+ * filtering with each kernel separately and combining afterwards.
+ */
+public class FilterBankTest {
+  private static final float[][] SOBEL_X = {{-1, 0, 1}, {-2, 0, 2}, {-1, 0, 1}};
+  private static final float[][] SOBEL_Y = {{-1, -2, -1}, {0, 0, 0}, {1, 2, 1}};
+
+  private ImageModel image;
+
+  @Before
+  public void setUp() {
+    Color[][] pixels = new Color[23][31];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        pixels[row][col] = new Color((row * 19 + col * 7) % 256, (row * col * 3) % 256,
+                col < 15 ? 20 : 230);
+      }
+    }
+    this.image = new SimpleImage(pixels);
+  }
+
+  // Filter a channel with a kernel, including only the pixels of the image that it overlaps.
+  private float response(float[][] kernel, int row, int col, int channel) {
+    float value = 0;
+    for (int i = 0; i < kernel.length; i++) {
+      for (int j = 0; j < kernel[0].length; j++) {
+        int r = row + i - kernel.length / 2;
+        int c = col + j - kernel[0].length / 2;
+        if (r >= 0 && c >= 0 && r < this.image.getHeight() && c < this.image.getWidth()) {
+          Color color = this.image.colorAt(r, c);
+          float channelValue = channel == 0 ? color.red() : channel == 1 ? color.green()
+                  : channel == 2 ? color.blue()
+                  : 0.2126f * color.red() + 0.7152f * color.green() + 0.0722f * color.blue();
+          value += kernel[i][j] * channelValue;
+        }
+      }
+    }
+    return value;
+  }
+
+  private int magnitude(int row, int col, int channel) {
+    float x = this.response(SOBEL_X, row, col, channel);
+    float y = this.response(SOBEL_Y, row, col, channel);
+    return (int) Math.round(Math.sqrt(x * x + y * y));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoKernels() {
+    new FilterBank(new float[0][][], (float[] r) -> r[0]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMismatchedKernels() {
+    new FilterBank(new float[][][]{SOBEL_X, {{1}}}, (float[] r) -> r[0]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullCombiner() {
+    new FilterBank(new float[][][]{SOBEL_X}, null);
+  }
+
+  @Test
+  public void testSingleKernelMatchesFilter() {
+    float[][] blur = {{0.0625f, 0.125f, 0.0625f}, {0.125f, 0.25f, 0.125f},
+        {0.0625f, 0.125f, 0.0625f}};
+    assertEquals(new Filter(blur).process(this.image),
+            new FilterBank(new float[][][]{blur}, (float[] r) -> r[0]).process(this.image));
+  }
+
+  @Test
+  public void testSobel() {
+    ImageModel res = CommandImpls.SOBEL.process(this.image);
+    for (int row = 0; row < this.image.getHeight(); row++) {
+      for (int col = 0; col < this.image.getWidth(); col++) {
+        assertEquals(new Color(this.magnitude(row, col, 0), this.magnitude(row, col, 1),
+                this.magnitude(row, col, 2)), res.colorAt(row, col));
+      }
+    }
+  }
+
+  @Test
+  public void testEdgeMagnitude() {
+    ImageModel res = CommandImpls.EDGE_MAGNITUDE.process(this.image);
+    for (int row = 0; row < this.image.getHeight(); row++) {
+      for (int col = 0; col < this.image.getWidth(); col++) {
+        int value = this.magnitude(row, col, 3);
+        assertEquals(new Color(value, value, value), res.colorAt(row, col));
+      }
+    }
+  }
+
+  @Test
+  public void testLaplacian() {
+    float[][] laplacian = {{0, 1, 0}, {1, -4, 1}, {0, 1, 0}};
+    ImageModel res = CommandImpls.LAPLACIAN.process(this.image);
+    for (int row = 0; row < this.image.getHeight(); row++) {
+      for (int col = 0; col < this.image.getWidth(); col++) {
+        assertEquals(new Color(Math.round(Math.abs(this.response(laplacian, row, col, 0))),
+                Math.round(Math.abs(this.response(laplacian, row, col, 1))),
+                Math.round(Math.abs(this.response(laplacian, row, col, 2)))),
+                res.colorAt(row, col));
+      }
+    }
+  }
+
+  @Test
+  public void testFlatImageHasNoEdges() {
+    Color[][] pixels = new Color[4][4];
+    for (Color[] row : pixels) {
+      Arrays.fill(row, new Color(90, 90, 90));
+    }
+    // Only the center has a full neighborhood; the edges see pixels missing outside the image.
+    assertEquals(new Color(0, 0, 0),
+            CommandImpls.LAPLACIAN.process(new SimpleImage(pixels)).colorAt(1, 2));
+  }
+
+  @Test
+  public void testMaskedAndTextCommands() {
+    Color[][] maskPixels = new Color[23][31];
+    for (int row = 0; row < maskPixels.length; row++) {
+      for (int col = 0; col < maskPixels[0].length; col++) {
+        maskPixels[row][col] = row > 10 ? new Color(0, 0, 0) : new Color(255, 255, 255);
+      }
+    }
+    ImageModel mask = new SimpleImage(maskPixels);
+    ImageProcessor processor = new SimpleImageProcessor();
+    processor.loadImage("img", this.image);
+    ControllerFeatureSet features = new ControllerFeatures(processor);
+    features.runProcessingCommand("sobel", "img", "a", new Scanner(""));
+    features.runProcessingCommand("edge-magnitude", "img", "b", new Scanner(""));
+    features.runProcessingCommand("laplacian", "img", "c", new Scanner(""));
+    assertEquals(CommandImpls.SOBEL.process(this.image), processor.getImageState("a"));
+    assertEquals(CommandImpls.EDGE_MAGNITUDE.process(this.image), processor.getImageState("b"));
+    assertEquals(CommandImpls.LAPLACIAN.process(this.image), processor.getImageState("c"));
+
+    ImageModel masked = new MaskedCommand(CommandImpls.SOBEL, mask).process(this.image);
+    ImageModel full = CommandImpls.SOBEL.process(this.image);
+    assertEquals(full.colorAt(15, 3), masked.colorAt(15, 3));
+    assertEquals(this.image.colorAt(5, 3), masked.colorAt(5, 3));
+  }
+}
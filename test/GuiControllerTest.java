@@ -2,22 +2,33 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
 
 import controller.ControllerFeatureSet;
 import controller.GuiControllerFeatures;
 import controller.GuiImageProcessorController;
 import controller.ImageProcessorController;
+import controller.commands.CommandImpls;
 import mocks.LoggingSwingGuiView;
 import model.color.Color;
 import model.image.ImageModel;
 import model.image.SimpleImage;
+import model.processor.AsyncImageProcessor;
 import model.processor.ImageProcessor;
 import model.processor.SimpleImageProcessor;
 import view.ImageProcessorView;
 import view.SwingGuiView;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests all the functionality in the GUIControllerFeatures class which updates the user
@@ -48,7 +59,7 @@ public class GuiControllerTest {
   }
 
   @Test
-  public void testControls() {
+  public void testControls() throws Exception {
     ImageProcessor processor = new SimpleImageProcessor();
     StringBuilder log = new StringBuilder();
     ImageProcessorView loggingView = new LoggingSwingGuiView(log);
@@ -61,7 +72,48 @@ public class GuiControllerTest {
     assertEquals("setActionObject\ndisplayImage\n", log.toString());
     // Check that processing an image also updates the view.
     control.runProcessingCommand("luma-component", "img-name", "img-name", null);
+    // The view is updated on the event dispatch thread, so wait for it to get there.
+    SwingUtilities.invokeAndWait(() -> { });
     assertEquals("setActionObject\ndisplayImage\ndisplayImage\n", log.toString());
   }
 
+  @Test
+  public void testProcessingInBackground() throws InterruptedException {
+    // Commands only run when the test runs them.
+    List<Runnable> tasks = new ArrayList<>();
+    ImageProcessor processor = new AsyncImageProcessor(tasks::add);
+    processor.loadImage("img", testImg);
+    // What the view is asked to show, and whether it was asked on the event dispatch thread.
+    BlockingQueue<Object> shown = new LinkedBlockingQueue<>();
+    ImageProcessorView view = new ImageProcessorView() {
+      @Override
+      public void displayImage(ImageModel img) {
+        shown.add(SwingUtilities.isEventDispatchThread() ? img : "off the event thread");
+      }
+
+      @Override
+      public void displayError(String message) {
+        shown.add(SwingUtilities.isEventDispatchThread() ? message : "off the event thread");
+      }
+
+      @Override
+      public void setActionObject(ControllerFeatureSet actionObject) {
+        // nothing to set up
+      }
+    };
+    ControllerFeatureSet control = new GuiControllerFeatures(processor, view);
+
+    // Processing returns before the command runs, and the view is updated once it has.
+    control.runProcessingCommand("luma-component", "img", "grey", null);
+    assertNull(shown.poll(100, TimeUnit.MILLISECONDS));
+    assertEquals(1, tasks.size());
+    tasks.remove(0).run();
+    assertEquals(CommandImpls.LUMA.process(testImg), shown.poll(10, TimeUnit.SECONDS));
+
+    // Failures are shown on the view too.
+    control.runProcessingCommand("luma-component", "missing", "grey", null);
+    Object error = shown.poll(10, TimeUnit.SECONDS);
+    assertTrue(error instanceof String && !error.equals("off the event thread"));
+    assertTrue(tasks.isEmpty());
+  }
 }
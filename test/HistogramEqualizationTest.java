@@ -0,0 +1,124 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Scanner;
+
+import controller.ControllerFeatureSet;
+import controller.ControllerFeatures;
+import controller.commands.HistogramEqualization;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.ImageProcessor;
+import model.processor.SimpleImageProcessor;
+import util.ImageUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the equalize and clahe commands, which spread the values of each channel over the whole
+ * range either across the image or within tiles blended together.
+ */
+public class HistogramEqualizationTest {
+  private ImageModel lowContrast;
+
+  @Before
+  public void setUp() {
+    // A dim gradient using only the values 100 to 139, brighter to the right and down.
+    Color[][] pixels = new Color[64][80];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        int value = 100 + (row + col) * 40 / 143;
+        pixels[row][col] = new Color(value, value / 2, 139 - (value - 100));
+      }
+    }
+    this.lowContrast = new SimpleImage(pixels);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoTiles() {
+    new HistogramEqualization(0, 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeClip() {
+    new HistogramEqualization(4, -1);
+  }
+
+  @Test
+  public void testEqualizeSmallImage() {
+    ImageModel img = new SimpleImage(new Color[][]{
+        {new Color(10, 0, 7), new Color(10, 0, 7)},
+        {new Color(20, 0, 7), new Color(30, 0, 7)}});
+    // Red is stretched by its cumulative counts; flat channels are left alone.
+    assertEquals(new SimpleImage(new Color[][]{
+        {new Color(0, 0, 7), new Color(0, 0, 7)},
+        {new Color(128, 0, 7), new Color(255, 0, 7)}}),
+        new HistogramEqualization().process(img));
+  }
+
+  @Test
+  public void testEqualizeSpreadsRange() {
+    ImageModel res = new HistogramEqualization().process(this.lowContrast);
+    int[] red = ImageUtil.histogram(res, Color::red);
+    int[] blue = ImageUtil.histogram(res, Color::blue);
+    assertTrue(red[0] > 0 && red[255] > 0);
+    assertTrue(blue[0] > 0 && blue[255] > 0);
+  }
+
+  @Test
+  public void testSingleUnclippedTileIsEqualize() {
+    assertEquals(new HistogramEqualization().process(this.lowContrast),
+            new HistogramEqualization(1, 0).process(this.lowContrast));
+  }
+
+  @Test
+  public void testClaheHasNoSeams() {
+    // Three levels, where the share of the darkest one grows to the right, so every column of
+    // tiles maps the middle level differently.
+    Color[][] pixels = new Color[64][80];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        int value = (row * 7 + col * 3) % 10 < col / 8 ? 60 : (row + col) % 2 == 0 ? 100 : 140;
+        pixels[row][col] = new Color(value, value, value);
+      }
+    }
+    ImageModel res = new HistogramEqualization(4, 0).process(new SimpleImage(pixels));
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 2; col < pixels[0].length; col++) {
+        if (pixels[row][col].red() == 100 && pixels[row][col - 2].red() == 100) {
+          // Blending between tiles moves the mapping a little at a time, never in a jump.
+          assertTrue(Math.abs(res.colorAt(row, col).red() - res.colorAt(row, col - 2).red()) <= 4);
+        }
+      }
+    }
+    assertTrue(res.colorAt(30, 0).red() - res.colorAt(30, 78).red() > 20);
+  }
+
+  @Test
+  public void testClipLimitsContrast() {
+    int spread = 0;
+    int clippedSpread = 0;
+    ImageModel unclipped = new HistogramEqualization(2, 0).process(this.lowContrast);
+    ImageModel clipped = new HistogramEqualization(2, 1.5).process(this.lowContrast);
+    for (int col = 1; col < this.lowContrast.getWidth(); col++) {
+      spread += Math.abs(unclipped.colorAt(30, col).red() - unclipped.colorAt(30, col - 1).red());
+      clippedSpread += Math.abs(clipped.colorAt(30, col).red() - clipped.colorAt(30, col - 1).red());
+    }
+    assertTrue(clippedSpread < spread);
+  }
+
+  @Test
+  public void testTextCommands() {
+    ImageProcessor processor = new SimpleImageProcessor();
+    processor.loadImage("img", this.lowContrast);
+    ControllerFeatureSet features = new ControllerFeatures(processor);
+    features.runProcessingCommand("equalize", "img", "a", new Scanner(""));
+    features.runProcessingCommand("clahe", "img", "b", new Scanner("4 2.5"));
+    assertEquals(new HistogramEqualization().process(this.lowContrast),
+            processor.getImageState("a"));
+    assertEquals(new HistogramEqualization(4, 2.5).process(this.lowContrast),
+            processor.getImageState("b"));
+  }
+}
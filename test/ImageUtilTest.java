@@ -19,6 +19,7 @@ import model.color.Color;
 import util.ImageUtil;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -347,4 +348,58 @@ public class ImageUtilTest {
     assertEquals(expectedIntensityHistogram2, ImageUtil.imageToHistogram(uniqueRGB,
         (Color c) -> (c.red() + c.green() + c.blue()) / 3));
   }
+
+  @Test
+  public void testHistogramCounts() {
+    ImageModel uniqueRGB = new SimpleImage(new Color[][]{
+        {new Color(43, 117, 3), new Color(43, 5, 206)},
+        {new Color(0, 117, 206), new Color(255, 5, 206)}});
+    int[] red = ImageUtil.histogram(uniqueRGB, Color::red);
+    assertEquals(256, red.length);
+    assertEquals(2, red[43]);
+    assertEquals(1, red[0]);
+    assertEquals(1, red[255]);
+    assertEquals(0, red[1]);
+
+    // Only the right column.
+    int[] blue = ImageUtil.histogram(uniqueRGB, 0, 1, 2, 1, Color::blue);
+    assertEquals(2, blue[206]);
+    assertEquals(0, blue[3]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testHistogramOutsideImage() {
+    ImageUtil.histogram(this.testImg, 0, 0, this.testImg.getHeight() + 1, 1, Color::red);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testHistogramValueOutOfRange() {
+    ImageUtil.histogram(this.testImg, (Color c) -> c.red() + 1);
+  }
+
+  @Test
+  public void testContentHash() {
+    ImageModel copy = new SimpleImage(new Color[][]{
+            {new Color(0,0,0), new Color(127,127,127),
+                new Color(255,255,255)},
+            {new Color(255,0,0), new Color(0,255,0), new Color(0,0,255)}
+    });
+    assertEquals(ImageUtil.contentHash(this.testImg), ImageUtil.contentHash(copy));
+
+    // One channel of one pixel differing by one changes the hash.
+    ImageModel changed = new SimpleImage(new Color[][]{
+            {new Color(0,0,0), new Color(127,127,127),
+                new Color(255,255,255)},
+            {new Color(255,0,0), new Color(0,255,0), new Color(0,0,254)}
+    });
+    assertNotEquals(ImageUtil.contentHash(this.testImg), ImageUtil.contentHash(changed));
+
+    // The same pixels in a different shape change the hash.
+    ImageModel reshaped = new SimpleImage(new Color[][]{
+            {new Color(0,0,0), new Color(127,127,127)},
+            {new Color(255,255,255), new Color(255,0,0)},
+            {new Color(0,255,0), new Color(0,0,255)}
+    });
+    assertNotEquals(ImageUtil.contentHash(this.testImg), ImageUtil.contentHash(reshaped));
+  }
 }
@@ -0,0 +1,239 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Scanner;
+
+import controller.ScriptedImageProcessorController;
+import controller.ScriptedImageProcessorController.Optimization;
+import controller.commands.BrightenChannels;
+import controller.commands.CommandImpls;
+import controller.commands.FlipHorizontally;
+import controller.commands.ImageProcessingCommand;
+import controller.commands.RegionCommand;
+import controller.extensions.ExtendedControllerFeatures;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.ImageProcessor;
+import model.processor.LazyImageProcessor;
+import model.processor.SimpleImageProcessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the lazy image processor, checking that it computes the same images as running every
+ * command straight away, but only the ones asked for, and with chains of commands fused.
+ */
+public class LazyImageProcessorTest {
+  private ImageModel image;
+  private LazyImageProcessor processor;
+
+  /**
+   * A brightening command that counts how often it runs on a whole image and on a region.
+   */
+  private static class CountingBrighten implements RegionCommand {
+    private final BrightenChannels brighten;
+    private int wholeRuns;
+    private int regionRuns;
+
+    private CountingBrighten(int increment) {
+      this.brighten = new BrightenChannels(increment);
+    }
+
+    @Override
+    public ImageModel process(ImageModel m) {
+      this.wholeRuns++;
+      return this.brighten.process(m);
+    }
+
+    @Override
+    public int getHalo() {
+      return 0;
+    }
+
+    @Override
+    public Color[][] processRegion(ImageModel m, int row, int col, int height, int width) {
+      this.regionRuns++;
+      return this.brighten.processRegion(m, row, col, height, width);
+    }
+  }
+
+  @Before
+  public void setUp() {
+    Color[][] pixels = new Color[6][7];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        pixels[row][col] = new Color(row * 30, col * 20, 90);
+      }
+    }
+    this.image = new SimpleImage(pixels);
+    this.processor = new LazyImageProcessor();
+    this.processor.loadImage("img", this.image);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingImage() {
+    this.processor.getImageState("other");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testProcessMissingImage() {
+    this.processor.processImage("other", "res", new FlipHorizontally());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullCommand() {
+    this.processor.processImage("img", "res", null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullImage() {
+    this.processor.loadImage("res", null);
+  }
+
+  @Test
+  public void testLoadedImageReturned() {
+    assertSame(this.image, this.processor.getImageState("img"));
+    assertEquals(0, this.processor.getPendingImages());
+  }
+
+  @Test
+  public void testUnusedResultsNeverComputed() {
+    CountingBrighten unused = new CountingBrighten(10);
+    this.processor.processImage("img", "a", unused);
+    this.processor.processImage("a", "b", unused);
+    assertEquals(2, this.processor.getPendingImages());
+    assertSame(this.image, this.processor.getImageState("img"));
+    assertEquals(0, unused.wholeRuns + unused.regionRuns);
+  }
+
+  @Test
+  public void testChainFused() {
+    CountingBrighten first = new CountingBrighten(10);
+    CountingBrighten second = new CountingBrighten(-3);
+    // Reusing one name leaves no name on the intermediate images, so the chain is fused.
+    this.processor.processImage("img", "res", first);
+    this.processor.processImage("res", "res", CommandImpls.SEPIA_TONE);
+    this.processor.processImage("res", "res", second);
+    assertEquals(1, this.processor.getPendingImages());
+
+    ImageModel expected = new BrightenChannels(-3).process(CommandImpls.SEPIA_TONE.process(
+            new BrightenChannels(10).process(this.image)));
+    assertEquals(expected, this.processor.getImageState("res"));
+    assertEquals(0, first.wholeRuns + second.wholeRuns);
+    assertEquals(1, first.regionRuns);
+    // Computed once, and kept.
+    assertSame(this.processor.getImageState("res"), this.processor.getImageState("res"));
+    assertEquals(1, first.regionRuns);
+  }
+
+  @Test
+  public void testNamedIntermediatesKept() {
+    CountingBrighten brighten = new CountingBrighten(10);
+    this.processor.processImage("img", "a", brighten);
+    this.processor.processImage("a", "b", new FlipHorizontally());
+    this.processor.processImage("a", "c", CommandImpls.SEPIA_TONE);
+    assertEquals(new FlipHorizontally().process(new BrightenChannels(10).process(this.image)),
+            this.processor.getImageState("b"));
+    assertEquals(1, this.processor.getPendingImages());
+    assertEquals(CommandImpls.SEPIA_TONE.process(new BrightenChannels(10).process(this.image)),
+            this.processor.getImageState("c"));
+    assertEquals(new BrightenChannels(10).process(this.image), this.processor.getImageState("a"));
+    // The shared image was only computed once.
+    assertEquals(1, brighten.wholeRuns + brighten.regionRuns);
+  }
+
+  @Test
+  public void testSharedUnnamedImageComputedOnce() {
+    CountingBrighten brighten = new CountingBrighten(10);
+    this.processor.processImage("img", "a", brighten);
+    this.processor.processImage("a", "b", CommandImpls.SEPIA_TONE);
+    this.processor.processImage("a", "c", CommandImpls.LUMA);
+    this.processor.loadImage("a", this.image);
+    ImageModel brightened = new BrightenChannels(10).process(this.image);
+    assertEquals(CommandImpls.SEPIA_TONE.process(brightened), this.processor.getImageState("b"));
+    assertEquals(CommandImpls.LUMA.process(brightened), this.processor.getImageState("c"));
+    assertEquals(1, brighten.wholeRuns + brighten.regionRuns);
+  }
+
+  @Test
+  public void testResultsUseVersionAtTimeOfCommand() {
+    ImageProcessingCommand flip = new FlipHorizontally();
+    this.processor.processImage("img", "res", flip);
+    this.processor.processImage("img", "img", new BrightenChannels(50));
+    assertEquals(flip.process(this.image), this.processor.getImageState("res"));
+    assertEquals(new BrightenChannels(50).process(this.image),
+            this.processor.getImageState("img"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCommandErrorsWhenNeeded() {
+    this.processor.processImage("img", "res", (ImageModel m) -> {
+      throw new IllegalArgumentException("Cannot process.");
+    });
+    this.processor.getImageState("res");
+  }
+
+  @Test
+  public void testRemovedPendingImageNeverComputed() {
+    CountingBrighten brighten = new CountingBrighten(10);
+    this.processor.processImage("img", "a", brighten);
+    this.processor.processImage("a", "b", CommandImpls.SEPIA_TONE);
+    // a is no longer named, so it is fused into b rather than computed and kept.
+    this.processor.removeImage("a");
+    assertEquals(1, this.processor.getPendingImages());
+    assertEquals(CommandImpls.SEPIA_TONE.process(new BrightenChannels(10).process(this.image)),
+            this.processor.getImageState("b"));
+    assertEquals(0, brighten.wholeRuns);
+    assertThrows(IllegalArgumentException.class, () -> this.processor.getImageState("a"));
+  }
+
+  @Test
+  public void testScriptOnlyComputesSavedImages() {
+    // A text command making a new counting brighten every time it is used.
+    List<CountingBrighten> counted = new ArrayList<>();
+    ExtendedControllerFeatures features = new ExtendedControllerFeatures(this.processor) {
+      {
+        this.knownCommands.put("count", (Scanner sc) -> {
+          CountingBrighten brighten = new CountingBrighten(sc.nextInt());
+          counted.add(brighten);
+          return brighten;
+        });
+      }
+    };
+    String commands = "count img bright 10\n"
+            + "count img unused 20\n"
+            + "sepia-tone unused unused-sepia\n"
+            + "sepia-tone bright out\n"
+            + "save out out.ppm\n";
+    ByteArrayOutputStream saved = new ByteArrayOutputStream();
+    // The optimizations the lazy script mode runs with.
+    new ScriptedImageProcessorController(this.processor, new StringReader(commands),
+            Optional.of(saved), features,
+            EnumSet.of(Optimization.FREE_DEAD_IMAGES, Optimization.REUSE_RESULTS)).run();
+
+    assertEquals(2, counted.size());
+    // The unsaved branch never ran, and the saved one ran once, fused with the sepia tone.
+    assertEquals(0, counted.get(1).wholeRuns + counted.get(1).regionRuns);
+    assertEquals(0, counted.get(0).wholeRuns);
+    assertEquals(1, counted.get(0).regionRuns);
+    // The same file is saved as when every line runs straight away.
+    ImageProcessor plain = new SimpleImageProcessor();
+    plain.loadImage("img", this.image);
+    ByteArrayOutputStream plainSaved = new ByteArrayOutputStream();
+    new ScriptedImageProcessorController(plain,
+            new StringReader(commands.replace("count", "brighten")), Optional.of(plainSaved),
+            new ExtendedControllerFeatures(plain)).run();
+    assertTrue(saved.size() > 0);
+    assertEquals(plainSaved.toString(), saved.toString());
+  }
+}
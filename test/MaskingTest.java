@@ -13,7 +13,9 @@ import controller.commands.Downscale;
 import controller.commands.FlipHorizontally;
 import controller.commands.FlipVertically;
 import controller.commands.ImageProcessingCommand;
+import controller.commands.MapChannels;
 import controller.commands.MaskedCommand;
+import controller.commands.RegionCommand;
 import controller.extensions.ExtendedScriptedController;
 import model.color.Color;
 import model.image.ImageModel;
@@ -23,6 +25,7 @@ import model.processor.SimpleImageProcessor;
 
 import static java.lang.System.out;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 /**
@@ -323,4 +326,97 @@ public class MaskingTest {
 
     assertEquals(expected, model.getImageState(imgName));
   }
+
+  @Test
+  public void testMaskingOnlyComputesMaskedPixels() {
+    int[] mapped = new int[1];
+    ImageProcessingCommand countingCmd = new MaskedCommand(new MapChannels((Color c) -> {
+      mapped[0]++;
+      return c.add(1, 1, 1);
+    }), threeByThreeMask1);
+    ImageModel masked = countingCmd.process(threeByThree);
+    assertEquals(4, mapped[0]);
+    // unmasked pixels are shared with the original image
+    assertSame(threeByThree.colorAt(0, 0), masked.colorAt(0, 0));
+    assertSame(threeByThree.colorAt(2, 2), masked.colorAt(2, 2));
+    assertEquals(threeByThree.colorAt(1, 1).add(1, 1, 1), masked.colorAt(1, 1));
+  }
+
+  @Test
+  public void testRegionMaskingMatchesFullMasking() {
+    Color[][] pixels = new Color[7][9];
+    Color[][] maskPixels = new Color[7][9];
+    for (int row = 0; row < 7; row++) {
+      for (int col = 0; col < 9; col++) {
+        pixels[row][col] = new Color(row * 37 % 256, col * 29 % 256, (row * col * 13) % 256);
+        boolean inMask = (row + col) % 3 == 0 || (row > 2 && row < 5);
+        maskPixels[row][col] = inMask ? new Color(0, 0, 0) : new Color(255, 255, 255);
+      }
+    }
+    ImageModel image = new SimpleImage(pixels);
+    ImageModel mask = new SimpleImage(maskPixels);
+
+    for (ImageProcessingCommand cmd : new ImageProcessingCommand[]{
+        CommandImpls.SHARPEN, CommandImpls.GAUSSIAN_BLUR, CommandImpls.SEPIA_TONE,
+        CommandImpls.INTENSITY, new BrightenChannels(-40)}) {
+      // hide the region capability so the whole image gets processed
+      ImageProcessingCommand wholeImage = (ImageModel m) -> cmd.process(m);
+      assertEquals(new MaskedCommand(wholeImage, mask).process(image),
+              new MaskedCommand(cmd, mask).process(image));
+    }
+  }
+
+  @Test
+  public void testHaloCommandsComputeBandsOfRows() {
+    Color[][] pixels = new Color[100][90];
+    Color[][] maskPixels = new Color[100][90];
+    for (int row = 0; row < 100; row++) {
+      for (int col = 0; col < 90; col++) {
+        pixels[row][col] = new Color(row * 37 % 256, col * 29 % 256, (row * col * 13) % 256);
+        boolean inMask = (row + col) % 2 == 0;
+        maskPixels[row][col] = inMask ? new Color(0, 0, 0) : new Color(255, 255, 255);
+      }
+    }
+    ImageModel image = new SimpleImage(pixels);
+    ImageModel mask = new SimpleImage(maskPixels);
+    RegionCommand blur = (RegionCommand) CommandImpls.GAUSSIAN_BLUR;
+    int[] calls = new int[1];
+    RegionCommand countingBlur = new RegionCommand() {
+      @Override
+      public int getHalo() {
+        return blur.getHalo();
+      }
+
+      @Override
+      public Color[][] processRegion(ImageModel m, int row, int col, int height, int width) {
+        calls[0]++;
+        return blur.processRegion(m, row, col, height, width);
+      }
+
+      @Override
+      public ImageModel process(ImageModel m) {
+        return blur.process(m);
+      }
+    };
+
+    // a checkerboard has a run for every other pixel, but only one region per band of rows
+    ImageProcessingCommand wholeImage = (ImageModel m) -> blur.process(m);
+    assertEquals(new MaskedCommand(wholeImage, mask).process(image),
+            new MaskedCommand(countingBlur, mask).process(image));
+    assertEquals(2, calls[0]);
+  }
+
+  @Test
+  public void testProcessRegion() {
+    RegionCommand blur = (RegionCommand) CommandImpls.GAUSSIAN_BLUR;
+    assertEquals(1, blur.getHalo());
+    assertEquals(2, ((RegionCommand) CommandImpls.SHARPEN).getHalo());
+    assertEquals(0, ((RegionCommand) CommandImpls.LUMA).getHalo());
+    ImageModel blurred = blur.process(threeByThree);
+    Color[][] region = blur.processRegion(threeByThree, 1, 1, 2, 2);
+    assertEquals(blurred.colorAt(1, 1), region[0][0]);
+    assertEquals(blurred.colorAt(1, 2), region[0][1]);
+    assertEquals(blurred.colorAt(2, 1), region[1][0]);
+    assertEquals(blurred.colorAt(2, 2), region[1][1]);
+  }
 }
@@ -0,0 +1,203 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Scanner;
+
+import controller.ControllerFeatureSet;
+import controller.commands.MaskedCommand;
+import controller.commands.Median;
+import controller.commands.RegionCommand;
+import controller.extensions.ExtendedControllerFeatures;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.ImageProcessor;
+import model.processor.SimpleImageProcessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the median filter against a straightforward version that sorts every window.
+ */
+public class MedianTest {
+  private ImageModel image;
+
+  @Before
+  public void setUp() {
+    Color[][] pixels = new Color[37][45];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        pixels[row][col] = new Color((row * 31 + col * 17) % 256, (row * col * 7) % 256,
+                (row * row + col * 5) % 256);
+      }
+    }
+    this.image = new SimpleImage(pixels);
+  }
+
+  // Sort the in-image pixels of every window and take the upper middle value.
+  private ImageModel naiveMedian(ImageModel m, int radius) {
+    Color[][] res = new Color[m.getHeight()][m.getWidth()];
+    for (int row = 0; row < m.getHeight(); row++) {
+      for (int col = 0; col < m.getWidth(); col++) {
+        int rowStart = Math.max(0, row - radius);
+        int rowEnd = Math.min(m.getHeight(), row + radius + 1);
+        int colStart = Math.max(0, col - radius);
+        int colEnd = Math.min(m.getWidth(), col + radius + 1);
+        int count = (rowEnd - rowStart) * (colEnd - colStart);
+        int[][] values = new int[3][count];
+        int i = 0;
+        for (int r = rowStart; r < rowEnd; r++) {
+          for (int c = colStart; c < colEnd; c++) {
+            values[0][i] = m.colorAt(r, c).red();
+            values[1][i] = m.colorAt(r, c).green();
+            values[2][i] = m.colorAt(r, c).blue();
+            i++;
+          }
+        }
+        for (int[] channel : values) {
+          Arrays.sort(channel);
+        }
+        res[row][col] = new Color(values[0][count / 2], values[1][count / 2],
+                values[2][count / 2]);
+      }
+    }
+    return new SimpleImage(res);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeRadius() {
+    new Median(-1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullImage() {
+    new Median(1).process(null);
+  }
+
+  @Test
+  public void testRadiusZeroKeepsImage() {
+    assertEquals(this.image, new Median(0).process(this.image));
+  }
+
+  @Test
+  public void testMatchesSorting() {
+    for (int radius : new int[]{1, 2, 5, 30}) {
+      assertEquals(this.naiveMedian(this.image, radius), new Median(radius).process(this.image));
+    }
+  }
+
+  @Test
+  public void testRemovesSpeckles() {
+    Color[][] pixels = new Color[5][5];
+    for (Color[] row : pixels) {
+      Arrays.fill(row, new Color(100, 100, 100));
+    }
+    pixels[2][2] = new Color(255, 0, 255);
+    assertEquals(new Color(100, 100, 100),
+            new Median(1).process(new SimpleImage(pixels)).colorAt(2, 2));
+  }
+
+  @Test
+  public void testRegionMatchesWholeImage() {
+    ImageModel expected = new Median(3).process(this.image);
+    Color[][] region = new Median(3).processRegion(this.image, 10, 4, 9, 30);
+    for (int r = 0; r < 9; r++) {
+      for (int c = 0; c < 30; c++) {
+        assertEquals(expected.colorAt(10 + r, 4 + c), region[r][c]);
+      }
+    }
+  }
+
+  @Test
+  public void testSmallRegionsMatchWholeImage() {
+    // histograms kept from one region must be left empty for the next, whatever its size
+    for (int radius : new int[]{4, 1, 6}) {
+      ImageModel expected = new Median(radius).process(this.image);
+      for (int row = 0; row < this.image.getHeight(); row += 5) {
+        int width = 1 + row % 9;
+        Color[][] region = new Median(radius).processRegion(this.image, row, row % 20, 1, width);
+        for (int c = 0; c < width; c++) {
+          assertEquals(expected.colorAt(row, row % 20 + c), region[0][c]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMaskedComputesEachPixelOnce() {
+    Color[][] pixels = new Color[300][300];
+    Color[][] maskPixels = new Color[300][300];
+    for (int row = 0; row < 300; row++) {
+      for (int col = 0; col < 300; col++) {
+        pixels[row][col] = new Color((row * 31 + col * 17) % 256, (row * col * 7) % 256,
+                (row * row + col * 5) % 256);
+        maskPixels[row][col] = (row + col) % 2 == 0 ? new Color(0, 0, 0)
+                : new Color(255, 255, 255);
+      }
+    }
+    ImageModel large = new SimpleImage(pixels);
+    Median median = new Median(15);
+    long[] computed = new long[1];
+    RegionCommand counting = new RegionCommand() {
+      @Override
+      public int getHalo() {
+        return median.getHalo();
+      }
+
+      @Override
+      public Color[][] processRegion(ImageModel m, int row, int col, int height, int width) {
+        computed[0] += (long) height * width;
+        return median.processRegion(m, row, col, height, width);
+      }
+
+      @Override
+      public ImageModel process(ImageModel m) {
+        return median.process(m);
+      }
+    };
+    ImageModel masked = new MaskedCommand(counting, new SimpleImage(maskPixels)).process(large);
+    // A mask with a run for every other pixel used to compute a whole window for every run.
+    assertTrue("computed " + computed[0] + " pixels", computed[0] <= 300 * 300);
+    ImageModel expected = median.process(large);
+    for (int row = 0; row < 300; row++) {
+      for (int col = row % 2; col < 300; col += 2) {
+        assertEquals(expected.colorAt(row, col), masked.colorAt(row, col));
+      }
+    }
+  }
+
+  @Test
+  public void testMasked() {
+    Color[][] maskPixels = new Color[37][45];
+    for (int row = 0; row < maskPixels.length; row++) {
+      for (int col = 0; col < maskPixels[0].length; col++) {
+        maskPixels[row][col] = (row + col) % 3 == 0 ? new Color(0, 0, 0)
+                : new Color(255, 255, 255);
+      }
+    }
+    ImageModel expected = new Median(2).process(this.image);
+    ImageModel masked = new MaskedCommand(new Median(2), new SimpleImage(maskPixels))
+            .process(this.image);
+    for (int row = 0; row < maskPixels.length; row++) {
+      for (int col = 0; col < maskPixels[0].length; col++) {
+        if ((row + col) % 3 == 0) {
+          assertEquals(expected.colorAt(row, col), masked.colorAt(row, col));
+        } else {
+          assertSame(this.image.colorAt(row, col), masked.colorAt(row, col));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTextCommand() {
+    ImageProcessor processor = new SimpleImageProcessor();
+    processor.loadImage("img", this.image);
+    ControllerFeatureSet features = new ExtendedControllerFeatures(processor);
+    features.runProcessingCommand("median", "img", "a", new Scanner("2"));
+    assertEquals(new Median(2).process(this.image), processor.getImageState("a"));
+  }
+}
@@ -0,0 +1,196 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.Scanner;
+
+import controller.ControllerFeatureSet;
+import controller.ControllerFeatures;
+import controller.commands.MaskedCommand;
+import controller.commands.Morphology;
+import controller.commands.Morphology.Operation;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.ImageProcessor;
+import model.processor.SimpleImageProcessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the morphological commands against straightforward versions that look at every pixel of
+ * every structuring element, on color, grey, and black and white images.
+ */
+public class MorphologyTest {
+  private ImageModel color;
+  private ImageModel grey;
+  private ImageModel binary;
+
+  @Before
+  public void setUp() {
+    Random random = new Random(35);
+    Color[][] colorPixels = new Color[41][150];
+    Color[][] greyPixels = new Color[41][150];
+    Color[][] binaryPixels = new Color[41][150];
+    for (int row = 0; row < colorPixels.length; row++) {
+      for (int col = 0; col < colorPixels[0].length; col++) {
+        colorPixels[row][col] = new Color(random.nextInt(256), random.nextInt(256),
+                random.nextInt(256));
+        int value = random.nextInt(256);
+        greyPixels[row][col] = new Color(value, value, value);
+        binaryPixels[row][col] = random.nextInt(5) == 0 ? new Color(255, 255, 255)
+                : new Color(0, 0, 0);
+      }
+    }
+    this.color = new SimpleImage(colorPixels);
+    this.grey = new SimpleImage(greyPixels);
+    this.binary = new SimpleImage(binaryPixels);
+  }
+
+  // Take the darkest or brightest in-image value of each channel over the element, which starts
+  // the given number of pixels before each pixel.
+  private ImageModel naive(ImageModel m, int width, int height, boolean max) {
+    int left = max ? width / 2 : (width - 1) / 2;
+    int up = max ? height / 2 : (height - 1) / 2;
+    Color[][] res = new Color[m.getHeight()][m.getWidth()];
+    for (int row = 0; row < m.getHeight(); row++) {
+      for (int col = 0; col < m.getWidth(); col++) {
+        int[] best = max ? new int[]{0, 0, 0} : new int[]{255, 255, 255};
+        for (int r = Math.max(0, row - up); r < Math.min(m.getHeight(), row - up + height); r++) {
+          for (int c = Math.max(0, col - left); c < Math.min(m.getWidth(), col - left + width);
+               c++) {
+            Color pixel = m.colorAt(r, c);
+            int[] values = {pixel.red(), pixel.green(), pixel.blue()};
+            for (int i = 0; i < 3; i++) {
+              best[i] = max ? Math.max(best[i], values[i]) : Math.min(best[i], values[i]);
+            }
+          }
+        }
+        res[row][col] = new Color(best[0], best[1], best[2]);
+      }
+    }
+    return new SimpleImage(res);
+  }
+
+  private void assertMatchesNaive(ImageModel m, int width, int height) {
+    ImageModel eroded = this.naive(m, width, height, false);
+    ImageModel dilated = this.naive(m, width, height, true);
+    assertEquals(eroded, new Morphology(Operation.ERODE, width, height).process(m));
+    assertEquals(dilated, new Morphology(Operation.DILATE, width, height).process(m));
+    assertEquals(this.naive(eroded, width, height, true),
+            new Morphology(Operation.OPEN, width, height).process(m));
+    assertEquals(this.naive(dilated, width, height, false),
+            new Morphology(Operation.CLOSE, width, height).process(m));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullOperation() {
+    new Morphology(null, 3, 3);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadSize() {
+    new Morphology(Operation.ERODE, 3, 0);
+  }
+
+  @Test
+  public void testSinglePixelKeepsImage() {
+    assertEquals(this.color, new Morphology(Operation.OPEN, 1, 1).process(this.color));
+  }
+
+  @Test
+  public void testColorMatchesNaive() {
+    this.assertMatchesNaive(this.color, 3, 3);
+    this.assertMatchesNaive(this.color, 4, 7);
+  }
+
+  @Test
+  public void testGreyMatchesNaive() {
+    this.assertMatchesNaive(this.grey, 5, 2);
+    this.assertMatchesNaive(this.grey, 1, 50);
+  }
+
+  @Test
+  public void testBinaryMatchesNaive() {
+    // Widths spanning several words and wider than the image.
+    this.assertMatchesNaive(this.binary, 3, 3);
+    this.assertMatchesNaive(this.binary, 70, 2);
+    this.assertMatchesNaive(this.binary, 6, 11);
+    this.assertMatchesNaive(this.binary, 200, 1);
+  }
+
+  @Test
+  public void testHugeElementOnSmallImage() {
+    for (ImageModel m : new ImageModel[]{this.color, this.grey, this.binary}) {
+      Color[][] pixels = new Color[10][10];
+      for (int row = 0; row < 10; row++) {
+        for (int col = 0; col < 10; col++) {
+          pixels[row][col] = m.colorAt(row, col);
+        }
+      }
+      ImageModel small = new SimpleImage(pixels);
+      // Used to need buffers as large as the element, running out of memory or overflowing.
+      this.assertMatchesNaive(small, 60000001, 60000001);
+      this.assertMatchesNaive(small, 4, 60000000);
+      for (Operation operation : Operation.values()) {
+        assertEquals(new Morphology(operation, 21, 21).process(small),
+                new Morphology(operation, Integer.MAX_VALUE, Integer.MAX_VALUE).process(small));
+      }
+    }
+  }
+
+  @Test
+  public void testOpeningIsIdempotent() {
+    Morphology open = new Morphology(Operation.OPEN, 4, 6);
+    ImageModel opened = open.process(this.grey);
+    assertEquals(opened, open.process(opened));
+  }
+
+  @Test
+  public void testRegionMatchesWholeImage() {
+    Morphology close = new Morphology(Operation.CLOSE, 5, 3);
+    ImageModel expected = close.process(this.binary);
+    Color[][] region = close.processRegion(this.binary, 7, 65, 20, 70);
+    for (int r = 0; r < 20; r++) {
+      for (int c = 0; c < 70; c++) {
+        assertEquals(expected.colorAt(7 + r, 65 + c), region[r][c]);
+      }
+    }
+  }
+
+  @Test
+  public void testMasked() {
+    Morphology dilate = new Morphology(Operation.DILATE, 3, 3);
+    ImageModel expected = dilate.process(this.color);
+    ImageModel masked = new MaskedCommand(dilate, this.binary).process(this.color);
+    for (int row = 0; row < this.color.getHeight(); row++) {
+      for (int col = 0; col < this.color.getWidth(); col++) {
+        if (this.binary.colorAt(row, col).red() == 0) {
+          assertEquals(expected.colorAt(row, col), masked.colorAt(row, col));
+        } else {
+          assertSame(this.color.colorAt(row, col), masked.colorAt(row, col));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTextCommands() {
+    ImageProcessor processor = new SimpleImageProcessor();
+    processor.loadImage("img", this.binary);
+    ControllerFeatureSet features = new ControllerFeatures(processor);
+    features.runProcessingCommand("erode", "img", "a", new Scanner("3"));
+    features.runProcessingCommand("dilate", "img", "b", new Scanner("5 2"));
+    features.runProcessingCommand("open", "img", "c", new Scanner("2"));
+    features.runProcessingCommand("close", "img", "d", new Scanner("4 1"));
+    assertEquals(new Morphology(Operation.ERODE, 3, 3).process(this.binary),
+            processor.getImageState("a"));
+    assertEquals(new Morphology(Operation.DILATE, 5, 2).process(this.binary),
+            processor.getImageState("b"));
+    assertEquals(new Morphology(Operation.OPEN, 2, 2).process(this.binary),
+            processor.getImageState("c"));
+    assertEquals(new Morphology(Operation.CLOSE, 4, 1).process(this.binary),
+            processor.getImageState("d"));
+  }
+}
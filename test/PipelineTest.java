@@ -0,0 +1,106 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import controller.commands.BrightenChannels;
+import controller.commands.CommandImpls;
+import controller.commands.Downscale;
+import controller.commands.FlipHorizontally;
+import controller.commands.ImageProcessingCommand;
+import controller.commands.Pipeline;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests that running commands through a pipeline, which fuses neighboring commands tile by tile,
+ * gives the same result as running each command over the whole image in turn.
+ */
+public class PipelineTest {
+  private ImageModel image;
+
+  @Before
+  public void setUp() {
+    Color[][] pixels = new Color[90][150];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        pixels[row][col] = new Color((row * 5 + col * 3) % 256, (row * col) % 256,
+                (row * 11 + col * 17) % 256);
+      }
+    }
+    this.image = new SimpleImage(pixels);
+  }
+
+  private ImageModel runInTurn(List<ImageProcessingCommand> commands) {
+    ImageModel res = this.image;
+    for (ImageProcessingCommand command : commands) {
+      res = command.process(res);
+    }
+    return res;
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullCommands() {
+    new Pipeline(null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullCommandInList() {
+    new Pipeline(Arrays.asList(CommandImpls.SHARPEN, null));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadTileSize() {
+    new Pipeline(new ArrayList<>(), 0);
+  }
+
+  @Test
+  public void testEmptyPipeline() {
+    assertSame(this.image, new Pipeline(new ArrayList<>()).process(this.image));
+  }
+
+  @Test
+  public void testFusedMatchesInTurn() {
+    List<ImageProcessingCommand> commands = Arrays.asList(
+        CommandImpls.GAUSSIAN_BLUR, CommandImpls.SEPIA_TONE, new BrightenChannels(12),
+        CommandImpls.SHARPEN, CommandImpls.GAUSSIAN_BLUR);
+    ImageModel expected = this.runInTurn(commands);
+    assertEquals(expected, new Pipeline(commands).process(this.image));
+    // tiles that do not evenly divide the image, and smaller than the combined halo
+    assertEquals(expected, new Pipeline(commands, 7).process(this.image));
+    assertEquals(expected, new Pipeline(commands, 1).process(this.image));
+  }
+
+  @Test
+  public void testBarriersMatchInTurn() {
+    List<ImageProcessingCommand> commands = Arrays.asList(
+        CommandImpls.GAUSSIAN_BLUR, CommandImpls.SEPIA_TONE, new BrightenChannels(-20),
+        new Downscale(60, 40, Downscale.Mode.AREA), CommandImpls.SHARPEN, CommandImpls.LUMA,
+        new FlipHorizontally(), CommandImpls.INTENSITY);
+    assertEquals(this.runInTurn(commands), new Pipeline(commands, 16).process(this.image));
+  }
+
+  @Test
+  public void testKeys() {
+    List<ImageProcessingCommand> commands = Arrays.asList(new BrightenChannels(10),
+        CommandImpls.SHARPEN, new Downscale(60, 40));
+    List<ImageProcessingCommand> sameCommands = Arrays.asList(new BrightenChannels(10),
+        CommandImpls.SHARPEN, new Downscale(60, 40));
+    List<ImageProcessingCommand> otherCommands = Arrays.asList(new BrightenChannels(11),
+        CommandImpls.SHARPEN, new Downscale(60, 40));
+    assertEquals(new Pipeline(commands).getKey(), new Pipeline(sameCommands).getKey());
+    assertNotEquals(new Pipeline(commands).getKey(), new Pipeline(otherCommands).getKey());
+
+    // Any command without a key leaves the whole pipeline without one.
+    assertNull(new Pipeline(Arrays.asList(new BrightenChannels(10),
+        (ImageModel m) -> m)).getKey());
+  }
+}
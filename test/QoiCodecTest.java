@@ -0,0 +1,99 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import util.QoiCodec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the in memory image codec, checking that every kind of image comes back unchanged and
+ * that smooth and flat images shrink.
+ */
+public class QoiCodecTest {
+
+  private static ImageModel roundTrip(ImageModel img) {
+    return QoiCodec.decode(QoiCodec.encode(img));
+  }
+
+  @Test
+  public void testNoiseRoundTrip() {
+    Random random = new Random(43);
+    Color[][] pixels = new Color[37][53];
+    for (Color[] row : pixels) {
+      for (int col = 0; col < row.length; col++) {
+        row[col] = new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+      }
+    }
+    ImageModel noise = new SimpleImage(pixels);
+    assertEquals(noise, roundTrip(noise));
+  }
+
+  @Test
+  public void testGradientRoundTripAndShrinks() {
+    // Small steps, large steps and wrap arounds exercise every difference form.
+    Color[][] pixels = new Color[64][64];
+    for (int row = 0; row < 64; row++) {
+      for (int col = 0; col < 64; col++) {
+        pixels[row][col] = new Color((row * 4 + col) % 256, (col * 5) % 256,
+                row < 32 ? col : 255 - col);
+      }
+    }
+    ImageModel gradient = new SimpleImage(pixels);
+    byte[] data = QoiCodec.encode(gradient);
+    assertEquals(gradient, QoiCodec.decode(data));
+    assertTrue(data.length < 64 * 64 * 3);
+  }
+
+  @Test
+  public void testFlatRoundTripAndShrinks() {
+    // Runs longer than the longest run code, starting with black like the codec's first pixel.
+    Color[][] pixels = new Color[50][100];
+    for (int row = 0; row < 50; row++) {
+      Arrays.fill(pixels[row], row < 20 ? new Color(0, 0, 0) : new Color(200, 10, 90));
+    }
+    pixels[49][99] = new Color(0, 0, 0);
+    ImageModel flat = new SimpleImage(pixels);
+    byte[] data = QoiCodec.encode(flat);
+    assertEquals(flat, QoiCodec.decode(data));
+    assertTrue(data.length < 200);
+  }
+
+  @Test
+  public void testRepeatedColorsRoundTrip() {
+    // A few colors repeating out of order are served from the table of recent colors.
+    Color[] palette = {new Color(10, 200, 30), new Color(255, 0, 255), new Color(0, 0, 0),
+        new Color(90, 90, 91)};
+    Color[][] pixels = new Color[9][11];
+    for (int row = 0; row < 9; row++) {
+      for (int col = 0; col < 11; col++) {
+        pixels[row][col] = palette[(row * 7 + col * 3) % palette.length];
+      }
+    }
+    ImageModel repeated = new SimpleImage(pixels);
+    assertEquals(repeated, roundTrip(repeated));
+  }
+
+  @Test
+  public void testSinglePixel() {
+    ImageModel single = new SimpleImage(new Color[][]{{new Color(1, 2, 3)}});
+    assertEquals(single, roundTrip(single));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTruncated() {
+    ImageModel single = new SimpleImage(new Color[][]{{new Color(1, 2, 3), new Color(250, 2, 3)}});
+    byte[] data = QoiCodec.encode(single);
+    QoiCodec.decode(Arrays.copyOf(data, data.length - 2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingHeader() {
+    QoiCodec.decode(new byte[3]);
+  }
+}
@@ -0,0 +1,144 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Optional;
+
+import controller.ImageProcessorController;
+import controller.commands.Downscale;
+import controller.commands.ImageProcessingCommand;
+import controller.commands.ResampleFilter;
+import controller.commands.Resize;
+import controller.extensions.ExtendedScriptedController;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.ImageProcessor;
+import model.processor.SimpleImageProcessor;
+
+import static java.lang.System.out;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the resize command, which resizes images up or down with a choice of filters.
+ */
+public class ResizeTest {
+  private ImageModel tenByTen;
+  private ImageModel gradient;
+  private ImageModel solid;
+
+  @Before
+  public void setUp() {
+    Color incrementing = new Color(0, 0, 0);
+    Color[][] tenByTenPixels = new Color[10][10];
+    for (int row = 0; row < tenByTenPixels.length; row++) {
+      for (int col = 0; col < tenByTenPixels[0].length; col++) {
+        tenByTenPixels[row][col] = incrementing;
+        incrementing = incrementing.add(2, 2, 2);
+      }
+    }
+    this.tenByTen = new SimpleImage(tenByTenPixels);
+
+    Color[][] gradientPixels = new Color[2][6];
+    for (int row = 0; row < gradientPixels.length; row++) {
+      for (int col = 0; col < gradientPixels[0].length; col++) {
+        gradientPixels[row][col] = new Color(col * 40, 100, 200 - col * 40);
+      }
+    }
+    this.gradient = new SimpleImage(gradientPixels);
+
+    Color[][] solidPixels = new Color[3][4];
+    for (int row = 0; row < solidPixels.length; row++) {
+      for (int col = 0; col < solidPixels[0].length; col++) {
+        solidPixels[row][col] = new Color(30, 120, 240);
+      }
+    }
+    this.solid = new SimpleImage(solidPixels);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testResizeException1() {
+    new Resize(0, 3);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testResizeException2() {
+    new Resize(3, 3, null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testResizeException3() {
+    new Resize(3, 3).process(null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownFilterName() {
+    ResampleFilter.fromName("nearest");
+  }
+
+  @Test
+  public void testSameSize() {
+    ImageProcessingCommand resize = new Resize(10, 10, ResampleFilter.LANCZOS);
+    assertTrue(resize.process(this.tenByTen) == this.tenByTen);
+  }
+
+  @Test
+  public void testSolidImageStaysSolid() {
+    for (ResampleFilter filter : ResampleFilter.values()) {
+      for (int[] size : new int[][]{{2, 2}, {9, 7}, {1, 1}, {4, 13}}) {
+        ImageModel resized = new Resize(size[0], size[1], filter).process(this.solid);
+        assertEquals(size[0], resized.getWidth());
+        assertEquals(size[1], resized.getHeight());
+        for (int row = 0; row < size[1]; row++) {
+          for (int col = 0; col < size[0]; col++) {
+            assertEquals(new Color(30, 120, 240), resized.colorAt(row, col));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testUpscale() {
+    ImageModel resized = new Resize(12, 2, ResampleFilter.BILINEAR).process(this.gradient);
+    // edges are kept, and the pixels in between are interpolated in order
+    assertEquals(new Color(0, 100, 200), resized.colorAt(0, 0));
+    assertEquals(new Color(200, 100, 0), resized.colorAt(1, 11));
+    assertEquals(new Color(10, 100, 190), resized.colorAt(0, 1));
+    assertEquals(new Color(30, 100, 170), resized.colorAt(0, 2));
+    for (int col = 1; col < 12; col++) {
+      assertTrue(resized.colorAt(0, col).red() >= resized.colorAt(0, col - 1).red());
+    }
+
+    // sharper filters overshoot near the edges, but stay clamped
+    ImageModel lanczos = new Resize(24, 5, ResampleFilter.LANCZOS).process(this.gradient);
+    assertEquals(24, lanczos.getWidth());
+    assertEquals(5, lanczos.getHeight());
+    assertEquals(0, lanczos.colorAt(0, 0).red());
+    assertEquals(100, lanczos.colorAt(4, 12).green());
+  }
+
+  @Test
+  public void testAreaResizeMatchesAreaDownscale() {
+    assertEquals(new Downscale(4, 3, Downscale.Mode.AREA).process(this.tenByTen),
+            new Resize(4, 3, ResampleFilter.AREA).process(this.tenByTen));
+  }
+
+  @Test
+  public void testResizeFromTextCommands() {
+    ImageProcessor model = new SimpleImageProcessor();
+    model.loadImage("img", this.tenByTen);
+
+    Readable input = new StringReader("resize img big 20 15 lanczos\n"
+            + "resize img small 5 5\n");
+    ImageProcessorController controller =
+            new ExtendedScriptedController(model, input, Optional.of(out));
+    controller.run();
+
+    assertEquals(new Resize(20, 15, ResampleFilter.LANCZOS).process(this.tenByTen),
+            model.getImageState("big"));
+    assertEquals(new Resize(5, 5, ResampleFilter.BICUBIC).process(this.tenByTen),
+            model.getImageState("small"));
+  }
+}
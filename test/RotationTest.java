@@ -0,0 +1,196 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Scanner;
+
+import controller.ControllerFeatureSet;
+import controller.ControllerFeatures;
+import controller.commands.ImageProcessingCommand;
+import controller.commands.QuarterRotation;
+import controller.commands.Rotate;
+import controller.commands.Transpose;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.ImageProcessor;
+import model.processor.SimpleImageProcessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the rotation and transpose commands, comparing the quarter rotations against
+ * straightforward per-pixel versions on images large enough to span several tiles.
+ */
+public class RotationTest {
+  private ImageModel twoByThree;
+  private ImageModel large;
+
+  @Before
+  public void setUp() {
+    this.twoByThree = new SimpleImage(new Color[][]{
+        {new Color(1, 1, 1), new Color(2, 2, 2)},
+        {new Color(3, 3, 3), new Color(4, 4, 4)},
+        {new Color(5, 5, 5), new Color(6, 6, 6)}});
+
+    Color[][] pixels = new Color[130][71];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        pixels[row][col] = new Color(row % 256, col % 256, (row * 7 + col) % 256);
+      }
+    }
+    this.large = new SimpleImage(pixels);
+  }
+
+  @Test
+  public void testSmallRotations() {
+    assertEquals(new SimpleImage(new Color[][]{
+        {new Color(5, 5, 5), new Color(3, 3, 3), new Color(1, 1, 1)},
+        {new Color(6, 6, 6), new Color(4, 4, 4), new Color(2, 2, 2)}}),
+        new QuarterRotation(1).process(this.twoByThree));
+    assertEquals(new SimpleImage(new Color[][]{
+        {new Color(6, 6, 6), new Color(5, 5, 5)},
+        {new Color(4, 4, 4), new Color(3, 3, 3)},
+        {new Color(2, 2, 2), new Color(1, 1, 1)}}),
+        new QuarterRotation(2).process(this.twoByThree));
+    assertEquals(new SimpleImage(new Color[][]{
+        {new Color(2, 2, 2), new Color(4, 4, 4), new Color(6, 6, 6)},
+        {new Color(1, 1, 1), new Color(3, 3, 3), new Color(5, 5, 5)}}),
+        new QuarterRotation(3).process(this.twoByThree));
+    assertEquals(new SimpleImage(new Color[][]{
+        {new Color(1, 1, 1), new Color(3, 3, 3), new Color(5, 5, 5)},
+        {new Color(2, 2, 2), new Color(4, 4, 4), new Color(6, 6, 6)}}),
+        new Transpose().process(this.twoByThree));
+    assertSame(this.twoByThree, new QuarterRotation(4).process(this.twoByThree));
+    assertEquals(3, new QuarterRotation(-1).getTurns());
+  }
+
+  @Test
+  public void testLargeRotationsMatchPerPixel() {
+    int height = this.large.getHeight();
+    int width = this.large.getWidth();
+    ImageModel rotated90 = new QuarterRotation(1).process(this.large);
+    ImageModel rotated180 = new QuarterRotation(2).process(this.large);
+    ImageModel rotated270 = new QuarterRotation(3).process(this.large);
+    ImageModel transposed = new Transpose().process(this.large);
+    assertEquals(height, rotated90.getWidth());
+    assertEquals(width, rotated90.getHeight());
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        Color color = this.large.colorAt(row, col);
+        assertEquals(color, rotated90.colorAt(col, height - 1 - row));
+        assertEquals(color, rotated180.colorAt(height - 1 - row, width - 1 - col));
+        assertEquals(color, rotated270.colorAt(width - 1 - col, row));
+        assertEquals(color, transposed.colorAt(col, row));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRotateNull() {
+    ImageProcessingCommand rotate = new QuarterRotation(1);
+    rotate.process(null);
+  }
+
+  @Test
+  public void testRotateFromControllerFeatures() {
+    ImageProcessor processor = new SimpleImageProcessor();
+    ControllerFeatureSet features = new ControllerFeatures(processor);
+    processor.loadImage("img", this.large);
+    features.runProcessingCommand("rotate-90", "img", "a", new Scanner(""));
+    features.runProcessingCommand("rotate-270", "a", "b", new Scanner(""));
+    features.runProcessingCommand("rotate-180", "b", "c", new Scanner(""));
+    features.runProcessingCommand("transpose", "c", "d", new Scanner(""));
+    assertEquals(this.large, processor.getImageState("b"));
+    assertEquals(new Transpose().process(new QuarterRotation(2).process(this.large)),
+            processor.getImageState("d"));
+  }
+
+  @Test
+  public void testArbitraryRotationOfRightAngles() {
+    assertEquals(new QuarterRotation(1).process(this.large),
+            new Rotate(90).process(this.large));
+    assertEquals(new QuarterRotation(3).process(this.large),
+            new Rotate(-90, Rotate.Sampling.NEAREST).process(this.large));
+    assertEquals(new QuarterRotation(2).process(this.large),
+            new Rotate(540).process(this.large));
+    assertSame(this.large, new Rotate(0).process(this.large));
+  }
+
+  @Test
+  public void testArbitraryRotation() {
+    Color[][] solidPixels = new Color[20][30];
+    for (int row = 0; row < solidPixels.length; row++) {
+      for (int col = 0; col < solidPixels[0].length; col++) {
+        solidPixels[row][col] = new Color(200, 100, 50);
+      }
+    }
+    ImageModel solid = new SimpleImage(solidPixels);
+
+    for (Rotate.Sampling sampling : Rotate.Sampling.values()) {
+      ImageModel rotated = new Rotate(45, sampling).process(solid);
+      // the canvas grows to fit the rotated image: (30 + 20) * cos(45)
+      assertEquals(36, rotated.getWidth());
+      assertEquals(36, rotated.getHeight());
+      assertEquals(new Color(200, 100, 50), rotated.colorAt(18, 18));
+      assertEquals(new Color(0, 0, 0), rotated.colorAt(0, 0));
+      assertEquals(new Color(0, 0, 0), rotated.colorAt(35, 35));
+    }
+
+    // a clockwise rotation moves the top left corner up and to the right
+    Color[][] cornerPixels = new Color[20][20];
+    for (int row = 0; row < cornerPixels.length; row++) {
+      for (int col = 0; col < cornerPixels[0].length; col++) {
+        boolean topLeft = row < 10 && col < 10;
+        cornerPixels[row][col] = topLeft ? new Color(255, 255, 255) : new Color(0, 0, 255);
+      }
+    }
+    ImageModel rotated = new Rotate(30, Rotate.Sampling.NEAREST)
+            .process(new SimpleImage(cornerPixels));
+    assertEquals(new Color(255, 255, 255), rotated.colorAt(8, 13));
+    assertEquals(new Color(0, 0, 255), rotated.colorAt(18, 8));
+  }
+
+  @Test
+  public void testRotateWideImage() {
+    // Source coordinates past 32768 pixels do not fit 16.16 fixed point in an int.
+    Color white = new Color(255, 255, 255);
+    Color[][] pixels = new Color[2][40000];
+    for (Color[] row : pixels) {
+      Arrays.fill(row, white);
+    }
+    for (Rotate.Sampling sampling : Rotate.Sampling.values()) {
+      ImageModel rotated = new Rotate(0.01, sampling).process(new SimpleImage(pixels));
+      int lit = 0;
+      for (int row = 0; row < rotated.getHeight(); row++) {
+        for (int col = rotated.getWidth() - 100; col < rotated.getWidth(); col++) {
+          if (rotated.colorAt(row, col).red() > 0) {
+            lit++;
+          }
+        }
+      }
+      // The last columns of the image still land on its last columns.
+      assertTrue(lit > 100);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRotateBadAngle() {
+    new Rotate(Double.NaN);
+  }
+
+  @Test
+  public void testRotateFromScript() {
+    ImageProcessor processor = new SimpleImageProcessor();
+    ControllerFeatureSet features = new ControllerFeatures(processor);
+    processor.loadImage("img", this.twoByThree);
+    features.runProcessingCommand("rotate", "img", "a", new Scanner("33.5 nearest"));
+    features.runProcessingCommand("rotate", "img", "b", new Scanner("-12"));
+    assertEquals(new Rotate(33.5, Rotate.Sampling.NEAREST).process(this.twoByThree),
+            processor.getImageState("a"));
+    assertEquals(new Rotate(-12, Rotate.Sampling.BILINEAR).process(this.twoByThree),
+            processor.getImageState("b"));
+  }
+}
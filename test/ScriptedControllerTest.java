@@ -5,15 +5,34 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.OutputStream;
 import java.io.StringReader;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Optional;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import controller.ControllerFeatures;
 import controller.ImageProcessorController;
 import controller.ScriptedImageProcessorController;
+import controller.ScriptedImageProcessorController.Optimization;
+import controller.commands.FlipHorizontally;
+import controller.commands.FlipVertically;
+import controller.commands.ImageProcessingCommand;
+import controller.extensions.ExtendedControllerFeatures;
+import mocks.LoggingImageProcessor;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.ConcurrentImageProcessor;
 import model.processor.ImageProcessor;
 import model.processor.SimpleImageProcessor;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -70,4 +89,398 @@ public class ScriptedControllerTest extends AbstractControllerTest {
     }
   }
 
+  @Test
+  public void testDeadImagesFreedAfterLastUse() {
+    StringBuilder log = new StringBuilder();
+    ImageProcessor processor = new LoggingImageProcessor(log);
+    String commands = "load " + assetDir + "test_img.ppm img\n" +
+        "brighten img tmp 5\n" +
+        "save tmp out.ppm\n" +
+        "# img is still needed, so overwriting it keeps it\n" +
+        "brighten img img 10 given\n" +
+        "save img out2.ppm\n";
+    ImageProcessorController controller = new ScriptedImageProcessorController(
+        processor,
+        new StringReader(commands),
+        Optional.of(new ByteArrayOutputStream()),
+        new ExtendedControllerFeatures(processor),
+        EnumSet.of(Optimization.FREE_DEAD_IMAGES)
+    );
+    controller.run();
+    // The mask the script was handed is never removed.
+    assertEquals("loadImage with name img\n" +
+        "processImage with name img, saveName tmp\n" +
+        "getImageState with name tmp\n" +
+        "removeImage with name tmp\n" +
+        "getImageState with name given\n" +
+        "processImage with name img, saveName img\n" +
+        "getImageState with name img\n" +
+        "removeImage with name img\n",
+        log.toString());
+  }
+
+  @Test
+  public void testFreeingDeadImagesKeepsOutput() {
+    ImageProcessor processor = new SimpleImageProcessor();
+    processor.loadImage("given", testImg);
+    String commands = "load " + assetDir + "test_img.ppm test-img\n" +
+        "brighten test-img bright-test -10\n" +
+        "vertical-flip bright-test bright-flip\n" +
+        "save bright-flip " + assetDir + "test_img_bright_flip.ppm\n" +
+        "horizontal-flip given flipped-given\n";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageProcessorController controller = new ScriptedImageProcessorController(
+        processor,
+        new StringReader(commands),
+        Optional.of(out),
+        new ControllerFeatures(processor),
+        EnumSet.of(Optimization.FREE_DEAD_IMAGES)
+    );
+    controller.run();
+    assertEquals(testImgModifiedString, out.toString());
+    assertEquals(testImg, processor.getImageState("given"));
+    for (String name : new String[]{"test-img", "bright-test", "bright-flip", "flipped-given"}) {
+      assertThrows(IllegalArgumentException.class, () -> processor.getImageState(name));
+    }
+  }
+
+  @Test
+  public void testFreeingDeadImagesWithoutRemoval() {
+    SimpleImageProcessor images = new SimpleImageProcessor();
+    // A processor written before images could be removed.
+    ImageProcessor processor = new ImageProcessor() {
+      @Override
+      public ImageModel getImageState(String name) {
+        return images.getImageState(name);
+      }
+
+      @Override
+      public void loadImage(String name, ImageModel img) {
+        images.loadImage(name, img);
+      }
+
+      @Override
+      public void processImage(String name, String saveName, ImageProcessingCommand cmd) {
+        images.processImage(name, saveName, cmd);
+      }
+    };
+    String commands = "load " + assetDir + "test_img.ppm test-img\n" +
+        "brighten test-img bright-test -10\n" +
+        "vertical-flip bright-test bright-flip\n" +
+        "save bright-flip " + assetDir + "test_img_bright_flip.ppm\n";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new ScriptedImageProcessorController(processor, new StringReader(commands), Optional.of(out),
+        new ControllerFeatures(processor), EnumSet.of(Optimization.FREE_DEAD_IMAGES)).run();
+    assertEquals(testImgModifiedString, out.toString());
+    assertEquals(testImgModified, processor.getImageState("bright-flip"));
+  }
+
+  @Test
+  public void testDeadStepsSkipped() {
+    StringBuilder log = new StringBuilder();
+    ImageProcessor processor = new LoggingImageProcessor(log);
+    String commands = "load " + assetDir + "test_img.ppm img\n" +
+        "luma-component img mask\n" +
+        "brighten img unused 10\n" +
+        "horizontal-flip unused unused-flip\n" +
+        "vertical-flip img flipped\n" +
+        "brighten flipped out 5 mask\n" +
+        "save out out.ppm\n" +
+        "sepia-tone out after-save\n";
+    ScriptedImageProcessorController controller = new ScriptedImageProcessorController(
+        processor,
+        new StringReader(commands),
+        Optional.of(new ByteArrayOutputStream()),
+        new ExtendedControllerFeatures(processor),
+        EnumSet.of(Optimization.SKIP_DEAD_STEPS)
+    );
+    controller.run();
+    assertEquals(Arrays.asList("brighten img unused 10", "horizontal-flip unused unused-flip",
+        "sepia-tone out after-save"), controller.getSkippedLines());
+    // The mask is still made, as the saved image needs it.
+    assertEquals("loadImage with name img\n" +
+        "processImage with name img, saveName mask\n" +
+        "processImage with name img, saveName flipped\n" +
+        "getImageState with name mask\n" +
+        "processImage with name flipped, saveName out\n" +
+        "getImageState with name out\n",
+        log.toString());
+  }
+
+  @Test
+  public void testBadLinesNotSkipped() {
+    ImageProcessor processor = new SimpleImageProcessor();
+    String commands = "load " + assetDir + "test_img.ppm img\n" +
+        "brighten img\n" +
+        "save img out.ppm\n";
+    ImageProcessorController controller = new ScriptedImageProcessorController(
+        processor,
+        new StringReader(commands),
+        Optional.of(new ByteArrayOutputStream()),
+        new ControllerFeatures(processor),
+        EnumSet.of(Optimization.SKIP_DEAD_STEPS)
+    );
+    assertThrows(IllegalStateException.class, controller::run);
+  }
+
+  @Test
+  public void testFailingDeadLinesNotSkipped() {
+    String[] failing = {"brighten missing x 10\n", "frobnicate img x\n", "brighten img x ten\n",
+        "brighten img x 10 missing\n", "load missing.ppm x\n", "luma-component x x\n"};
+    for (String line : failing) {
+      ImageProcessor processor = new SimpleImageProcessor();
+      String commands = "load " + assetDir + "test_img.ppm img\n" +
+          line +
+          "save img out.ppm\n";
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ScriptedImageProcessorController controller = new ScriptedImageProcessorController(
+          processor,
+          new StringReader(commands),
+          Optional.of(out),
+          new ExtendedControllerFeatures(processor),
+          EnumSet.of(Optimization.SKIP_DEAD_STEPS)
+      );
+      assertThrows(RuntimeException.class, controller::run);
+      assertEquals(0, out.size());
+    }
+
+    // Images the processor held before the script ran can be read by lines that are skipped.
+    ImageProcessor processor = new SimpleImageProcessor();
+    processor.loadImage("given", new SimpleImage(new Color[][] {{new Color(1, 2, 3)}}));
+    String commands = "load " + assetDir + "test_img.ppm img\n" +
+        "brighten given x 10 img\n" +
+        "save img out.ppm\n";
+    ScriptedImageProcessorController controller = new ScriptedImageProcessorController(
+        processor,
+        new StringReader(commands),
+        Optional.of(new ByteArrayOutputStream()),
+        new ExtendedControllerFeatures(processor),
+        EnumSet.of(Optimization.SKIP_DEAD_STEPS)
+    );
+    controller.run();
+    assertEquals(Arrays.asList("brighten given x 10 img"), controller.getSkippedLines());
+  }
+
+  @Test
+  public void testRepeatedWorkReused() {
+    StringBuilder log = new StringBuilder();
+    ImageProcessor processor = new LoggingImageProcessor(log);
+    String commands = "load " + assetDir + "test_img.ppm img\n" +
+        "luma-component img a\n" +
+        "luma-component img b\n" +
+        "brighten img img 10\n" +
+        "luma-component img c\n" +
+        "brighten a d 5 given\n" +
+        "brighten b e 5 given\n";
+    ScriptedImageProcessorController controller = new ScriptedImageProcessorController(
+        processor,
+        new StringReader(commands),
+        Optional.of(new ByteArrayOutputStream()),
+        new ExtendedControllerFeatures(processor),
+        EnumSet.of(Optimization.REUSE_RESULTS)
+    );
+    controller.run();
+    // b holds the same image as a, so brightening it with the same mask is also the same work.
+    assertEquals(Arrays.asList("luma-component img b", "brighten b e 5 given"),
+        controller.getReusedLines());
+    assertEquals("loadImage with name img\n" +
+        "processImage with name img, saveName a\n" +
+        "getImageState with name a\n" +
+        "loadImage with name b\n" +
+        "processImage with name img, saveName img\n" +
+        "processImage with name img, saveName c\n" +
+        "getImageState with name given\n" +
+        "processImage with name a, saveName d\n" +
+        "getImageState with name d\n" +
+        "loadImage with name e\n",
+        log.toString());
+  }
+
+  @Test
+  public void testReusedResultsMatchRunningInOrder() {
+    String commands = "load " + assetDir + "test_img.ppm img\n" +
+        "luma-component img a\n" +
+        "horizontal-flip a a\n" +
+        "luma-component img b\n" +
+        "luma-component img c\n" +
+        "horizontal-flip b d\n";
+    ImageProcessor plain = new SimpleImageProcessor();
+    new ScriptedImageProcessorController(plain, new StringReader(commands),
+        Optional.of(new ByteArrayOutputStream())).run();
+    ImageProcessor reusing = new SimpleImageProcessor();
+    ScriptedImageProcessorController controller = new ScriptedImageProcessorController(
+        reusing,
+        new StringReader(commands),
+        Optional.of(new ByteArrayOutputStream()),
+        new ControllerFeatures(reusing),
+        EnumSet.of(Optimization.REUSE_RESULTS)
+    );
+    controller.run();
+
+    // a was replaced before b was made, so b is made again, but the flip of b is the image a now
+    // holds.
+    assertEquals(Arrays.asList("luma-component img c", "horizontal-flip b d"),
+        controller.getReusedLines());
+    for (String name : new String[]{"a", "b", "c", "d"}) {
+      assertEquals(plain.getImageState(name), reusing.getImageState(name));
+    }
+    assertSame(reusing.getImageState("b"), reusing.getImageState("c"));
+    assertSame(reusing.getImageState("a"), reusing.getImageState("d"));
+  }
+
+  @Test
+  public void testParallelMatchesRunningInOrder() {
+    String load = "load " + assetDir + "test_img.ppm ";
+    String commands = load + "img\n" +
+        "luma-component img grey\n" +
+        "save grey grey.ppm\n" +
+        load + "other\n" +
+        "sepia-tone other sepia\n" +
+        "horizontal-flip sepia sepia\n" +
+        "brighten img img 20 grey\n" +
+        "save sepia sepia.ppm\n" +
+        "vertical-flip grey flipped\n" +
+        "save img img.ppm\n" +
+        "save flipped flipped.ppm\n";
+    ImageProcessor plain = new SimpleImageProcessor();
+    ByteArrayOutputStream plainOut = new ByteArrayOutputStream();
+    new ScriptedImageProcessorController(plain, new StringReader(commands), Optional.of(plainOut),
+        new ExtendedControllerFeatures(plain)).run();
+
+    ImageProcessor shared = new ConcurrentImageProcessor();
+    ByteArrayOutputStream parallelOut = new ByteArrayOutputStream();
+    new ScriptedImageProcessorController(shared, new StringReader(commands),
+        Optional.of(parallelOut), new ExtendedControllerFeatures(shared),
+        EnumSet.of(Optimization.PARALLEL)).run();
+    // Saves all go to one stream, so equal output means the same images saved in the same order.
+    assertEquals(plainOut.toString(), parallelOut.toString());
+    for (String name : new String[]{"img", "grey", "other", "sepia", "flipped"}) {
+      assertEquals(plain.getImageState(name), shared.getImageState(name));
+    }
+  }
+
+  @Test
+  public void testParallelRunsIndependentLinesTogether() {
+    // Each of the two flips only finishes once the other has started.
+    CyclicBarrier together = new CyclicBarrier(2);
+    ImageProcessor processor = new ConcurrentImageProcessor() {
+      @Override
+      public void processImage(String name, String saveName, ImageProcessingCommand cmd) {
+        try {
+          together.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+          throw new IllegalStateException("Independent lines did not run together.");
+        }
+        super.processImage(name, saveName, cmd);
+      }
+    };
+    processor.loadImage("img", testImg);
+    String commands = "horizontal-flip img a\n" +
+        "vertical-flip img b\n";
+    new ScriptedImageProcessorController(processor, new StringReader(commands),
+        Optional.of(new ByteArrayOutputStream()), new ControllerFeatures(processor),
+        EnumSet.of(Optimization.PARALLEL)).run();
+    assertEquals(new FlipHorizontally().process(testImg), processor.getImageState("a"));
+    assertEquals(new FlipVertically().process(testImg), processor.getImageState("b"));
+  }
+
+  @Test
+  public void testParallelReportsFirstError() {
+    ImageProcessor processor = new ConcurrentImageProcessor();
+    processor.loadImage("img", testImg);
+    String commands = "save img first.ppm\n" +
+        "undefined-command img a\n" +
+        "brighten missing b 10\n" +
+        "horizontal-flip img c\n" +
+        "save img second.ppm\n";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageProcessorController controller = new ScriptedImageProcessorController(processor,
+        new StringReader(commands), Optional.of(out), new ControllerFeatures(processor),
+        EnumSet.of(Optimization.PARALLEL));
+    IllegalStateException error = assertThrows(IllegalStateException.class, controller::run);
+    assertTrue(error.getMessage().contains("undefined-command"));
+    // Only the save before the failed line was written.
+    assertEquals(testImgString, out.toString());
+  }
+
+  @Test
+  public void testParallelRethrowsErrors() {
+    OutOfMemoryError thrown = new OutOfMemoryError("Simulated.");
+    ImageProcessor processor = new ConcurrentImageProcessor() {
+      @Override
+      public void processImage(String name, String saveName, ImageProcessingCommand cmd) {
+        if (saveName.equals("b")) {
+          throw thrown;
+        }
+        super.processImage(name, saveName, cmd);
+      }
+    };
+    processor.loadImage("img", testImg);
+    String commands = "horizontal-flip img a\n" +
+        "vertical-flip img b\n" +
+        "brighten missing c 10\n";
+    ImageProcessorController controller = new ScriptedImageProcessorController(processor,
+        new StringReader(commands), Optional.of(new ByteArrayOutputStream()),
+        new ControllerFeatures(processor), EnumSet.of(Optimization.PARALLEL));
+    assertSame(thrown, assertThrows(OutOfMemoryError.class, controller::run));
+  }
+
+  @Test
+  public void testFusedFiltersMatchRunningEachLine() {
+    String commands = "load " + assetDir + "test_img.ppm img\n" +
+        "gaussian-blur img a\n" +
+        "sharpen a b\n" +
+        "brighten b c 10\n" +
+        "save c out.ppm\n" +
+        "sepia-tone img img\n" +
+        "luma-component img img\n" +
+        "save img out2.ppm\n" +
+        "horizontal-flip c flipped\n" +
+        "save flipped out3.ppm\n";
+    ImageProcessor plain = new SimpleImageProcessor();
+    ByteArrayOutputStream plainOut = new ByteArrayOutputStream();
+    new ScriptedImageProcessorController(plain, new StringReader(commands), Optional.of(plainOut),
+        new ExtendedControllerFeatures(plain)).run();
+
+    ImageProcessor fusing = new SimpleImageProcessor();
+    ByteArrayOutputStream fusedOut = new ByteArrayOutputStream();
+    new ScriptedImageProcessorController(fusing, new StringReader(commands),
+        Optional.of(fusedOut), new ExtendedControllerFeatures(fusing),
+        EnumSet.of(Optimization.FREE_DEAD_IMAGES, Optimization.FUSE_FILTERS)).run();
+    assertEquals(plainOut.toString(), fusedOut.toString());
+    // The images in between were never made, and every other image was freed as usual.
+    for (String name : new String[]{"a", "b", "c", "img", "flipped"}) {
+      assertThrows(IllegalArgumentException.class, () -> fusing.getImageState(name));
+    }
+  }
+
+  @Test
+  public void testFusingFilters() {
+    StringBuilder log = new StringBuilder();
+    ImageProcessor processor = new LoggingImageProcessor(log);
+    String commands = "load " + assetDir + "test_img.ppm img\n" +
+        "luma-component img mask\n" +
+        "gaussian-blur img img\n" +
+        "sharpen img img\n" +
+        "brighten img img 10 mask\n" +
+        "save img out.ppm\n" +
+        "# a is left in the processor after the script, so it is made\n" +
+        "gaussian-blur img a\n" +
+        "sharpen a b\n" +
+        "save b out2.ppm\n";
+    new ScriptedImageProcessorController(processor, new StringReader(commands),
+        Optional.of(new ByteArrayOutputStream()), new ExtendedControllerFeatures(processor),
+        EnumSet.of(Optimization.FUSE_FILTERS)).run();
+    // The blur and sharpen on img run as one, but the masked brighten is not a region command.
+    assertEquals("loadImage with name img\n" +
+        "processImage with name img, saveName mask\n" +
+        "processImage with name img, saveName img\n" +
+        "getImageState with name mask\n" +
+        "processImage with name img, saveName img\n" +
+        "getImageState with name img\n" +
+        "processImage with name img, saveName a\n" +
+        "processImage with name a, saveName b\n" +
+        "getImageState with name b\n",
+        log.toString());
+  }
 }
@@ -1,8 +1,12 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Random;
+
 import controller.commands.BrightenChannels;
+import controller.commands.Downscale;
 import controller.commands.FlipHorizontally;
+import controller.commands.ImageProcessingCommand;
 import model.image.ImageModel;
 import model.image.SimpleImage;
 import model.processor.ImageProcessor;
@@ -10,6 +14,9 @@ import model.processor.SimpleImageProcessor;
 import model.color.Color;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test class for the simple image processor.
@@ -134,4 +141,283 @@ public class SimpleImageProcessorTest {
     assertEquals(this.threeByThreeImage,
             this.processor.getImageState("3x3 Pixels Twice Flipped Horizontally"));
   }
+
+  // An image of seeded random noise, so no two ways of averaging it agree by chance.
+  private static ImageModel noise(int width, int height, long seed) {
+    Random random = new Random(seed);
+    Color[][] pixels = new Color[height][width];
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        pixels[row][col] = new Color(random.nextInt(256), random.nextInt(256),
+                random.nextInt(256));
+      }
+    }
+    return new SimpleImage(pixels);
+  }
+
+  @Test
+  public void testDownscaleUsesPyramid() {
+    Color[][] eightByEightPixels = new Color[8][8];
+    for (int row = 0; row < 8; row++) {
+      for (int col = 0; col < 8; col++) {
+        int value = 4 * (row * 8 + col);
+        eightByEightPixels[row][col] = new Color(value, value, value);
+      }
+    }
+    ImageModel eightByEight = new SimpleImage(eightByEightPixels);
+    SimpleImageProcessor pyramidProcessor = new SimpleImageProcessor();
+    pyramidProcessor.loadImage("img", eightByEight);
+    assertEquals(0, pyramidProcessor.getPyramidPixels());
+
+    // downscales to a pyramid level match downscaling the full image, and ones between levels are
+    // downscaled from the larger level
+    pyramidProcessor.processImage("img", "4x4", new Downscale(4, 4, Downscale.Mode.AREA));
+    pyramidProcessor.processImage("img", "2x2", new Downscale(2, 2, Downscale.Mode.AREA));
+    pyramidProcessor.processImage("img", "3x3", new Downscale(3, 3, Downscale.Mode.AREA));
+    assertEquals(new Downscale(4, 4, Downscale.Mode.AREA).process(eightByEight),
+            pyramidProcessor.getImageState("4x4"));
+    assertEquals(new Downscale(2, 2, Downscale.Mode.AREA).process(eightByEight),
+            pyramidProcessor.getImageState("2x2"));
+    assertEquals(new Downscale(3, 3, Downscale.Mode.AREA).process(
+            pyramidProcessor.getImageState("4x4")), pyramidProcessor.getImageState("3x3"));
+    // levels of 4x4, 2x2 and 1x1
+    assertEquals(21, pyramidProcessor.getPyramidPixels());
+
+    // the pyramid goes away with the image it was built from
+    pyramidProcessor.loadImage("img", this.threeByThreeImage);
+    assertEquals(0, pyramidProcessor.getPyramidPixels());
+    pyramidProcessor.processImage("img", "1x1", new Downscale(1, 1, Downscale.Mode.AREA));
+    assertEquals(new Color(40, 40, 40), pyramidProcessor.getImageState("1x1").colorAt(0, 0));
+    // an image with odd dimensions has no levels to build
+    assertEquals(0, pyramidProcessor.getPyramidPixels());
+  }
+
+  @Test
+  public void testPyramidLevelsMatchDownscale() {
+    ImageModel img = noise(200, 200, 7);
+    SimpleImageProcessor pyramidProcessor = new SimpleImageProcessor();
+    pyramidProcessor.loadImage("img", img);
+    // 100, 50 and 25 are levels, and the rest are downscaled from the level just larger than them
+    int[] sizes = {100, 50, 25, 30, 13, 1};
+    int[] from = {200, 200, 200, 50, 25, 25};
+    for (int i = 0; i < sizes.length; i++) {
+      Downscale downscale = new Downscale(sizes[i], sizes[i], Downscale.Mode.AREA);
+      pyramidProcessor.processImage("img", "small", downscale);
+      ImageModel level = new Downscale(from[i], from[i], Downscale.Mode.AREA).process(img);
+      assertEquals(downscale.process(level), pyramidProcessor.getImageState("small"));
+    }
+    assertEquals(100 * 100 + 50 * 50 + 25 * 25, pyramidProcessor.getPyramidPixels());
+
+    // rectangular images, where one dimension reaches a single pixel first
+    ImageModel wide = noise(64, 4, 8);
+    pyramidProcessor.loadImage("wide", wide);
+    for (int level = 1; level <= 2; level++) {
+      Downscale downscale = new Downscale(64 >> level, 4 >> level, Downscale.Mode.AREA);
+      pyramidProcessor.processImage("wide", "small", downscale);
+      assertEquals(downscale.process(wide), pyramidProcessor.getImageState("small"));
+    }
+  }
+
+  @Test
+  public void testDownscaleFromLargerLevel() {
+    ImageModel img = noise(200, 200, 9);
+    SimpleImageProcessor pyramidProcessor = new SimpleImageProcessor();
+    pyramidProcessor.loadImage("img", img);
+    // 30x40 is downscaled from the 50x50 level, whatever the mode
+    Downscale bilinear = new Downscale(30, 40, Downscale.Mode.BILINEAR);
+    pyramidProcessor.processImage("img", "small", bilinear);
+    assertEquals(bilinear.process(new Downscale(50, 50, Downscale.Mode.AREA).process(img)),
+            pyramidProcessor.getImageState("small"));
+    assertEquals(100 * 100 + 50 * 50 + 25 * 25, pyramidProcessor.getPyramidPixels());
+
+    // a downscale to the size of a level that is not an area downscale is still run on the level,
+    // and not mistaken for the level itself
+    pyramidProcessor.processImage("img", "level", new Downscale(50, 50, Downscale.Mode.AREA));
+    Downscale sameSize = new Downscale(50, 50, Downscale.Mode.BILINEAR);
+    pyramidProcessor.processImage("img", "small", sameSize);
+    assertEquals(pyramidProcessor.getImageState("level"),
+            pyramidProcessor.getImageState("small"));
+    assertEquals(0, pyramidProcessor.getResultHits());
+
+    // less than halving any dimension has no level to start from
+    Downscale slight = new Downscale(150, 199, Downscale.Mode.BILINEAR);
+    pyramidProcessor.processImage("img", "small", slight);
+    assertEquals(slight.process(img), pyramidProcessor.getImageState("small"));
+  }
+
+  @Test
+  public void testPyramidBudget() {
+    SimpleImageProcessor boundedProcessor = new SimpleImageProcessor(1);
+    boundedProcessor.loadImage("img", noise(2, 2, 1));
+    boundedProcessor.loadImage("other", noise(2, 2, 2));
+    boundedProcessor.processImage("img", "small", new Downscale(1, 1, Downscale.Mode.AREA));
+    assertEquals(1, boundedProcessor.getPyramidPixels());
+    boundedProcessor.processImage("other", "small", new Downscale(1, 1, Downscale.Mode.AREA));
+    assertEquals(1, boundedProcessor.getPyramidPixels());
+    assertEquals(new Downscale(1, 1, Downscale.Mode.AREA).process(noise(2, 2, 2)),
+            boundedProcessor.getImageState("small"));
+
+    // a pyramid over the budget on its own is never built, and the image is downscaled directly
+    ImageModel large = noise(8, 8, 3);
+    boundedProcessor.loadImage("large", large);
+    boundedProcessor.processImage("large", "small", new Downscale(4, 4, Downscale.Mode.AREA));
+    assertEquals(1, boundedProcessor.getPyramidPixels());
+    assertEquals(new Downscale(4, 4, Downscale.Mode.AREA).process(large),
+            boundedProcessor.getImageState("small"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeColdTime() {
+    new SimpleImageProcessor(SimpleImageProcessor.DEFAULT_PYRAMID_BUDGET, -1);
+  }
+
+  @Test
+  public void testImagesNotCompressedByDefault() {
+    SimpleImageProcessor plain = new SimpleImageProcessor();
+    plain.loadImage("3x3 Pixels", this.threeByThreeImage);
+    plain.processImage("3x3 Pixels", "3x3 Pixels Brightened", new BrightenChannels(10));
+    assertEquals(0, plain.getCompressedImages());
+    assertSame(this.threeByThreeImage, plain.getImageState("3x3 Pixels"));
+  }
+
+  @Test
+  public void testColdImagesCompressed() {
+    // Every image other than the one just stored counts as cold straight away.
+    SimpleImageProcessor coldProcessor =
+            new SimpleImageProcessor(SimpleImageProcessor.DEFAULT_PYRAMID_BUDGET, 0);
+    coldProcessor.loadImage("3x3 Pixels", this.threeByThreeImage);
+    assertEquals(0, coldProcessor.getCompressedImages());
+    coldProcessor.processImage("3x3 Pixels", "3x3 Pixels Brightened", new BrightenChannels(10));
+    assertEquals(1, coldProcessor.getCompressedImages());
+    assertTrue(coldProcessor.getCompressedBytes() > 0);
+
+    // Compressed images come back unchanged, and are compressed again once cold.
+    assertEquals(this.threeByThreeImage, coldProcessor.getImageState("3x3 Pixels"));
+    assertEquals(0, coldProcessor.getCompressedImages());
+    assertEquals(0, coldProcessor.getCompressedBytes());
+    coldProcessor.processImage("3x3 Pixels Brightened", "3x3 Pixels Brightened",
+            new BrightenChannels(22));
+    assertEquals(1, coldProcessor.getCompressedImages());
+    assertEquals(this.threeByThreeImageStrongBrightened,
+            coldProcessor.getImageState("3x3 Pixels Brightened"));
+    assertEquals(this.threeByThreeImage, coldProcessor.getImageState("3x3 Pixels"));
+
+    // Replacing a compressed image drops its compressed form.
+    coldProcessor.loadImage("1x1", this.oneByOnePixel);
+    coldProcessor.loadImage("3x3 Pixels", this.oneByOnePixel);
+    assertEquals(2, coldProcessor.getCompressedImages());
+    assertEquals(this.oneByOnePixel, coldProcessor.getImageState("3x3 Pixels"));
+  }
+
+  @Test
+  public void testRecentImagesNotCompressed() {
+    SimpleImageProcessor warmProcessor = new SimpleImageProcessor();
+    warmProcessor.loadImage("3x3 Pixels", this.threeByThreeImage);
+    warmProcessor.processImage("3x3 Pixels", "3x3 Pixels Brightened", new BrightenChannels(10));
+    assertEquals(0, warmProcessor.getCompressedImages());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeResultBudget() {
+    new SimpleImageProcessor(SimpleImageProcessor.DEFAULT_PYRAMID_BUDGET,
+            SimpleImageProcessor.NEVER_COMPRESS, -1);
+  }
+
+  @Test
+  public void testRepeatedCommandResultReused() {
+    SimpleImageProcessor cachingProcessor = new SimpleImageProcessor();
+    cachingProcessor.loadImage("3x3 Pixels", this.threeByThreeImage);
+    cachingProcessor.processImage("3x3 Pixels", "a", new BrightenChannels(10));
+    assertEquals(0, cachingProcessor.getResultHits());
+    assertEquals(1, cachingProcessor.getResultMisses());
+
+    // Equal pixels under another name, and an equal command, give the same result object.
+    cachingProcessor.loadImage("copy", new SimpleImage(this.threeByThreePixels));
+    cachingProcessor.processImage("copy", "b", new BrightenChannels(10));
+    assertEquals(1, cachingProcessor.getResultHits());
+    assertSame(cachingProcessor.getImageState("a"), cachingProcessor.getImageState("b"));
+    assertEquals(this.threeByThreeImageBrightened, cachingProcessor.getImageState("b"));
+    assertEquals(9, cachingProcessor.getResultPixels());
+  }
+
+  @Test
+  public void testDifferentParametersOrPixelsNotReused() {
+    SimpleImageProcessor cachingProcessor = new SimpleImageProcessor();
+    cachingProcessor.loadImage("3x3 Pixels", this.threeByThreeImage);
+    cachingProcessor.processImage("3x3 Pixels", "a", new BrightenChannels(10));
+    cachingProcessor.processImage("3x3 Pixels", "b", new BrightenChannels(32));
+    assertEquals(this.threeByThreeImageStrongBrightened, cachingProcessor.getImageState("b"));
+
+    // Replacing the image under the same name must not reuse the old image's result.
+    cachingProcessor.loadImage("3x3 Pixels", this.threeByThreeImageBrightened);
+    cachingProcessor.processImage("3x3 Pixels", "c", new BrightenChannels(22));
+    assertEquals(this.threeByThreeImageStrongBrightened, cachingProcessor.getImageState("c"));
+    assertEquals(0, cachingProcessor.getResultHits());
+    assertEquals(3, cachingProcessor.getResultMisses());
+  }
+
+  @Test
+  public void testCommandsWithoutKeyNotCached() {
+    SimpleImageProcessor cachingProcessor = new SimpleImageProcessor();
+    cachingProcessor.loadImage("3x3 Pixels", this.threeByThreeImage);
+    ImageProcessingCommand brighten = (ImageModel m) -> new BrightenChannels(10).process(m);
+    cachingProcessor.processImage("3x3 Pixels", "a", brighten);
+    cachingProcessor.processImage("3x3 Pixels", "b", brighten);
+    assertEquals(0, cachingProcessor.getResultHits() + cachingProcessor.getResultMisses());
+    assertEquals(0, cachingProcessor.getResultPixels());
+  }
+
+  @Test
+  public void testResultBudget() {
+    // Room for one 3x3 result only.
+    SimpleImageProcessor cachingProcessor = new SimpleImageProcessor(
+            SimpleImageProcessor.DEFAULT_PYRAMID_BUDGET, SimpleImageProcessor.NEVER_COMPRESS, 9);
+    cachingProcessor.loadImage("3x3 Pixels", this.threeByThreeImage);
+    cachingProcessor.processImage("3x3 Pixels", "a", new BrightenChannels(10));
+    cachingProcessor.processImage("3x3 Pixels", "b", new FlipHorizontally());
+    assertEquals(9, cachingProcessor.getResultPixels());
+    cachingProcessor.processImage("3x3 Pixels", "c", new BrightenChannels(10));
+    assertEquals(0, cachingProcessor.getResultHits());
+    cachingProcessor.processImage("3x3 Pixels", "d", new BrightenChannels(10));
+    assertEquals(1, cachingProcessor.getResultHits());
+    assertEquals(this.threeByThreeImageBrightened, cachingProcessor.getImageState("d"));
+  }
+
+  @Test
+  public void testColdResultsLeaveCache() {
+    SimpleImageProcessor coldProcessor =
+            new SimpleImageProcessor(SimpleImageProcessor.DEFAULT_PYRAMID_BUDGET, 0);
+    coldProcessor.loadImage("3x3 Pixels", this.threeByThreeImage);
+    coldProcessor.processImage("3x3 Pixels", "a", new BrightenChannels(10));
+    assertEquals(9, coldProcessor.getResultPixels());
+
+    // Compressing the image stored from the result drops the result, so it is not kept twice.
+    coldProcessor.processImage("3x3 Pixels", "b", new FlipHorizontally());
+    assertEquals(this.threeByThreeImageBrightened, coldProcessor.getImageState("a"));
+    assertEquals(9, coldProcessor.getResultPixels()); // only the flipped result
+    coldProcessor.processImage("3x3 Pixels", "c", new BrightenChannels(10));
+    assertEquals(this.threeByThreeImageBrightened, coldProcessor.getImageState("c"));
+    assertEquals(0, coldProcessor.getResultHits());
+  }
+
+  @Test
+  public void testRemoveImage() {
+    SimpleImageProcessor coldProcessor =
+            new SimpleImageProcessor(SimpleImageProcessor.DEFAULT_PYRAMID_BUDGET, 0);
+    coldProcessor.loadImage("2x2", noise(2, 2, 1));
+    coldProcessor.loadImage("1x1", this.oneByOnePixel);
+    coldProcessor.processImage("2x2", "small", new Downscale(1, 1, Downscale.Mode.AREA));
+    assertTrue(coldProcessor.getCompressedImages() > 0);
+    assertTrue(coldProcessor.getPyramidPixels() > 0);
+
+    // Removing drops the compressed form and the pyramid along with the image.
+    coldProcessor.removeImage("2x2");
+    coldProcessor.removeImage("1x1");
+    assertEquals(0, coldProcessor.getCompressedImages());
+    assertEquals(0, coldProcessor.getCompressedBytes());
+    assertEquals(0, coldProcessor.getPyramidPixels());
+    assertThrows(IllegalArgumentException.class,
+        () -> coldProcessor.getImageState("2x2"));
+    assertThrows(IllegalArgumentException.class, () -> coldProcessor.removeImage("1x1"));
+  }
 }
@@ -0,0 +1,222 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import controller.ControllerFeatures;
+import controller.StreamingImageProcessorController;
+import controller.commands.BrightenChannels;
+import controller.commands.CommandImpls;
+import controller.commands.RegionCommand;
+import controller.extensions.ExtendedControllerFeatures;
+import model.color.Color;
+import model.image.ImageModel;
+import model.image.SimpleImage;
+import model.processor.SimpleImageProcessor;
+import util.ImageUtil;
+import util.PpmRowReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * Tests that streaming a PPM image row by row through commands gives the same result as loading
+ * the whole image and processing it in memory.
+ */
+public class StreamingTest {
+  private ImageModel image;
+  private ControllerFeatures features;
+
+  @Before
+  public void setUp() {
+    Color[][] pixels = new Color[53][21];
+    for (int row = 0; row < pixels.length; row++) {
+      for (int col = 0; col < pixels[0].length; col++) {
+        pixels[row][col] = new Color((row * 7 + col * 3) % 256, (row * col) % 256,
+                (row * 13 + col * 29) % 256);
+      }
+    }
+    this.image = new SimpleImage(pixels);
+    this.features = new ExtendedControllerFeatures(new SimpleImageProcessor());
+  }
+
+  private byte[] toPPM(ImageModel img) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageUtil.writePPM(img, out);
+    return out.toByteArray();
+  }
+
+  private String stream(List<RegionCommand> stages, int band) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new StreamingImageProcessorController(new StringReader(""), this.features, band).stream(
+            new PpmRowReader(new ByteArrayInputStream(this.toPPM(this.image))), out, stages);
+    return out.toString();
+  }
+
+  @Test
+  public void testRowReader() {
+    PpmRowReader reader = new PpmRowReader(new ByteArrayInputStream(
+            "P3\n# a comment\n2 2\n# another\n255\n1 2 3\n4 5 6\n7 8 9\n10 11 12".getBytes()));
+    assertEquals(2, reader.getWidth());
+    assertEquals(2, reader.getHeight());
+    assertEquals(Arrays.asList(new Color(1, 2, 3), new Color(4, 5, 6)),
+            Arrays.asList(reader.nextRow()));
+    assertEquals(Arrays.asList(new Color(7, 8, 9), new Color(10, 11, 12)),
+            Arrays.asList(reader.nextRow()));
+    assertFalse(reader.hasNextRow());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRowReaderNotPPM() {
+    new PpmRowReader(new ByteArrayInputStream("P6\n1 1\n255\n".getBytes()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRowReaderTruncated() {
+    PpmRowReader reader = new PpmRowReader(
+            new ByteArrayInputStream("P3\n1 2\n255\n1 2 3\n".getBytes()));
+    reader.nextRow();
+    reader.nextRow();
+  }
+
+  @Test
+  public void testStreamWithoutCommandsCopies() {
+    assertEquals(new String(this.toPPM(this.image)), this.stream(new ArrayList<>(), 4));
+  }
+
+  @Test
+  public void testStreamMatchesInMemory() {
+    List<RegionCommand> stages = Arrays.asList(
+        (RegionCommand) CommandImpls.GAUSSIAN_BLUR, (RegionCommand) CommandImpls.SEPIA_TONE,
+        new BrightenChannels(-20), (RegionCommand) CommandImpls.SHARPEN,
+        (RegionCommand) CommandImpls.GAUSSIAN_BLUR);
+    ImageModel expected = this.image;
+    for (RegionCommand stage : stages) {
+      expected = stage.process(expected);
+    }
+    String expectedPPM = new String(this.toPPM(expected));
+    // Bands smaller than the combined halo, not dividing the height, and taller than the image.
+    assertEquals(expectedPPM, this.stream(stages, 1));
+    assertEquals(expectedPPM, this.stream(stages, 5));
+    assertEquals(expectedPPM, this.stream(stages, 16));
+    assertEquals(expectedPPM, this.stream(stages, 100));
+  }
+
+  @Test
+  public void testRunScript() throws IOException {
+    File in = File.createTempFile("stream-in", ".ppm");
+    File out = File.createTempFile("stream-out", ".ppm");
+    in.deleteOnExit();
+    out.deleteOnExit();
+    try (FileOutputStream dest = new FileOutputStream(in)) {
+      ImageUtil.writePPM(this.image, dest);
+    }
+    String script = "# stream a blur\n"
+            + "load " + in.getPath() + " img\n"
+            + "gaussian-blur img blurred\n"
+            + "\n"
+            + "brighten blurred bright 10\n"
+            + "save bright " + out.getPath() + "\n";
+    new StreamingImageProcessorController(new StringReader(script), this.features).run();
+
+    ImageModel expected = new BrightenChannels(10).process(
+            CommandImpls.GAUSSIAN_BLUR.process(this.image));
+    try (FileInputStream result = new FileInputStream(out)) {
+      assertEquals(expected, new SimpleImage(ImageUtil.readPPM(result)));
+    }
+  }
+
+  @Test
+  public void testSaveOverLoadedFile() throws IOException {
+    File same = File.createTempFile("stream-same", ".ppm");
+    same.deleteOnExit();
+    try (FileOutputStream dest = new FileOutputStream(same)) {
+      ImageUtil.writePPM(this.image, dest);
+    }
+    this.runScript("load " + same.getPath() + " img\n"
+            + "brighten img bright 10\n"
+            + "save bright " + same.getPath() + "\n");
+
+    try (FileInputStream result = new FileInputStream(same)) {
+      assertEquals(new BrightenChannels(10).process(this.image),
+              new SimpleImage(ImageUtil.readPPM(result)));
+    }
+    // nothing is left behind next to the saved file
+    File[] siblings = same.getParentFile().listFiles(
+        (File dir, String name) -> name.startsWith("." + same.getName()));
+    assertEquals(0, siblings.length);
+  }
+
+  @Test
+  public void testFailedStreamKeepsTarget() throws IOException {
+    File in = File.createTempFile("stream-truncated", ".ppm");
+    File out = File.createTempFile("stream-kept", ".ppm");
+    in.deleteOnExit();
+    out.deleteOnExit();
+    try (FileOutputStream dest = new FileOutputStream(in)) {
+      dest.write("P3 2 2 255 1 2 3".getBytes());
+    }
+    try (FileOutputStream dest = new FileOutputStream(out)) {
+      ImageUtil.writePPM(this.image, dest);
+    }
+    assertThrows(IllegalStateException.class, () -> this.runScript("load " + in.getPath()
+            + " img\nsave img " + out.getPath() + "\n"));
+    try (FileInputStream result = new FileInputStream(out)) {
+      assertEquals(this.image, new SimpleImage(ImageUtil.readPPM(result)));
+    }
+  }
+
+  private void runScript(String script) {
+    new StreamingImageProcessorController(new StringReader(script), this.features).run();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullScript() {
+    new StreamingImageProcessorController(null, this.features);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadBand() {
+    new StreamingImageProcessorController(new StringReader(""), this.features, 0);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNoSave() {
+    this.runScript("load a.ppm img\nsharpen img img\n");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNoLoad() {
+    this.runScript("sharpen img img\nsave img b.ppm\n");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNotPPM() {
+    this.runScript("load a.png img\nsave img b.ppm\n");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCommandNotStreamable() {
+    this.runScript("load a.ppm img\nhorizontal-flip img img\nsave img b.ppm\n");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCommandNotChained() {
+    this.runScript("load a.ppm img\nsharpen img a\nsharpen img b\nsave b b.ppm\n");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCommandAfterSave() {
+    this.runScript("load a.ppm img\nsave img b.ppm\nsharpen img img\n");
+  }
+}
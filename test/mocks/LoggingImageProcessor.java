@@ -39,4 +39,9 @@ public class LoggingImageProcessor implements ImageProcessor {
           throws IllegalArgumentException {
     this.log.append(String.format("processImage with name %s, saveName %s\n", name, saveName));
   }
+
+  @Override
+  public void removeImage(String name) {
+    this.log.append(String.format("removeImage with name %s\n", name));
+  }
 }
@@ -35,6 +35,11 @@ public class MockDownscaleView implements ImageProcessorView {
     // do nothing
   }
 
+  @Override
+  public void displayError(String message) throws IllegalArgumentException {
+    // do nothing
+  }
+
   @Override
   public void setActionObject(ControllerFeatureSet actionObject) throws IllegalArgumentException {
     Util.requireNonNullArg(actionObject);